@@ -0,0 +1,240 @@
+package cn.yxffcode.easyanalyzer.benchmark;
+
+import cn.yxffcode.easyanalyzer.analyzer.AhoCorasickAutomaton;
+import cn.yxffcode.easyanalyzer.analyzer.CompleteFSTAnalyzer;
+import cn.yxffcode.easyanalyzer.analyzer.Dictionary;
+import cn.yxffcode.easyanalyzer.analyzer.DoubleArrayTrie;
+import cn.yxffcode.easyanalyzer.analyzer.FSTDictionary;
+import cn.yxffcode.easyanalyzer.analyzer.FSTFactory;
+import cn.yxffcode.easyanalyzer.analyzer.MaxCountAnalyzer;
+import cn.yxffcode.easyanalyzer.analyzer.MaxProbabilityAnalyzer;
+import cn.yxffcode.easyanalyzer.analyzer.PrefixWordFSTAnalyzer;
+import cn.yxffcode.easyanalyzer.analyzer.PrefixWordFirstAnalyzer;
+import cn.yxffcode.easyanalyzer.analyzer.Segmenter;
+import cn.yxffcode.easyanalyzer.analyzer.ShortestFSTAnalyzer;
+import cn.yxffcode.easyanalyzer.analyzer.WeightedDictionary;
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 五种分词方式的吞吐量，按词典大小、文档长度和字符比例参数化.
+ * <p/>
+ * 每次操作对一篇文档完整地分词一次，除了每秒的操作数，还通过{@link Counters}报告每秒的词数（tokens）
+ * 和字符数（chars），每个字符的耗时为1e9 / chars，单位ns/char
+ *
+ * @author gaohang on 15/12/19.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+  private static final long DICTIONARY_SEED = 1;
+  private static final long DOCUMENT_SEED = 2;
+  /**
+   * 批量切分时将文档切成的短文本的长度，模拟商品标题
+   */
+  private static final int TITLE_LENGTH = 24;
+
+  /**
+   * 分词方式
+   */
+  public enum Segmentation {
+    COMPLETE {
+      @Override
+      Analyzer create(Dictionary dictionary, SortedSet<String> words) {
+        return CompleteFSTAnalyzer.create(dictionary, false);
+      }
+    },
+    SHORTEST {
+      @Override
+      Analyzer create(Dictionary dictionary, SortedSet<String> words) {
+        return ShortestFSTAnalyzer.create(dictionary, false);
+      }
+    },
+    PREFIX_WORD {
+      @Override
+      Analyzer create(Dictionary dictionary, SortedSet<String> words) {
+        return PrefixWordFSTAnalyzer.create(dictionary, false);
+      }
+    },
+    PREFIX_WORD_FIRST {
+      @Override
+      Analyzer create(Dictionary dictionary, SortedSet<String> words) {
+        return PrefixWordFirstAnalyzer.create(dictionary, false);
+      }
+    },
+    MAX_COUNT {
+      @Override
+      Analyzer create(Dictionary dictionary, SortedSet<String> words) {
+        return MaxCountAnalyzer.create(dictionary, false);
+      }
+    },
+    MAX_COUNT_AHO_CORASICK {
+      @Override
+      Analyzer create(Dictionary dictionary, SortedSet<String> words) throws IOException {
+        return MaxCountAnalyzer.create(AhoCorasickAutomaton.create(words));
+      }
+    },
+    MAX_PROBABILITY {
+      @Override
+      Analyzer create(Dictionary dictionary, SortedSet<String> words) throws IOException {
+        return MaxProbabilityAnalyzer.create(WeightedDictionary.create(CorpusGenerator.frequencies(words, DICTIONARY_SEED)));
+      }
+    };
+
+    /**
+     * @param words 创建dictionary使用的词条，不使用{@link Dictionary}的分词方式从词条创建自己的结构
+     */
+    abstract Analyzer create(Dictionary dictionary, SortedSet<String> words) throws IOException;
+  }
+
+  /**
+   * 词典的实现，denseTableBudget只对FST_DICTIONARY有效
+   */
+  public enum Backend {
+    FST_DICTIONARY {
+      @Override
+      Dictionary create(FST<CharsRef> fst, long denseTableBudget) {
+        return FSTDictionary.create(fst, denseTableBudget);
+      }
+    },
+    DOUBLE_ARRAY_TRIE {
+      @Override
+      Dictionary create(FST<CharsRef> fst, long denseTableBudget) throws IOException {
+        return DoubleArrayTrie.create(fst);
+      }
+    };
+
+    abstract Dictionary create(FST<CharsRef> fst, long denseTableBudget) throws IOException;
+  }
+
+  @Param({"COMPLETE", "SHORTEST", "PREFIX_WORD", "PREFIX_WORD_FIRST", "MAX_COUNT", "MAX_COUNT_AHO_CORASICK",
+          "MAX_PROBABILITY"})
+  public Segmentation segmentation;
+
+  @Param({"10000", "300000"})
+  public int dictionarySize;
+
+  @Param({"200", "100000"})
+  public int documentLength;
+
+  @Param({"CJK", "MIXED", "LATIN"})
+  public CorpusGenerator.Mix mix;
+
+  @Param({"FST_DICTIONARY"})
+  public Backend backend;
+
+  /**
+   * 根节点之外展开成直接寻址表的内存预算，默认不展开，通过-p denseTableBudget=...比较
+   */
+  @Param({"0"})
+  public long denseTableBudget;
+
+  private Analyzer analyzer;
+  private Segmenter segmenter;
+  private String document;
+  private List<String> titles;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    final SortedSet<String> words = CorpusGenerator.dictionary(dictionarySize, DICTIONARY_SEED);
+    final FST<CharsRef> fst = FSTFactory.create(words);
+    analyzer = segmentation.create(backend.create(fst, denseTableBudget), words);
+    document = CorpusGenerator.document(Lists.newArrayList(words), documentLength, mix, DOCUMENT_SEED);
+    segmenter = Segmenter.create(analyzer);
+    titles = Lists.newArrayList();
+    for (int i = 0; i < document.length(); i += TITLE_LENGTH) {
+      titles.add(document.substring(i, Math.min(i + TITLE_LENGTH, document.length())));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    analyzer.close();
+  }
+
+  /**
+   * 每秒分词的词数和字符数，每次迭代结束后由JMH读取并清零
+   */
+  @State(Scope.Thread)
+  @AuxCounters
+  public static class Counters {
+    public long tokens;
+    public long chars;
+  }
+
+  @Benchmark
+  public int tokenize(Counters counters) throws IOException {
+    int count = 0;
+    try (TokenStream tokenStream = analyzer.tokenStream("benchmark", new StringReader(document))) {
+      tokenStream.reset();
+      while (tokenStream.incrementToken()) {
+        count++;
+      }
+      tokenStream.end();
+    }
+    counters.tokens += count;
+    counters.chars += document.length();
+    return count;
+  }
+
+  /**
+   * 将文档切成短文本，逐个通过TokenStream读取词条的起止位置，与{@link #segmentTitles(Counters)}对比
+   */
+  @Benchmark
+  public int tokenizeTitles(Counters counters) throws IOException {
+    int count = 0;
+    for (String title : titles) {
+      try (TokenStream tokenStream = analyzer.tokenStream("benchmark", title)) {
+        final OffsetAttribute offsetAtt = tokenStream.addAttribute(OffsetAttribute.class);
+        tokenStream.reset();
+        while (tokenStream.incrementToken()) {
+          count += offsetAtt.endOffset() - offsetAtt.startOffset() > 0 ? 1 : 0;
+        }
+        tokenStream.end();
+      }
+    }
+    counters.tokens += count;
+    counters.chars += document.length();
+    return count;
+  }
+
+  /**
+   * 通过{@link Segmenter}批量切分同样的短文本
+   */
+  @Benchmark
+  public int segmentTitles(Counters counters) throws IOException {
+    final int count = segmenter.segment(titles).tokenCount();
+    counters.tokens += count;
+    counters.chars += document.length();
+    return count;
+  }
+}
@@ -0,0 +1,172 @@
+package cn.yxffcode.easyanalyzer.benchmark;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+
+/**
+ * 生成合成的词典和文档，同样的参数和种子总是生成同样的结果，基准测试不依赖外部的语料.
+ * <p/>
+ * 词典中大部分是2到4个汉字的词，也有少量英文和字母数字混合的词；文档由词典中的词和随机的字符拼成，
+ * 比例由{@link Mix}决定
+ *
+ * @author gaohang on 15/12/19.
+ */
+public final class CorpusGenerator {
+
+  /**
+   * 常用汉字所在的范围
+   */
+  private static final int CJK_START = 0x4E00;
+  private static final int CJK_COUNT = 3500;
+  private static final String PUNCTUATION = "，。、；！？ ";
+
+  private CorpusGenerator() {
+  }
+
+  /**
+   * 文档中汉字、英文和数字的比例
+   */
+  public enum Mix {
+    CJK(0.90, 0.05),
+    MIXED(0.60, 0.25),
+    LATIN(0.10, 0.60);
+
+    private final double cjk;
+    private final double latin;
+
+    Mix(double cjk, double latin) {
+      this.cjk = cjk;
+      this.latin = latin;
+    }
+  }
+
+  /**
+   * @param size 词条数
+   */
+  public static SortedSet<String> dictionary(int size, long seed) {
+    final Random random = new Random(seed);
+    final SortedSet<String> words = Sets.newTreeSet();
+    final StringBuilder word = new StringBuilder();
+    while (words.size() < size) {
+      word.setLength(0);
+      final int kind = random.nextInt(20);
+      if (kind == 0) {
+        appendLatin(word, random);
+      } else if (kind == 1) {
+        appendCJK(word, random, 2);
+        appendLatin(word, random);
+        appendDigits(word, random);
+      } else {
+        appendCJK(word, random, 2 + random.nextInt(3));
+      }
+      words.add(word.toString());
+    }
+    return words;
+  }
+
+  /**
+   * 为词条生成近似Zipf分布的词频，短词的词频更高
+   */
+  public static Map<String, Long> frequencies(SortedSet<String> words, long seed) {
+    final Random random = new Random(seed);
+    final Map<String, Long> frequencies = Maps.newHashMapWithExpectedSize(words.size());
+    for (String word : words) {
+      final double rank = 1 + random.nextInt(words.size());
+      frequencies.put(word, 1 + (long) (1e6 / (rank * word.length())));
+    }
+    return frequencies;
+  }
+
+  /**
+   * @param dictionary 词典，文档中约一半的字符来自词典中的词
+   * @param length     文档的字符数
+   */
+  public static String document(List<String> dictionary, int length, Mix mix, long seed) {
+    final Random random = new Random(seed);
+    final StringBuilder document = new StringBuilder(length + 16);
+    while (document.length() < length) {
+      final double p = random.nextDouble();
+      if (p < mix.cjk) {
+        if (random.nextBoolean()) {
+          document.append(dictionary.get(random.nextInt(dictionary.size())));
+        } else {
+          appendCJK(document, random, 1 + random.nextInt(3));
+        }
+      } else if (p < mix.cjk + mix.latin) {
+        appendLatin(document, random);
+        document.append(' ');
+      } else {
+        appendDigits(document, random);
+        document.append(' ');
+      }
+      if (random.nextInt(8) == 0) {
+        document.append(PUNCTUATION.charAt(random.nextInt(PUNCTUATION.length())));
+      }
+    }
+    document.setLength(length);
+    return document.toString();
+  }
+
+  private static void appendCJK(StringBuilder out, Random random, int count) {
+    for (int i = 0; i < count; i++) {
+      out.append((char) (CJK_START + random.nextInt(CJK_COUNT)));
+    }
+  }
+
+  private static void appendLatin(StringBuilder out, Random random) {
+    for (int i = 0, len = 3 + random.nextInt(6); i < len; i++) {
+      out.append((char) ('a' + random.nextInt(26)));
+    }
+  }
+
+  private static void appendDigits(StringBuilder out, Random random) {
+    for (int i = 0, len = 1 + random.nextInt(6); i < len; i++) {
+      out.append((char) ('0' + random.nextInt(10)));
+    }
+  }
+
+  /**
+   * 将词典和文档写到目录中，便于其它工具使用同样的语料：
+   * <pre>
+   *   java -cp benchmarks.jar cn.yxffcode.easyanalyzer.benchmark.CorpusGenerator 目录 词条数 文档长度 [CJK|MIXED|LATIN]
+   * </pre>
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println("usage: CorpusGenerator <directory> <dictionarySize> <documentLength> [CJK|MIXED|LATIN]");
+      System.exit(1);
+    }
+    final File directory = new File(args[0]);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("can not create " + directory);
+    }
+    final Mix mix = args.length > 3 ? Mix.valueOf(args[3]) : Mix.CJK;
+    final SortedSet<String> words = dictionary(Integer.parseInt(args[1]), 1);
+    try (Writer out = writer(new File(directory, "synthetic.dic"))) {
+      for (String word : words) {
+        out.write(word);
+        out.write('\n');
+      }
+    }
+    try (Writer out = writer(new File(directory, "synthetic.txt"))) {
+      out.write(document(Lists.newArrayList(words), Integer.parseInt(args[2]), mix, 2));
+    }
+  }
+
+  private static Writer writer(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,135 @@
+package cn.yxffcode.easyanalyzer.benchmark;
+
+import cn.yxffcode.easyanalyzer.analyzer.FSTDictionary;
+import cn.yxffcode.easyanalyzer.analyzer.FSTFactory;
+import cn.yxffcode.easyanalyzer.analyzer.ParallelSegmenter;
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParallelSegmenter}随线程数的扩展性，每次操作切分整个语料一次.
+ * <p/>
+ * 语料是由{@link CorpusGenerator}生成的一篇长文档切成的短文本，所有线程共享同一个词典。
+ * 比较不同threads下的chars，理想情况下与线程数成正比：
+ * <pre>
+ * java -jar target/benchmarks.jar ScalingBenchmark -p threads=1,2,4,8,16,32
+ * </pre>
+ *
+ * @author gaohang on 15/12/25.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+
+  private static final long DICTIONARY_SEED = 1;
+  private static final long DOCUMENT_SEED = 2;
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  @Param({"COMPLETE", "MAX_COUNT"})
+  public AnalyzerBenchmark.Segmentation segmentation;
+
+  @Param({"300000"})
+  public int dictionarySize;
+
+  /**
+   * 语料的总字符数
+   */
+  @Param({"4000000"})
+  public int corpusLength;
+
+  /**
+   * 每个短文本的字符数
+   */
+  @Param({"64"})
+  public int documentLength;
+
+  @Param({"CJK", "MIXED"})
+  public CorpusGenerator.Mix mix;
+
+  private Analyzer analyzer;
+  private ParallelSegmenter segmenter;
+  private List<String> documents;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    final SortedSet<String> words = CorpusGenerator.dictionary(dictionarySize, DICTIONARY_SEED);
+    analyzer = segmentation.create(FSTDictionary.create(FSTFactory.create(words), 0), words);
+    segmenter = ParallelSegmenter.create(analyzer, threads);
+    final String corpus = CorpusGenerator.document(Lists.newArrayList(words), corpusLength, mix, DOCUMENT_SEED);
+    documents = Lists.newArrayList();
+    for (int i = 0; i < corpus.length(); i += documentLength) {
+      documents.add(corpus.substring(i, Math.min(i + documentLength, corpus.length())));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    segmenter.close();
+    analyzer.close();
+  }
+
+  /**
+   * 每秒切分的词数和字符数
+   */
+  @State(Scope.Thread)
+  @AuxCounters
+  public static class Counters {
+    public long tokens;
+    public long chars;
+  }
+
+  /**
+   * 不保持顺序，先切分完的批次先读取
+   */
+  @Benchmark
+  public int unordered(Counters counters) {
+    return consume(segmenter.segment(documents, false), counters);
+  }
+
+  /**
+   * 按输入的顺序读取批次
+   */
+  @Benchmark
+  public int ordered(Counters counters) {
+    return consume(segmenter.segment(documents, true), counters);
+  }
+
+  private int consume(ParallelSegmenter.Results results, Counters counters) {
+    int count = 0;
+    try {
+      while (results.hasNext()) {
+        count += results.next().segmentation().tokenCount();
+      }
+    } finally {
+      results.close();
+    }
+    counters.tokens += count;
+    counters.chars += corpusLength;
+    return count;
+  }
+}
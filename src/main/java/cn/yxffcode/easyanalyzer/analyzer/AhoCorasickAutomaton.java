@@ -0,0 +1,168 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static cn.yxffcode.easyanalyzer.analyzer.DoubleArrayTrie.ROOT;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 在{@link DoubleArrayTrie}上增加失败链接的Aho-Corasick自动机，一次扫描找出输入中所有的词条，
+ * 包括相互重叠的词条，不需要回退输入.
+ * <p/>
+ * 状态与trie中的状态相同，失败链接指向当前状态所代表的字符串在trie中最长的真后缀，
+ * 输出链接指向沿失败链接最近的完整词条。由{@link MaxCountAnalyzer#create(AhoCorasickAutomaton)}使用
+ *
+ * @author gaohang on 15/12/21.
+ */
+public final class AhoCorasickAutomaton {
+
+  private static final int NONE = -1;
+
+  private final DoubleArrayTrie trie;
+  private final int[] fail;
+  /**
+   * 状态所代表的字符串的字符数
+   */
+  private final int[] depth;
+  /**
+   * 状态自身是完整的词条时为自身，否则为沿失败链接最近的完整词条的状态，没有时为-1
+   */
+  private final int[] output;
+
+  private AhoCorasickAutomaton(DoubleArrayTrie trie) {
+    this.trie = trie;
+    final int size = trie.size();
+    this.fail = new int[size];
+    this.depth = new int[size];
+    this.output = new int[size];
+    Arrays.fill(output, NONE);
+
+    //按层遍历，父状态的失败链接总是先于子状态计算
+    final int[] order = breadthFirstOrder(trie);
+    for (int state : order) {
+      final int parent = trie.parent(state);
+      if (parent == NONE) {
+        continue;
+      }
+      depth[state] = depth[parent] + 1;
+      if (parent == ROOT) {
+        fail[state] = ROOT;
+      } else {
+        final int code = trie.code(parent, state);
+        int f = fail[parent];
+        int next;
+        while ((next = trie.transition(f, code)) < 0 && f != ROOT) {
+          f = fail[f];
+        }
+        fail[state] = next < 0 ? ROOT : next;
+      }
+      output[state] = trie.isFinal(state) ? state : output[fail[state]];
+    }
+  }
+
+  /**
+   * 通过FST中的词条创建，可以复用{@link FSTFactory}中加载词典的各种方式
+   */
+  public static AhoCorasickAutomaton create(@NotNull FST<CharsRef> fst) throws IOException {
+    checkNotNull(fst);
+    return new AhoCorasickAutomaton(DoubleArrayTrie.create(fst));
+  }
+
+  /**
+   * @param words 所有词条，不做转换，可以是任意顺序
+   */
+  public static AhoCorasickAutomaton create(@NotNull Iterable<String> words) {
+    checkNotNull(words);
+    return new AhoCorasickAutomaton(DoubleArrayTrie.create(words));
+  }
+
+  /**
+   * @return 从根开始按层排列的所有状态
+   */
+  private static int[] breadthFirstOrder(DoubleArrayTrie trie) {
+    final int size = trie.size();
+    //按父状态做计数排序，得到每个状态的子状态
+    final int[] childStart = new int[size + 1];
+    int states = 0;
+    for (int state = 0; state < size; state++) {
+      final int parent = trie.parent(state);
+      if (parent != NONE) {
+        childStart[parent + 1]++;
+        states++;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      childStart[i + 1] += childStart[i];
+    }
+    final int[] children = new int[states];
+    final int[] filled = Arrays.copyOf(childStart, size);
+    for (int state = 0; state < size; state++) {
+      final int parent = trie.parent(state);
+      if (parent != NONE) {
+        children[filled[parent]++] = state;
+      }
+    }
+    final int[] order = new int[states + 1];
+    order[0] = ROOT;
+    for (int head = 0, tail = 1; head < tail; head++) {
+      final int state = order[head];
+      for (int i = childStart[state]; i < childStart[state + 1]; i++) {
+        order[tail++] = children[i];
+      }
+    }
+    return order;
+  }
+
+  /**
+   * 读入一个字符后的状态，沿失败链接查找，直到能够转移或者回到根状态
+   *
+   * @param codePoint 已转换成小写的字符
+   */
+  int next(int state, int codePoint) {
+    final int code = trie.code(codePoint);
+    if (code == 0) {
+      return ROOT;
+    }
+    while (true) {
+      final int next = trie.transition(state, code);
+      if (next >= 0) {
+        return next;
+      }
+      if (state == ROOT) {
+        return ROOT;
+      }
+      state = fail[state];
+    }
+  }
+
+  /**
+   * @return 以状态所代表的字符串结尾的最长的词条的状态，没有时为-1
+   */
+  int output(int state) {
+    return output[state];
+  }
+
+  /**
+   * @param state 词条的状态
+   * @return 比state短的下一个以同样位置结尾的词条的状态，没有时为-1
+   */
+  int nextOutput(int state) {
+    return output[fail[state]];
+  }
+
+  int depth(int state) {
+    return depth[state];
+  }
+
+  /**
+   * @return trie和链接占用的内存
+   */
+  public long sizeInBytes() {
+    return trie.sizeInBytes() + 4L * (fail.length + depth.length + output.length);
+  }
+}
@@ -0,0 +1,362 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.io.InputWindow;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static cn.yxffcode.easyanalyzer.analyzer.BaseTokenizer.isChineseCharacter;
+import static cn.yxffcode.easyanalyzer.analyzer.BaseTokenizer.isEnglishChar;
+import static cn.yxffcode.easyanalyzer.analyzer.BaseTokenizer.offset;
+import static cn.yxffcode.easyanalyzer.analyzer.DoubleArrayTrie.ROOT;
+
+/**
+ * 基于{@link AhoCorasickAutomaton}的最多数量匹配，每个字符只读取一次.
+ * <p/>
+ * 自动机在每个字符处给出以它结尾的所有词条，而词条需要按起始位置输出：当前状态的深度为d时，
+ * 之后找到的词条不会早于最近的d个字符开始，因此在此之前的字符上的词条都已经找到，可以输出。
+ * 读入但还不能输出的字符和词条保存在缓冲区中，缓冲区的大小只与最长的词条有关
+ *
+ * @author gaohang on 15/12/21.
+ */
+final class AhoCorasickTokenizer extends Tokenizer implements LimitedComponents.LengthLimited {
+
+  private static final int NONE = -1;
+  /**
+   * 还没有开始输出当前字符上的词条
+   */
+  private static final int UNSTARTED = -2;
+
+  private final AhoCorasickAutomaton automaton;
+  private final InputWindow window = new InputWindow();
+  private final CharTermAttribute termAtt;
+  private final OffsetAttribute offsetAtt;
+  private final TypeAttribute typeAtt;
+  private final PositionIncrementAttribute posIncAtt;
+  private final TokenizerMetrics metrics;
+  private TokenizerMetrics.Recorder recorder;
+
+  /**
+   * 缓冲区中的字符、字符在输入中的位置，以及从这个字符开始的词条链表的表头，下标为字符的序号减去{@link #bufferStart}
+   */
+  private int[] codePoints = new int[64];
+  private long[] offsets = new long[64];
+  private int[] hitHeads = new int[64];
+  /**
+   * 词条链表的节点：词条的字符数和同一位置上下一个更短的词条
+   */
+  private int[] hitLengths = new int[64];
+  private int[] hitNext = new int[64];
+  private int hitCount;
+
+  /**
+   * 缓冲区中第一个字符的序号，字符的序号与{@link InputWindow}中的位置一样是long，超过2^31个字符的输入不会溢出
+   */
+  private long bufferStart;
+  /**
+   * 已经读入的字符数
+   */
+  private long count;
+  /**
+   * 下一个要输出的字符的序号
+   */
+  private long cursor;
+  /**
+   * 当前字符上下一个要输出的词条，{@link #UNSTARTED}表示还没有开始，{@link #NONE}表示已经输出完
+   */
+  private int hit;
+  /**
+   * 已经输出的词条覆盖到的字符序号（不包含）
+   */
+  private long coveredUntil;
+  private int state;
+  private boolean eof;
+  private long lastTokenStart;
+  /**
+   * 词典外的连续英文字母、数字最多的码点数，超出时按此长度切开
+   */
+  private int maxTokenLength = BaseTokenizer.UNLIMITED_TOKEN_LENGTH;
+
+  AhoCorasickTokenizer(AhoCorasickAutomaton automaton, TokenizerMetrics metrics) {
+    this.automaton = automaton;
+    this.metrics = metrics;
+    this.termAtt = addAttribute(CharTermAttribute.class);
+    this.offsetAtt = addAttribute(OffsetAttribute.class);
+    this.typeAtt = addAttribute(TypeAttribute.class);
+    this.posIncAtt = addAttribute(PositionIncrementAttribute.class);
+  }
+
+  /**
+   * 限制词典外的词条的长度，缓冲区的大小只与最长的词条和此长度有关，在{@link #reset()}之前调用
+   */
+  @Override
+  public void setMaxTokenLength(int maxTokenLength) {
+    this.maxTokenLength = maxTokenLength;
+  }
+
+  /**
+   * @return 字符缓冲区和词条缓冲区中最大的容量
+   */
+  int bufferCapacity() {
+    return Math.max(Math.max(window.capacity(), codePoints.length), termAtt.buffer().length);
+  }
+
+  @Override
+  public boolean incrementToken() throws IOException {
+    clearAttributes();
+    while (!nextToken()) {
+      if (eof) {
+        return false;
+      }
+      feed();
+    }
+    if (recorder != null) {
+      recorder.tokens++;
+    }
+    return true;
+  }
+
+  /**
+   * 从已经确定的字符中输出下一个词条
+   *
+   * @return 没有可以输出的词条时返回false，需要读入更多的字符
+   */
+  private boolean nextToken() {
+    //读到最后之前，最近depth个字符上还可能有词条
+    final long stable = eof ? count : count - automaton.depth(state);
+    while (cursor < stable) {
+      if (hit == UNSTARTED) {
+        hit = hitHeads[(int) (cursor - bufferStart)];
+        if (hit == NONE && cursor >= coveredUntil) {
+          final int length = uncovered(stable);
+          if (length < 0) {
+            hit = UNSTARTED;
+            return false;
+          }
+          if (length > 0) {
+            emit(cursor, length);
+            cursor += length;
+            hit = UNSTARTED;
+            return true;
+          }
+        }
+      }
+      if (hit != NONE) {
+        final int length = hitLengths[hit];
+        hit = hitNext[hit];
+        coveredUntil = Math.max(coveredUntil, cursor + length);
+        emit(cursor, length);
+        return true;
+      }
+      cursor++;
+      hit = UNSTARTED;
+    }
+    return false;
+  }
+
+  /**
+   * 没有被词条覆盖的字符：连续的英文字母或数字作为一个词条，汉字单独作为一个词条
+   *
+   * @param stable 之前的字符上的词条都已经找到
+   * @return 词条的字符数，字符被忽略时为0，还不能确定时为-1
+   */
+  private int uncovered(long stable) {
+    final int codePoint = codePoints[(int) (cursor - bufferStart)];
+    final boolean english = isEnglishChar(codePoint);
+    if (english || Character.isDigit(codePoint)) {
+      long end = cursor + 1;
+      while (end - cursor < maxTokenLength && end < count && continues(end, english)) {
+        if (end >= stable) {
+          //之后还可能找到从这里开始的词条
+          return -1;
+        }
+        end++;
+      }
+      if (end - cursor < maxTokenLength && end == count && !eof) {
+        return -1;
+      }
+      if (recorder != null) {
+        if (english) {
+          recorder.englishFallbacks++;
+        } else {
+          recorder.digitFallbacks++;
+        }
+      }
+      return (int) (end - cursor);
+    }
+    if (isChineseCharacter(codePoint)) {
+      if (recorder != null) {
+        recorder.unmatched++;
+      }
+      return 1;
+    }
+    return 0;
+  }
+
+  /**
+   * @return 序号为index的字符是否与前一个字符属于同一个英文单词或数字，换行符会断开
+   */
+  private boolean continues(long index, boolean english) {
+    final int i = (int) (index - bufferStart);
+    final int codePoint = codePoints[i];
+    return (english ? isEnglishChar(codePoint) : Character.isDigit(codePoint))
+            && hitHeads[i] == NONE
+            && offsets[i] == offsets[i - 1] + Character.charCount(codePoints[i - 1]);
+  }
+
+  private void emit(long start, int length) {
+    final int first = (int) (start - bufferStart);
+    final int last = first + length - 1;
+    char[] buffer = termAtt.buffer();
+    if (buffer.length < length << 1) {
+      buffer = termAtt.resizeBuffer(length << 1);
+    }
+    int charCount = 0;
+    for (int i = first; i <= last; i++) {
+      charCount += Character.toChars(codePoints[i], buffer, charCount);
+    }
+    termAtt.setLength(charCount);
+    final long tokenStart = offsets[first];
+    offsetAtt.setOffset(correctOffset(offset(tokenStart)),
+            correctOffset(offset(offsets[last] + Character.charCount(codePoints[last]))));
+    posIncAtt.setPositionIncrement(tokenStart == lastTokenStart ? 0 : 1);
+    typeAtt.setType(TypeAttribute.DEFAULT_TYPE);
+    lastTokenStart = tokenStart;
+  }
+
+  /**
+   * 读入一个字符，记录以它结尾的所有词条
+   */
+  private void feed() throws IOException {
+    final long offset = window.position();
+    final int read = window.read();
+    window.mark();
+    if (read == InputWindow.EOF) {
+      eof = true;
+      return;
+    }
+    //与BaseTokenizer一致，换行符不参与匹配
+    if (read == '\n' || read == '\r') {
+      return;
+    }
+    final long index = append(read, offset);
+    if (recorder != null) {
+      recorder.arcLookups++;
+    }
+    state = automaton.next(state, Character.toLowerCase(read));
+    //以当前字符结尾的词条从长到短，起始位置各不相同；同一位置上后找到的词条更长，插入到链表的头部
+    for (int word = automaton.output(state); word != NONE; word = automaton.nextOutput(word)) {
+      final int start = (int) (index - automaton.depth(word) + 1 - bufferStart);
+      if (hitCount == hitLengths.length) {
+        hitLengths = Arrays.copyOf(hitLengths, hitCount * 2);
+        hitNext = Arrays.copyOf(hitNext, hitCount * 2);
+      }
+      hitLengths[hitCount] = automaton.depth(word);
+      hitNext[hitCount] = hitHeads[start];
+      hitHeads[start] = hitCount++;
+    }
+  }
+
+  /**
+   * @return 字符的序号
+   */
+  private long append(int codePoint, long offset) {
+    if (cursor == count) {
+      //之前的字符都已经输出
+      bufferStart = count;
+      hitCount = 0;
+    } else if (count - bufferStart == codePoints.length) {
+      compact();
+    }
+    final int i = (int) (count - bufferStart);
+    codePoints[i] = codePoint;
+    offsets[i] = offset;
+    hitHeads[i] = NONE;
+    return count++;
+  }
+
+  /**
+   * 丢弃已经输出的字符和词条，剩余的部分仍然放不下一半时扩容
+   */
+  private void compact() {
+    final int from = (int) (cursor - bufferStart);
+    final int remaining = (int) (count - cursor);
+    final int capacity = remaining * 2 > codePoints.length ? codePoints.length * 2 : codePoints.length;
+    codePoints = shift(codePoints, from, remaining, capacity);
+    offsets = shift(offsets, from, remaining, capacity);
+    final int[] heads = new int[capacity];
+    final int[] lengths = new int[Math.max(hitCount, 64)];
+    final int[] next = new int[lengths.length];
+    int copied = 0;
+    for (int i = 0; i < remaining; i++) {
+      heads[i] = NONE;
+      int tail = NONE;
+      for (int node = hitHeads[from + i]; node != NONE; node = hitNext[node]) {
+        lengths[copied] = hitLengths[node];
+        next[copied] = NONE;
+        if (tail == NONE) {
+          heads[i] = copied;
+        } else {
+          next[tail] = copied;
+        }
+        if (node == hit) {
+          hit = copied;
+        }
+        tail = copied++;
+      }
+    }
+    hitHeads = heads;
+    hitLengths = lengths;
+    hitNext = next;
+    hitCount = copied;
+    bufferStart = cursor;
+  }
+
+  private static int[] shift(int[] array, int from, int length, int capacity) {
+    final int[] shifted = new int[capacity];
+    System.arraycopy(array, from, shifted, 0, length);
+    return shifted;
+  }
+
+  private static long[] shift(long[] array, int from, int length, int capacity) {
+    final long[] shifted = new long[capacity];
+    System.arraycopy(array, from, shifted, 0, length);
+    return shifted;
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    window.reset(input);
+    state = ROOT;
+    bufferStart = 0;
+    count = 0;
+    cursor = 0;
+    hit = UNSTARTED;
+    hitCount = 0;
+    coveredUntil = 0;
+    eof = false;
+    lastTokenStart = -1;
+    if (metrics == null || !metrics.isEnabled()) {
+      recorder = null;
+    } else if (recorder == null) {
+      recorder = new TokenizerMetrics.Recorder(metrics);
+    }
+  }
+
+  @Override
+  public void end() throws IOException {
+    super.end();
+    final int finalOffset = correctOffset(offset(window.limit()));
+    offsetAtt.setOffset(finalOffset, finalOffset);
+    if (recorder != null) {
+      recorder.chars += window.limit();
+      recorder.flush();
+    }
+  }
+}
@@ -1,36 +1,32 @@
 package cn.yxffcode.easyanalyzer.analyzer;
 
-import cn.yxffcode.easyanalyzer.collection.IntStack;
+import cn.yxffcode.easyanalyzer.io.InputWindow;
 import cn.yxffcode.easyanalyzer.lang.IntArrayStringBuilder;
-import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
 import org.apache.lucene.analysis.Tokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
-import org.apache.lucene.util.CharsRef;
-import org.apache.lucene.util.fst.FST;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.Reader;
+import java.util.Arrays;
 
 /**
- * 对输入进行分词，真正的分词实现，是有状态的
+ * 对输入进行分词，真正的分词实现，是有状态的.
+ * <p/>
+ * 匹配失败时结束匹配的字符（包括空白字符）会被重新读取，词典外连续的英文字母、数字不会越过空白字符，
+ * 如词典中有“bbc”时“bb a”切分为“bb”和“a”，而不是“bba”。换行符不参与匹配，词典中的词条可以越过换行符
  *
  * @author gaohang on 15/11/18.
  */
-abstract class BaseTokenizer extends Tokenizer {
+abstract class BaseTokenizer extends Tokenizer implements LimitedComponents.LengthLimited {
 
   /**
-   * FST中的字节与此int做&，对于UTF-8编码，很多字符不只一个字节，
-   * FST在存储字节里将多字节字符中每个字节做了一个按位与，因此在匹
-   * 配的时候需要将输入的字节转换成FST中的格式
+   * 读到了输入的最后
    */
-  private static final int FST_LABEL_FLAG = 0xFF;
-  /**
-   * 读到了{@link #reader}的最后
-   */
-  private static final int EOF = -1;
+  private static final int EOF = InputWindow.EOF;
   /**
    * 中文字符的起始数字
    */
@@ -39,68 +35,265 @@ abstract class BaseTokenizer extends Tokenizer {
    * 中文字符的最大字符数字
    */
   private static final int CN_CHAR_LAST = 171941;
+  /**
+   * appender的前缀不是词典中的词，没有附加信息
+   */
+  private static final long NO_METADATA = -1;
+  /**
+   * 不限制词条的长度
+   */
+  static final int UNLIMITED_TOKEN_LENGTH = Integer.MAX_VALUE;
 
   /**
-   * 底层字典的存储，用于分词时将输入与之做匹配
+   * 分词器读取的词典，可重新加载的词典在每次{@link #reset()}时取最新的版本
+   */
+  private final Dictionary dictionary;
+  /**
+   * 当前使用的词典版本
+   */
+  private Dictionary snapshot;
+  /**
+   * 在底层词典上做匹配的状态机，分词时将输入与之做匹配
+   */
+  private Matcher matcher;
+  /**
+   * 存储已匹配的输入，最终形成输出。每次{@link #doToken()}都会清空并复用，
+   * 子类只能在下一次调用{@link #doToken()}之前读取其中的内容
+   */
+  private final IntArrayStringBuilder appender = new IntArrayStringBuilder();
+  /**
+   * appender中每个字符在输入中的位置，用于将字符压回输入
+   */
+  private long[] offsets = new long[16];
+  /**
+   * appender中到每个字符为止的前缀是词典中的词时为词条的附加信息，否则为{@link #NO_METADATA}，
+   * 在匹配的过程中记录，输出词条时不需要再查词典
+   */
+  private long[] metadata = new long[16];
+  /**
+   * 最近一次读取的字符在输入中的位置
+   */
+  private long readOffset;
+  /**
+   * 当前词条在输入中的起止位置，由{@link #emit(int)}记录
+   */
+  private long tokenStart;
+  private long tokenEnd;
+  private long tokenMetadata;
+  /**
+   * 上一个输出的词条的起始位置
    */
-  private final FST<CharsRef> fst;
+  private long lastTokenStart;
   /**
    * 分词后的词条结果
    */
   private final CharTermAttribute termAtt;
   private final OffsetAttribute offsetAtt;
   private final TypeAttribute typeAtt;
+  private final FlagsAttribute flagsAtt;
+  /**
+   * 与上一个词条起始位置相同的词条（如前缀词），位置增量为0
+   */
+  private final PositionIncrementAttribute posIncAtt;
+  /**
+   * 输入窗口，没有完全匹配的字符通过回退窗口的读取位置重新读取，
+   * 窗口的缓冲区在每一次{@link #reset()}后复用
+   */
+  private final InputWindow window;
+  private final TokenizerMetrics metrics;
+  /**
+   * 统计开启时当前文档的计数，关闭时为null，在每次{@link #reset()}时根据统计是否开启决定
+   */
+  private TokenizerMetrics.Recorder recorder;
+  /**
+   * 只计算词条的边界，{@link #emit(int)}不写入{@link CharTermAttribute}，由{@link Segmenter}在{@link #reset()}后开启
+   */
+  private boolean boundariesOnly;
   /**
-   * 用于临时存放没有完全匹配的字符，{@link PushbackReader}默认只支持一个字符的pushback，
-   * 如果指定pushback的buffer大小，则每一次{@link #reset()}的调用都需要重新创建buffer。
+   * 词条最多的码点数，连续的英文字母、数字超出时按此长度切开，匹配到此长度时也结束匹配
    */
-  protected IntStack bufStack;
+  private int maxTokenLength = UNLIMITED_TOKEN_LENGTH;
+  /**
+   * 一次匹配从第一个字符开始最多读取的char数，包括被跳过的换行符，限制输入窗口的大小
+   */
+  private int maxTokenSpan = UNLIMITED_TOKEN_LENGTH;
   protected TokenState state;
-  private Reader reader;
 
-  protected BaseTokenizer(FST<CharsRef> fst) {
-    this.fst = fst;
+  /**
+   * @param metrics 所属分词器的统计，为null时不统计
+   */
+  protected BaseTokenizer(Dictionary dictionary, TokenizerMetrics metrics) {
+    this.dictionary = dictionary;
+    this.metrics = metrics;
+    this.snapshot = dictionary.current();
+    this.matcher = snapshot.matcher();
     this.termAtt = addAttribute(CharTermAttribute.class);
     this.offsetAtt = addAttribute(OffsetAttribute.class);
     this.typeAtt = addAttribute(TypeAttribute.class);
-    this.bufStack = new IntStack(50);//最多50个字符，够用了
+    this.flagsAtt = addAttribute(FlagsAttribute.class);
+    this.posIncAtt = addAttribute(PositionIncrementAttribute.class);
+    this.window = new InputWindow();
   }
 
   @Override
-  public boolean incrementToken() throws IOException {
+  public final boolean incrementToken() throws IOException {
     clearAttributes();
-    String word = nextWorld();
-    if (Strings.isNullOrEmpty(word)) {
+    if (!nextWord()) {
       return false;
     }
-    char[] buffer = word.toCharArray();
-    termAtt.copyBuffer(buffer, 0, buffer.length);
-    offsetAtt.setOffset(0, buffer.length);
-    typeAtt.setType(TypeAttribute.DEFAULT_TYPE);
+    offsetAtt.setOffset(correctOffset(offset(tokenStart)), correctOffset(offset(tokenEnd)));
+    posIncAtt.setPositionIncrement(tokenStart == lastTokenStart ? 0 : 1);
+    lastTokenStart = tokenStart;
+    if (tokenMetadata == NO_METADATA) {
+      typeAtt.setType(TypeAttribute.DEFAULT_TYPE);
+    } else {
+      typeAtt.setType(snapshot.type(tokenMetadata));
+      flagsAtt.setFlags(snapshot.flags(tokenMetadata));
+    }
+    if (recorder != null) {
+      recorder.tokens++;
+    }
+    return true;
+  }
+
+  /**
+   * 只取得下一个词条的起止位置，不写入任何属性，起止位置通过{@link #tokenStart()}和{@link #tokenEnd()}读取
+   *
+   * @return 是否还有词条
+   */
+  final boolean nextBoundary() throws IOException {
+    if (!nextWord()) {
+      return false;
+    }
+    if (recorder != null) {
+      recorder.tokens++;
+    }
     return true;
   }
 
-  protected abstract String nextWorld() throws IOException;
+  final int tokenStart() {
+    return correctOffset(offset(tokenStart));
+  }
+
+  final int tokenEnd() {
+    return correctOffset(offset(tokenEnd));
+  }
+
+  /**
+   * 在{@link #reset()}之后调用，到下一次{@link #reset()}之前有效
+   */
+  final void setBoundariesOnly(boolean boundariesOnly) {
+    this.boundariesOnly = boundariesOnly;
+  }
+
+  /**
+   * 限制词条的长度，分词器的缓冲区和输入窗口的大小都不超过此长度的常数倍，不再随输入增长.
+   * <p/>
+   * 在{@link #reset()}之前调用，对之后的输入有效
+   *
+   * @param maxTokenLength 词条最多的码点数，{@link #UNLIMITED_TOKEN_LENGTH}表示不限制
+   */
+  @Override
+  public final void setMaxTokenLength(int maxTokenLength) {
+    this.maxTokenLength = maxTokenLength;
+    this.maxTokenSpan = maxTokenLength > UNLIMITED_TOKEN_LENGTH / 2 ? UNLIMITED_TOKEN_LENGTH : maxTokenLength * 2;
+  }
+
+  /**
+   * @return 输入窗口、匹配缓冲区和词条缓冲区中最大的容量（char或码点的个数）
+   */
+  final int bufferCapacity() {
+    return Math.max(Math.max(window.capacity(), offsets.length), termAtt.buffer().length);
+  }
+
+  /**
+   * @return 当前的输入是否直接从内存中读取，在{@link #reset()}之后有效
+   */
+  final boolean directInput() {
+    return window.isDirect();
+  }
+
+  /**
+   * @return 当前文档的计数，统计关闭时为null，在{@link #reset()}之后有效
+   */
+  final TokenizerMetrics.Recorder recorder() {
+    return recorder;
+  }
+
+  /**
+   * 输出下一个词条，词条需要通过{@link #emit(int)}写入，以避免创建中间的字符串
+   *
+   * @return 是否还有词条
+   */
+  protected abstract boolean nextWord() throws IOException;
+
+  /**
+   * 将当前匹配的前length个字符作为词条，直接写入{@link CharTermAttribute}的缓冲区，
+   * 同时记录词条在输入中的起止位置
+   */
+  protected final void emit(int length) {
+    markToken(length);
+    if (boundariesOnly) {
+      return;
+    }
+    char[] buffer = termAtt.buffer();
+    //增补字符占两个char
+    if (buffer.length < length << 1) {
+      buffer = termAtt.resizeBuffer(length << 1);
+    }
+    int charCount = 0;
+    for (int i = 0; i < length; i++) {
+      charCount += Character.toChars(appender.element(i), buffer, charCount);
+    }
+    termAtt.setLength(charCount);
+  }
+
+  private void markToken(int length) {
+    final int last = length - 1;
+    tokenStart = offsets[0];
+    tokenEnd = offsets[last] + Character.charCount(appender.element(last));
+    tokenMetadata = metadata[last];
+  }
 
   @Override
   public void reset() throws IOException {
     super.reset();
-    reader = super.input;
+    //词典被替换后，新的输入使用新的词典，正在分词的输入不受影响
+    final Dictionary latest = dictionary.current();
+    if (latest != snapshot) {
+      snapshot = latest;
+      matcher = latest.matcher();
+    }
+    window.reset(super.input);
     state = TokenState.ING;
+    lastTokenStart = -1;
+    boundariesOnly = false;
+    if (metrics == null || !metrics.isEnabled()) {
+      recorder = null;
+    } else if (recorder == null) {
+      recorder = new TokenizerMetrics.Recorder(metrics);
+    }
+  }
+
+  @Override
+  public void end() throws IOException {
+    super.end();
+    final int finalOffset = correctOffset(offset(window.limit()));
+    offsetAtt.setOffset(finalOffset, finalOffset);
+    if (recorder != null) {
+      recorder.chars += window.limit();
+      recorder.flush();
+    }
   }
 
   /**
    * 获取下一个词条
    */
   protected void doToken() throws IOException {
-
-    final FST.BytesReader fstReader = fst.getBytesReader();
-
-    //用于判断最后一次匹配结束后，是否完全匹配了一个词
-    FST.Arc<CharsRef> follow = fst.getFirstArc(new FST.Arc<CharsRef>());
-
-    //存储已匹配的输入，最终形成输出
-    IntArrayStringBuilder appender = new IntArrayStringBuilder();
+    matcher.reset();
+    appender.clear();
+    //词条不会从当前位置之前开始，之前的字符不再需要保留
+    window.mark();
     /*
      * 如果第一个（从最起始位置开始连续的几个）字符没有匹配上，
      * 则说明没匹配上的字符不会是词典中的词，直接丢弃，不需要pushback到reader中
@@ -111,45 +304,51 @@ abstract class BaseTokenizer extends Tokenizer {
      * 比如词典中有“宝马”和“宝马X6”，输入是”宝马X“，那么应该能识别出”宝马“这个词，
      * lastMatchedWord用来存储最近一次完全匹配，如果最终不能匹配，则返回最近一次完全匹配的词
      */
-    outer:
     while ((read = readNextChar()) != -1) {
-      //忽略换行符
+      //忽略换行符，还没有开始匹配时换行符之前的字符不再需要保留，匹配中的换行符也计入读取的范围
       if (isLineDelimiter(read)) {
-        continue;
+        if (appender.isEmpty()) {
+          window.mark();
+          continue;
+        }
+        if (readOffset - offsets[0] < maxTokenSpan) {
+          continue;
+        }
       }
-      /*
-       * UTF-8中，字符可能不是单字节（有些汉字是3字节，有些汉字是4字节）.
-       * 需要将读取到的int按照字符的编码顺序转换成字节数组
-       */
-      byte[] input = Character.toString((char) Character.toLowerCase(read)).getBytes();
-
-      //需要一次读取的int表示的字符中的所有字节都能匹配上，才认为成功匹配了一个字符
-      for (byte b : input) {
-        final FST.Arc<CharsRef> current = new FST.Arc<>();
-        if (fst.findTargetArc(b & FST_LABEL_FLAG, follow, current, fstReader) == null) {
-          /*
-           * 最近一次匹配失败，词条匹配结束，将最近一次读取压回输入流，
-           * 如果是空白字符，则不需要压回
-           */
-          if (!first && !Character.isWhitespace(read)) {
-            bufStack.push(read);
-          } else if (isEnglishChar(read) || Character.isDigit(read)) {
-            appender.append(read);
-          } else if (isChineseCharacter(read)) {
-            appender.append(read);
-            onMatchFinished(appender);
-            return;
-          }
-          break outer;
+      //达到长度限制时结束匹配，与匹配失败一样处理当前字符
+      if (!appender.isEmpty()
+              && (appender.length() == maxTokenLength || readOffset - offsets[0] >= maxTokenSpan)) {
+        rewind(readOffset);
+        break;
+      }
+      if (recorder != null) {
+        recorder.arcLookups++;
+      }
+      if (!matcher.match(Character.toLowerCase(read))) {
+        /*
+         * 最近一次匹配失败，词条匹配结束，将最近一次读取压回输入流，
+         * 空白字符也要压回，否则之后英文和数字的延续会越过它
+         */
+        if (!first) {
+          rewind(readOffset);
+        } else if (isEnglishChar(read) || Character.isDigit(read)) {
+          append(read);
+        } else if (isChineseCharacter(read)) {
+          append(read);
+          onMatchFinished(appender);
+          return;
         }
-        follow = current;
+        break;
       }
       //存储将匹配成功的字符
-      appender.append(read);
+      append(read);
       first = false;
       //已经匹配成功了一个词条，匹配还没完成（可能不是最大匹配），存储最近匹配成功的词条
-      if (follow.isFinal() && !appender.isBlank() && !onWordMatched(appender)) {
-        return;
+      if (matcher.isFinal()) {
+        metadata[appender.length() - 1] = matcher.metadata();
+        if (!appender.isBlank() && !onWordMatched(appender)) {
+          return;
+        }
       }
     }
     if (appender.isBlank()) {
@@ -157,33 +356,42 @@ abstract class BaseTokenizer extends Tokenizer {
       return;
     }
     //如果能最大匹配，则返回最大匹配结果
-    if (follow.isFinal()) {
+    if (matcher.isFinal()) {
       onMatchFinished(appender);
     } else {
       //check english words
       if (isEnglishWord(appender)) {
-        while ((read = readNextChar()) != -1) {
+        while (appender.length() < maxTokenLength && (read = readNextChar()) != -1) {
           if (isEnglishChar(read)) {
-            appender.append(read);
+            append(read);
           } else {
-            bufStack.push(read);
+            rewind(readOffset);
             break;
           }
         }
+        if (recorder != null) {
+          recorder.englishFallbacks++;
+        }
         onMatchFinished(appender);
 
       } else if (isDigitWord(appender)) {
         //check digits
-        while ((read = readNextChar()) != -1) {
+        while (appender.length() < maxTokenLength && (read = readNextChar()) != -1) {
           if (Character.isDigit(read)) {
-            appender.append(read);
+            append(read);
           } else {
-            bufStack.push(read);
+            rewind(readOffset);
             break;
           }
         }
+        if (recorder != null) {
+          recorder.digitFallbacks++;
+        }
         onMatchFinished(appender);
       } else {
+        if (recorder != null) {
+          recorder.unmatched++;
+        }
         onUnmatched(appender);
       }
     }
@@ -191,22 +399,65 @@ abstract class BaseTokenizer extends Tokenizer {
     checkState(read);
   }
 
+  /**
+   * 读取下一个字符的码点，代理对会被合并成一个增补字符
+   */
   private int readNextChar() throws IOException {
-    return bufStack.isEmpty() ? reader.read() : bufStack.poll();
+    readOffset = window.position();
+    return window.read();
+  }
+
+  /**
+   * 存储最近一次读取的字符及其位置
+   */
+  private void append(int read) {
+    final int index = appender.length();
+    if (index == offsets.length) {
+      offsets = Arrays.copyOf(offsets, index * 2);
+      metadata = Arrays.copyOf(metadata, index * 2);
+    }
+    offsets[index] = readOffset;
+    metadata[index] = NO_METADATA;
+    appender.append(read);
+  }
+
+  /**
+   * 将appender中从begin开始的字符压回输入，下一次匹配从这些字符开始
+   */
+  protected void pushBack(int begin) {
+    if (begin < appender.length()) {
+      rewind(offsets[begin]);
+    }
+  }
+
+  private void rewind(long position) {
+    if (recorder != null) {
+      recorder.pushback((int) (window.position() - position));
+    }
+    window.rewind(position);
   }
 
   private boolean isLineDelimiter(int read) {
     return read == '\n' || read == '\r';
   }
 
-  private boolean isEnglishChar(int c) {
+  /**
+   * lucene中的位置为int，超出int范围的输入位置按{@link Integer#MAX_VALUE}输出，分词本身不受影响
+   *
+   * @param position {@link InputWindow}中的绝对位置
+   */
+  static int offset(long position) {
+    return Ints.saturatedCast(position);
+  }
+
+  static boolean isEnglishChar(int c) {
     return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
   }
 
   /**
    * 判断字符是不是中文字符
    */
-  private boolean isChineseCharacter(int ch) {
+  static boolean isChineseCharacter(int ch) {
     return ch >= CN_CHAR_FIRST && ch <= CN_CHAR_LAST;
   }
 
@@ -215,7 +466,7 @@ abstract class BaseTokenizer extends Tokenizer {
   protected abstract boolean onWordMatched(IntArrayStringBuilder appender);
 
   private void checkState(int read) {
-    if (bufStack.isEmpty() && read == EOF) {
+    if (read == EOF && window.exhausted()) {
       state = TokenState.FINISHED;
     }
   }
@@ -0,0 +1,283 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 将很长的文档切成多段并行分词，再按段的顺序拼接成一个文档的结果，词条的起止位置是在整个文档中的位置.
+ * <p/>
+ * 只在句子标点、换行和空白字符之后切分，分词器匹配到这些字符时会结束当前的词条，从切分位置开始分词与从文档开头
+ * 一直分词到切分位置的结果相同。词典中的词条可能包含标点，分词时换行符也会被跳过，因此每个候选位置还要用词典检查：
+ * 从候选位置之前最长词条长度的范围内的每个位置开始匹配，能越过候选位置的不切分.
+ * <p/>
+ * 每次切分时取词典的当前版本（{@link Dictionary#current()}），检查切分位置和分词都使用这个版本：
+ * 分词器由传入的工厂在这个版本上创建，词典没有变化时复用，因此{@link ReloadableDictionary}在切分过程中重新加载时，
+ * 两者看到的词条也相同。最长词条的长度可以通过{@link FSTFactory#maxWordLength(org.apache.lucene.util.fst.FST)}计算，
+ * 词典会重新加载时需要不小于所有版本中最长的词条.
+ * <p/>
+ * 结果不计算词条的序号，{@link Segmentation#ordinal(int)}会抛出异常，{@link Segmentation#termCount()}为-1
+ *
+ * @author gaohang on 15/12/26.
+ */
+public final class ChunkedSegmenter {
+
+  private static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+  /**
+   * 可以作为切分位置的句子标点，空白字符和换行总是可以
+   */
+  private static final String SENTENCE_DELIMITERS = "。！？；…!?;";
+
+  private final Function<? super Dictionary, ? extends Analyzer> analyzerFactory;
+  private final Dictionary dictionary;
+  private final int maxWordLength;
+  private final ExecutorService executor;
+  private final int chunkSize;
+  /**
+   * 最近一次使用的词典版本及在其上创建的分词器
+   */
+  private volatile Snapshot snapshot;
+
+  private ChunkedSegmenter(Function<? super Dictionary, ? extends Analyzer> analyzerFactory, Dictionary dictionary,
+                           int maxWordLength, ExecutorService executor, int chunkSize) {
+    this.analyzerFactory = analyzerFactory;
+    this.dictionary = dictionary;
+    this.maxWordLength = maxWordLength;
+    this.executor = executor;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * 使用{@link ForkJoinPool#commonPool()}，每段64K个字符
+   *
+   * @see #create(Function, Dictionary, int, ExecutorService, int)
+   */
+  public static ChunkedSegmenter create(@NotNull Function<? super Dictionary, ? extends Analyzer> analyzerFactory,
+                                        @NotNull Dictionary dictionary, int maxWordLength) {
+    return create(analyzerFactory, dictionary, maxWordLength, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * @param analyzerFactory 在词典的一个版本上创建分词器，如{@code CompleteFSTAnalyzer.create(snapshot, false)}
+   * @param dictionary      词典，每次切分时取当前版本，用于检查切分位置和创建分词器
+   * @param maxWordLength   词典中最长的词条的char数
+   * @param executor        并行分词的线程池，不会被关闭
+   * @param chunkSize       每段的目标字符数，实际的段在最近的可以切分的位置结束
+   */
+  public static ChunkedSegmenter create(@NotNull Function<? super Dictionary, ? extends Analyzer> analyzerFactory,
+                                        @NotNull Dictionary dictionary, int maxWordLength,
+                                        @NotNull ExecutorService executor, int chunkSize) {
+    checkNotNull(analyzerFactory);
+    checkNotNull(dictionary);
+    checkNotNull(executor);
+    checkArgument(maxWordLength >= 0, "maxWordLength must not be negative");
+    checkArgument(chunkSize > maxWordLength, "chunkSize must be greater than maxWordLength");
+    return new ChunkedSegmenter(analyzerFactory, dictionary, maxWordLength, executor, chunkSize);
+  }
+
+  /**
+   * 切分一个文档，文档只有一段时在当前线程中分词
+   *
+   * @return 只有一个文档的结果，不包含词条的序号
+   */
+  public Segmentation segment(@NotNull CharSequence document) throws IOException {
+    checkNotNull(document);
+    final Snapshot snapshot = snapshot();
+    final int[] cuts = cuts(document, snapshot.dictionary);
+    final Segmenter segmenter = snapshot.segmenter;
+    if (cuts.length == 2) {
+      return segmenter.segment(Collections.singletonList(document));
+    }
+    final List<Future<Segmentation>> chunks = Lists.newArrayListWithCapacity(cuts.length - 1);
+    final Segmentation[] segmentations = new Segmentation[cuts.length - 1];
+    int tokenCount = 0;
+    boolean completed = false;
+    try {
+      for (int i = 0; i + 1 < cuts.length; i++) {
+        final CharSequence chunk = document.subSequence(cuts[i], cuts[i + 1]);
+        chunks.add(executor.submit(new Callable<Segmentation>() {
+          @Override
+          public Segmentation call() throws Exception {
+            return segmenter.segment(Collections.singletonList(chunk));
+          }
+        }));
+      }
+      for (int i = 0; i < segmentations.length; i++) {
+        segmentations[i] = get(chunks.get(i));
+        tokenCount += segmentations[i].tokenCount();
+      }
+      completed = true;
+    } finally {
+      //有一段失败时结果已经不完整，取消还没有完成的段
+      if (!completed) {
+        for (Future<Segmentation> chunk : chunks) {
+          chunk.cancel(true);
+        }
+      }
+    }
+    //按段的顺序拼接，起止位置加上段在文档中的起始位置
+    final int[] startOffsets = new int[tokenCount];
+    final int[] endOffsets = new int[tokenCount];
+    int token = 0;
+    for (int i = 0; i < segmentations.length; i++) {
+      final Segmentation segmentation = segmentations[i];
+      final int base = cuts[i];
+      for (int j = 0, count = segmentation.tokenCount(); j < count; j++, token++) {
+        startOffsets[token] = base + segmentation.startOffset(j);
+        endOffsets[token] = base + segmentation.endOffset(j);
+      }
+    }
+    return new Segmentation(new int[]{0, tokenCount}, startOffsets, endOffsets, null, -1);
+  }
+
+  /**
+   * 词典的当前版本及在其上创建的分词器，版本没有变化时复用
+   */
+  private Snapshot snapshot() {
+    final Dictionary current = dictionary.current();
+    Snapshot snapshot = this.snapshot;
+    if (snapshot == null || snapshot.dictionary != current) {
+      snapshot = new Snapshot(current, Segmenter.create(checkNotNull(analyzerFactory.apply(current))));
+      this.snapshot = snapshot;
+    }
+    return snapshot;
+  }
+
+  /**
+   * @see #cuts(CharSequence, Dictionary)
+   */
+  int[] cuts(CharSequence document) throws IOException {
+    return cuts(document, snapshot().dictionary);
+  }
+
+  /**
+   * 在每段的目标结束位置之前的半段内找最后一个可以切分的位置，找不到时向后找第一个
+   *
+   * @param snapshot 词典的一个版本，与分词器使用的版本相同
+   * @return 切分位置，第一个元素为0，最后一个元素为文档的长度
+   */
+  private int[] cuts(CharSequence document, Dictionary snapshot) throws IOException {
+    final Matcher matcher = snapshot.matcher();
+    final int length = document.length();
+    int[] cuts = new int[]{0, 0, 0, 0};
+    int count = 1;
+    int start = 0;
+    while (length - start > chunkSize) {
+      final int target = start + chunkSize;
+      int cut = -1;
+      for (int p = target; p > start + chunkSize / 2 && cut < 0; p--) {
+        if (isCut(document, p, matcher)) {
+          cut = p;
+        }
+      }
+      for (int p = target + 1; p < length && cut < 0; p++) {
+        if (isCut(document, p, matcher)) {
+          cut = p;
+        }
+      }
+      if (cut < 0) {
+        break;
+      }
+      if (count == cuts.length) {
+        cuts = Arrays.copyOf(cuts, count * 2);
+      }
+      cuts[count++] = cut;
+      start = cut;
+    }
+    if (count == cuts.length) {
+      cuts = Arrays.copyOf(cuts, count + 1);
+    }
+    cuts[count++] = length;
+    return Arrays.copyOf(cuts, count);
+  }
+
+  /**
+   * 位置之前是分隔字符，并且没有词条可以越过这个位置
+   */
+  private boolean isCut(CharSequence document, int position, Matcher matcher) throws IOException {
+    return isDelimiter(document.charAt(position - 1)) && !isSpanned(document, position, matcher);
+  }
+
+  private static boolean isDelimiter(char c) {
+    return Character.isWhitespace(c) || SENTENCE_DELIMITERS.indexOf(c) >= 0;
+  }
+
+  /**
+   * 从位置之前最长词条长度范围内的每个位置开始在词典上匹配，与分词器一样跳过换行符并转换成小写
+   *
+   * @return 是否有匹配越过了这个位置，越过时不一定是完整的词条
+   */
+  private boolean isSpanned(CharSequence document, int position, Matcher matcher) throws IOException {
+    int counted = 0;
+    for (int start = position - 1; start >= 0 && counted < maxWordLength; start--) {
+      final char c = document.charAt(start);
+      if (isLineDelimiter(c)) {
+        continue;
+      }
+      counted++;
+      if (Character.isLowSurrogate(c) && start > 0 && Character.isHighSurrogate(document.charAt(start - 1))) {
+        continue;
+      }
+      matcher.reset();
+      int i = start;
+      while (i < document.length()) {
+        final int codePoint = Character.codePointAt(document, i);
+        if (isLineDelimiter(codePoint)) {
+          i++;
+          continue;
+        }
+        if (!matcher.match(Character.toLowerCase(codePoint))) {
+          break;
+        }
+        if (i >= position) {
+          return true;
+        }
+        i += Character.charCount(codePoint);
+      }
+    }
+    return false;
+  }
+
+  private static boolean isLineDelimiter(int c) {
+    return c == '\n' || c == '\r';
+  }
+
+  private static final class Snapshot {
+    private final Dictionary dictionary;
+    private final Segmenter segmenter;
+
+    private Snapshot(Dictionary dictionary, Segmenter segmenter) {
+      this.dictionary = dictionary;
+      this.segmenter = segmenter;
+    }
+  }
+
+  private static <T> T get(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while segmenting", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
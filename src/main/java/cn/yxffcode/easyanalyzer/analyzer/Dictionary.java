@@ -0,0 +1,61 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+
+/**
+ * 分词器使用的词典，分词时通过{@link #matcher()}逐个字符地与词典做匹配.
+ * <p/>
+ * 词典本身是不可变的，可以在多个分词器之间共享；{@link Matcher}是有状态的，每个分词器各自持有一个.
+ * <p/>
+ * 分词器只依赖于这个抽象，各个分词器都可以通过create(Dictionary, boolean)使用任意的实现：
+ * {@link FSTDictionary}占用内存少，{@link MappedFST}不占用堆内存，{@link DoubleArrayTrie}每个字符只需要
+ * 常数时间的查找，适合对延迟敏感的场景，{@link TaggedDictionary}在匹配的同时给出词条的类型和标记
+ *
+ * @author gaohang on 15/12/14.
+ */
+public abstract class Dictionary {
+
+  /**
+   * 根节点直接寻址表最多的项数，表从根节点上最小的标签开始，超出范围的标签（如增补字符）仍然在FST中查找
+   */
+  static final int ROOT_TABLE_MAX_SIZE = 1 << 16;
+
+  /**
+   * 基于堆内的{@link FST}的词典
+   */
+  static Dictionary of(FST<CharsRef> fst) {
+    return new FSTDictionary(fst);
+  }
+
+  /**
+   * @return 新的匹配器，只能在一个线程中使用
+   */
+  public abstract Matcher matcher();
+
+  /**
+   * @param metadata 由{@link Matcher#metadata()}取得的词条的附加信息
+   * @return 词条的类型，分词器写入{@link TypeAttribute}
+   */
+  public String type(long metadata) {
+    return TypeAttribute.DEFAULT_TYPE;
+  }
+
+  /**
+   * @param metadata 由{@link Matcher#metadata()}取得的词条的附加信息
+   * @return 词条的标记，分词器写入{@link org.apache.lucene.analysis.tokenattributes.FlagsAttribute}
+   */
+  public int flags(long metadata) {
+    return 0;
+  }
+
+  /**
+   * 分词器在每次开始处理新的输入时通过此方法取得词典的当前版本，并在整个输入的分词过程中使用这个版本
+   *
+   * @return 不可变的词典，默认为自身
+   */
+  public Dictionary current() {
+    return this;
+  }
+}
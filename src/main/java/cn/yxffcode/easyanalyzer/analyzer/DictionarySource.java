@@ -0,0 +1,204 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.collection.IteratorAdapter;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 一个.dic文本词典，可以是文件系统中的文件，也可以是jar包中的条目，以.dic.gz结尾的词典按gzip解压.
+ * <p/>
+ * 词典通过NIO的channel读取，按UTF-8解码，不依赖平台默认字符集，无法解码的字节会抛出异常而不是被替换
+ *
+ * @author gaohang on 15/12/18.
+ */
+final class DictionarySource {
+
+  static final String DICTIONARY_SUFFIX = ".dic";
+  static final String COMPRESSED_SUFFIX = ".dic.gz";
+
+  /**
+   * 读取和解码的缓冲大小
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final URL url;
+  /**
+   * 不在文件系统中时为null
+   */
+  private final File file;
+  private final boolean compressed;
+
+  private DictionarySource(URL url, File file, String name) {
+    this.url = url;
+    this.file = file;
+    this.compressed = name.endsWith(COMPRESSED_SUFFIX);
+  }
+
+  static DictionarySource of(File file) throws IOException {
+    checkNotNull(file);
+    return new DictionarySource(file.toURI().toURL(), file, file.getName());
+  }
+
+  static boolean isDictionary(String name) {
+    return name.endsWith(DICTIONARY_SUFFIX) || name.endsWith(COMPRESSED_SUFFIX);
+  }
+
+  /**
+   * 类路径下的所有词典，文件系统中的目录会被广度优先地遍历，jar包中的目录包含其下所有层级的词典
+   */
+  static List<DictionarySource> resolve(String classpath, ClassLoader classLoader) throws IOException {
+    final Enumeration<URL> resources = checkNotNull(classLoader.getResources(classpath));
+    final List<DictionarySource> sources = Lists.newArrayList();
+    for (Iterator<URL> iterator = IteratorAdapter.create(resources); iterator.hasNext(); ) {
+      final URL url = iterator.next();
+      if ("file".equals(url.getProtocol())) {
+        resolveFile(toFile(url), sources);
+      } else if ("jar".equals(url.getProtocol())) {
+        resolveJar(url, sources);
+      } else {
+        //其它协议无法列出目录，只能作为单个词典读取
+        sources.add(new DictionarySource(url, null, url.getPath()));
+      }
+    }
+    return sources;
+  }
+
+  static List<DictionarySource> of(Iterable<File> files) throws IOException {
+    final List<DictionarySource> sources = Lists.newArrayList();
+    for (File file : files) {
+      sources.add(of(file));
+    }
+    return sources;
+  }
+
+  private static File toFile(URL url) {
+    try {
+      //url.getFile()不会解码空格等转义的字符
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return new File(url.getFile());
+    }
+  }
+
+  private static void resolveFile(File file, List<DictionarySource> sources) throws IOException {
+    if (file.isFile()) {
+      sources.add(of(file));
+      return;
+    }
+    if (!file.isDirectory()) {
+      return;
+    }
+    //广度优先
+    final Deque<File> queue = new ArrayDeque<>(Arrays.asList(list(file)));
+    while (!queue.isEmpty()) {
+      final File f = queue.removeFirst();
+      if (f.isDirectory()) {
+        queue.addAll(Arrays.asList(list(f)));
+      } else if (f.isFile() && isDictionary(f.getName())) {
+        sources.add(of(f));
+      }
+    }
+  }
+
+  private static File[] list(File directory) {
+    final File[] files = directory.listFiles();
+    return files == null ? new File[0] : files;
+  }
+
+  private static void resolveJar(URL url, List<DictionarySource> sources) throws IOException {
+    final JarURLConnection connection = (JarURLConnection) url.openConnection();
+    //不使用缓存的JarFile，读完后可以关闭
+    connection.setUseCaches(false);
+    final String entryName = connection.getEntryName();
+    try (JarFile jar = connection.getJarFile()) {
+      final JarEntry entry = entryName == null ? null : jar.getJarEntry(entryName);
+      if (entry != null && !entry.isDirectory()) {
+        sources.add(new DictionarySource(url, null, entryName));
+        return;
+      }
+      String prefix = entryName == null ? "" : entryName;
+      if (!prefix.isEmpty() && !prefix.endsWith("/")) {
+        prefix += '/';
+      }
+      final String base = "jar:" + connection.getJarFileURL() + "!/";
+      for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+        final JarEntry e = entries.nextElement();
+        final String name = e.getName();
+        if (!e.isDirectory() && name.startsWith(prefix) && isDictionary(name)) {
+          sources.add(new DictionarySource(new URL(base + name), null, name));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return 是否是未压缩的本地文件，可以按字节范围随机读取
+   */
+  boolean isSplittable() {
+    return file != null && !compressed;
+  }
+
+  File file() {
+    return file;
+  }
+
+  /**
+   * 按UTF-8打开词典
+   */
+  BufferedReader openReader() throws IOException {
+    ReadableByteChannel channel = openChannel();
+    if (compressed) {
+      final InputStream in = Channels.newInputStream(channel);
+      try {
+        channel = Channels.newChannel(new GZIPInputStream(in, BUFFER_SIZE));
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+    return new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT), BUFFER_SIZE), BUFFER_SIZE);
+  }
+
+  private ReadableByteChannel openChannel() throws IOException {
+    if (file != null) {
+      return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+    final URLConnection connection = url.openConnection();
+    //jar包中的条目不使用缓存的JarFile，关闭流时同时关闭jar包
+    connection.setUseCaches(false);
+    final InputStream in = connection.getInputStream();
+    return Channels.newChannel(in);
+  }
+
+  @Override
+  public String toString() {
+    return url.toString();
+  }
+}
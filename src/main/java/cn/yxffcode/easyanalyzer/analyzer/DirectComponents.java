@@ -0,0 +1,41 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.io.CharSequenceReader;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Analyzer.TokenStreamComponents;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+
+import java.io.IOException;
+
+/**
+ * 分析器组件，保存一个复用的{@link CharSequenceReader}，内存中的输入通过它传给分词器，
+ * 分词器直接按位置读取，不经过Reader和缓冲区.
+ * <p/>
+ * 组件按线程复用，其中的Reader与lucene在{@link Analyzer#tokenStream(String, String)}中复用的Reader一样，
+ * 只在同一个线程的下一次分词时才会被切换到新的输入
+ *
+ * @author gaohang on 15/12/27.
+ */
+class DirectComponents extends TokenStreamComponents {
+
+  private final CharSequenceReader reader = new CharSequenceReader();
+
+  DirectComponents(Tokenizer source) {
+    super(source);
+  }
+
+  /**
+   * 直接读取内存中的输入，当前线程第一次使用analyzer时还没有组件，此时使用新的Reader
+   *
+   * @param analyzer 通过{@link DirectComponents}创建组件的分析器
+   */
+  static TokenStream tokenStream(Analyzer analyzer, String fieldName, CharSequence text) throws IOException {
+    final TokenStreamComponents components = analyzer.getReuseStrategy().getReusableComponents(analyzer, fieldName);
+    final CharSequenceReader reader = components instanceof DirectComponents
+            ? ((DirectComponents) components).reader
+            : new CharSequenceReader();
+    reader.reset(text);
+    return analyzer.tokenStream(fieldName, reader);
+  }
+}
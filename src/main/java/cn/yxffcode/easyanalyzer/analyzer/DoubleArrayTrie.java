@@ -0,0 +1,373 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 基于双数组trie的词典，每个字符的匹配只需要常数次数组访问.
+ * <p/>
+ * 状态s经过编号为c的字符转移到状态t=base[s]+c，当且仅当check[t]==s时转移存在。字符先通过字母表
+ * 映射成从1开始的连续编号，数组的大小只与词典中实际出现的字符有关。所有数据都保存在int和long数组中.
+ * <p/>
+ * 比{@link FSTDictionary}占用更多的内存（FST会共享后缀，trie不会），换取更快的匹配，适合对延迟敏感的场景；
+ * 内存紧张或词典很大时仍然使用FST
+ *
+ * @author gaohang on 15/12/20.
+ */
+public final class DoubleArrayTrie extends Dictionary {
+
+  private static final int FREE = -1;
+  static final int ROOT = 0;
+  /**
+   * 查找空闲位置时，已经被占用的比例超过此值的区域以后不再查找
+   */
+  private static final double DENSE_RATIO = 0.95;
+
+  private static final Comparator<int[]> CODE_POINT_ORDER = new Comparator<int[]>() {
+    @Override
+    public int compare(int[] a, int[] b) {
+      for (int i = 0, len = Math.min(a.length, b.length); i < len; i++) {
+        if (a[i] != b[i]) {
+          return Integer.compare(a[i], b[i]);
+        }
+      }
+      return Integer.compare(a.length, b.length);
+    }
+  };
+
+  /**
+   * 基本多文种平面中字符的编号，下标为字符，0表示字母表中没有这个字符
+   */
+  private final int[] bmpCodes;
+  /**
+   * 增补字符按码点排好序，编号为{@link #bmpCount}加上下标再加1
+   */
+  private final int[] supplementary;
+  private final int bmpCount;
+  private final int[] base;
+  private final int[] check;
+  /**
+   * 每个状态是否构成一个完整的词，每个long存放64个状态
+   */
+  private final long[] finals;
+  private final int size;
+
+  private DoubleArrayTrie(List<int[]> words) {
+    final int[] alphabet = alphabet(words);
+    int bmp = 0;
+    while (bmp < alphabet.length && alphabet[bmp] < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+      bmp++;
+    }
+    this.bmpCount = bmp;
+    this.bmpCodes = new int[bmp == 0 ? 0 : alphabet[bmp - 1] + 1];
+    for (int i = 0; i < bmp; i++) {
+      bmpCodes[alphabet[i]] = i + 1;
+    }
+    this.supplementary = Arrays.copyOfRange(alphabet, bmp, alphabet.length);
+
+    final Builder builder = new Builder();
+    builder.build(encode(words));
+    this.size = builder.maxState + 1;
+    this.base = Arrays.copyOf(builder.base, size);
+    this.check = Arrays.copyOf(builder.check, size);
+    this.finals = Arrays.copyOf(builder.finals.toLongArray(), (size + 63) >>> 6);
+  }
+
+  /**
+   * 通过FST中的词条创建，可以复用{@link FSTFactory}中加载词典的各种方式
+   */
+  public static DoubleArrayTrie create(@NotNull FST<CharsRef> fst) throws IOException {
+    checkNotNull(fst);
+    final List<int[]> words = Lists.newArrayList();
+    final IntsRefFSTEnum<CharsRef> fstEnum = new IntsRefFSTEnum<>(fst);
+    for (IntsRefFSTEnum.InputOutput<CharsRef> word = fstEnum.next(); word != null; word = fstEnum.next()) {
+      words.add(codePoints(FSTFactory.toWord(word.input, fst.inputType)));
+    }
+    return new DoubleArrayTrie(words);
+  }
+
+  /**
+   * @param words 所有词条，与{@link FSTFactory#create(java.util.SortedSet)}一样不做转换，可以是任意顺序
+   */
+  public static DoubleArrayTrie create(@NotNull Iterable<String> words) {
+    checkNotNull(words);
+    final List<int[]> codePoints = Lists.newArrayList();
+    for (String word : words) {
+      if (!word.isEmpty()) {
+        codePoints.add(codePoints(word));
+      }
+    }
+    Collections.sort(codePoints, CODE_POINT_ORDER);
+    final List<int[]> unique = Lists.newArrayListWithCapacity(codePoints.size());
+    for (int[] word : codePoints) {
+      if (unique.isEmpty() || !Arrays.equals(unique.get(unique.size() - 1), word)) {
+        unique.add(word);
+      }
+    }
+    return new DoubleArrayTrie(unique);
+  }
+
+  private static int[] codePoints(String word) {
+    final int[] codePoints = new int[word.codePointCount(0, word.length())];
+    for (int i = 0, offset = 0; i < codePoints.length; i++) {
+      codePoints[i] = word.codePointAt(offset);
+      offset += Character.charCount(codePoints[i]);
+    }
+    return codePoints;
+  }
+
+  /**
+   * @return 词条中出现的所有字符，按码点排序
+   */
+  private static int[] alphabet(List<int[]> words) {
+    final BitSet codePoints = new BitSet();
+    for (int[] word : words) {
+      for (int codePoint : word) {
+        codePoints.set(codePoint);
+      }
+    }
+    final int[] alphabet = new int[codePoints.cardinality()];
+    int codePoint = codePoints.nextSetBit(0);
+    for (int i = 0; i < alphabet.length; i++) {
+      alphabet[i] = codePoint;
+      codePoint = codePoints.nextSetBit(codePoint + 1);
+    }
+    return alphabet;
+  }
+
+  /**
+   * 将词条中的字符转换成编号，words需要按码点排序，转换后的顺序不变
+   */
+  private List<int[]> encode(List<int[]> words) {
+    for (int[] word : words) {
+      for (int i = 0; i < word.length; i++) {
+        word[i] = code(word[i]);
+      }
+    }
+    return words;
+  }
+
+  /**
+   * @return 字符的编号，字母表中没有这个字符时为0
+   */
+  int code(int codePoint) {
+    if (codePoint < bmpCodes.length) {
+      return bmpCodes[codePoint];
+    }
+    if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+      return 0;
+    }
+    final int index = Arrays.binarySearch(supplementary, codePoint);
+    return index < 0 ? 0 : bmpCount + index + 1;
+  }
+
+  /**
+   * @param code 由{@link #code(int)}取得的编号
+   * @return 从state经过code转移到的状态，不存在时为-1
+   */
+  int transition(int state, int code) {
+    final int next = base[state] + code;
+    return next < size && check[next] == state ? next : -1;
+  }
+
+  /**
+   * @return 转移到state的状态，state不是一个状态时为-1
+   */
+  int parent(int state) {
+    return state == ROOT ? -1 : check[state];
+  }
+
+  /**
+   * @return 从parent转移到child使用的编号
+   */
+  int code(int parent, int child) {
+    return child - base[parent];
+  }
+
+  boolean isFinal(int state) {
+    return (finals[state >>> 6] & (1L << state)) != 0;
+  }
+
+  /**
+   * @return 状态数，即数组的长度
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return 数组和字母表占用的内存
+   */
+  public long sizeInBytes() {
+    return 4L * (base.length + check.length + bmpCodes.length + supplementary.length) + 8L * finals.length;
+  }
+
+  @Override
+  public Matcher matcher() {
+    return new ArrayMatcher();
+  }
+
+  /**
+   * 按层创建双数组，为每个节点找一个base，使它的所有子节点都落在空闲的位置上
+   */
+  private static final class Builder {
+    private int[] base = new int[1024];
+    private int[] check = new int[1024];
+    private final BitSet finals = new BitSet();
+    private int maxState;
+    /**
+     * 查找空闲位置的起点，之前的区域几乎都被占用了
+     */
+    private int nextCheckPos = 1;
+
+    private Builder() {
+      Arrays.fill(check, FREE);
+    }
+
+    /**
+     * @param words 按编号排好序且不重复的词条
+     */
+    private void build(List<int[]> words) {
+      //节点为{状态, 词条的起始下标, 词条的结束下标, 深度}，节点下的词条在words中是连续的
+      final Queue<int[]> nodes = new ArrayDeque<>();
+      nodes.add(new int[]{ROOT, 0, words.size(), 0});
+      int[] codes = new int[16];
+      int[] starts = new int[17];
+      while (!nodes.isEmpty()) {
+        final int[] node = nodes.poll();
+        final int state = node[0];
+        final int depth = node[3];
+        int from = node[1];
+        final int to = node[2];
+        //词条有序，以此节点结束的词条总是排在最前面
+        if (from < to && words.get(from).length == depth) {
+          finals.set(state);
+          from++;
+        }
+        int count = 0;
+        for (int i = from; i < to; i++) {
+          final int code = words.get(i)[depth];
+          if (count == 0 || codes[count - 1] != code) {
+            if (count == codes.length) {
+              codes = Arrays.copyOf(codes, count * 2);
+              starts = Arrays.copyOf(starts, count * 2 + 1);
+            }
+            codes[count] = code;
+            starts[count] = i;
+            count++;
+          }
+        }
+        if (count == 0) {
+          continue;
+        }
+        starts[count] = to;
+        final int b = findBase(codes, count);
+        base[state] = b;
+        for (int i = 0; i < count; i++) {
+          final int child = b + codes[i];
+          check[child] = state;
+          maxState = Math.max(maxState, child);
+          nodes.add(new int[]{child, starts[i], starts[i + 1], depth + 1});
+        }
+      }
+    }
+
+    /**
+     * @param codes 子节点的编号，从小到大
+     */
+    private int findBase(int[] codes, int count) {
+      int position = Math.max(codes[0] + 1, nextCheckPos) - 1;
+      int occupied = 0;
+      boolean first = true;
+      while (true) {
+        position++;
+        ensureCapacity(position + 1);
+        if (check[position] != FREE) {
+          occupied++;
+          continue;
+        }
+        if (first) {
+          nextCheckPos = position;
+          first = false;
+        }
+        final int b = position - codes[0];
+        ensureCapacity(b + codes[count - 1] + 1);
+        if (fits(b, codes, count)) {
+          if (occupied >= DENSE_RATIO * (position - nextCheckPos + 1)) {
+            nextCheckPos = position;
+          }
+          return b;
+        }
+      }
+    }
+
+    private boolean fits(int b, int[] codes, int count) {
+      for (int i = 1; i < count; i++) {
+        if (check[b + codes[i]] != FREE) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity <= check.length) {
+        return;
+      }
+      final int length = Math.max(capacity, check.length + (check.length >> 1));
+      final int oldLength = check.length;
+      base = Arrays.copyOf(base, length);
+      check = Arrays.copyOf(check, length);
+      Arrays.fill(check, oldLength, length, FREE);
+    }
+  }
+
+  private final class ArrayMatcher extends Matcher {
+    private int state;
+    private int previousState;
+
+    @Override
+    public void reset() {
+      state = ROOT;
+    }
+
+    @Override
+    public boolean match(int codePoint) {
+      final int code = code(codePoint);
+      if (code == 0) {
+        return false;
+      }
+      final int next = transition(state, code);
+      if (next < 0) {
+        return false;
+      }
+      previousState = state;
+      state = next;
+      return true;
+    }
+
+    @Override
+    public boolean isFinal() {
+      return DoubleArrayTrie.this.isFinal(state);
+    }
+
+    @Override
+    public void undo() {
+      state = previousState;
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 基于堆内{@link FST}的词典.
+ * <p/>
+ * 每个词条的匹配都从根节点开始，根节点上的边通常很多（词典中所有不同的首字符），
+ * 因此创建时为根节点建立一个按标签直接寻址的表，从根节点出发的匹配不需要在FST中二分查找.
+ * <p/>
+ * 通过{@link #create(FST, long)}可以再给出一份内存预算，按边数从多到少，将根节点之下的节点
+ * （如“中国”中“中”之后的节点）也展开成直接寻址的表，直到用完预算；没有展开的节点仍然在FST中查找
+ *
+ * @author gaohang on 15/12/14.
+ */
+public final class FSTDictionary extends Dictionary {
+
+  /**
+   * 边数少于此值的节点在FST中查找已经很快，不展开
+   */
+  private static final int MIN_DENSE_ARCS = 16;
+  /**
+   * 表中平均每条边最多占用的项数，标签过于分散的节点展开后大部分是空项，不展开
+   */
+  private static final int MAX_SLOTS_PER_ARC = 128;
+  /**
+   * 估算内存时，表中每一项（边和子节点两个引用）的字节数
+   */
+  private static final int SLOT_BYTES = 8;
+  /**
+   * 估算内存时，每条复制出来的边的字节数
+   */
+  private static final int ARC_BYTES = 64;
+
+  private final FST<CharsRef> fst;
+  /**
+   * FST的边是否以Unicode码点作为标签，否则以UTF-8编码的字节作为标签
+   */
+  private final boolean codePointLabel;
+  /**
+   * 根节点展开后的表，总是存在
+   */
+  private final DenseNode root;
+  /**
+   * 根节点之外展开的节点估算占用的内存
+   */
+  private final long denseTableBytes;
+
+  FSTDictionary(FST<CharsRef> fst) {
+    this(fst, 0);
+  }
+
+  private FSTDictionary(FST<CharsRef> fst, long denseTableBudget) {
+    this.fst = checkNotNull(fst);
+    this.codePointLabel = fst.inputType == FST.INPUT_TYPE.BYTE4;
+    final FST.BytesReader reader = fst.getBytesReader();
+    try {
+      final long rootNode = fst.getFirstArc(new FST.Arc<CharsRef>()).target;
+      this.root = expand(readArcs(fst, rootNode, reader), ROOT_TABLE_MAX_SIZE);
+      this.denseTableBytes = denseTableBudget > 0 ? expandHotNodes(denseTableBudget, reader) : 0;
+    } catch (IOException e) {
+      //堆内的FST读取不会出错
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * 创建词典，并将边最多的节点展开成直接寻址的表
+   *
+   * @param fst              词典
+   * @param denseTableBudget 根节点之外的节点展开使用的内存，单位为字节，为0时只展开根节点
+   */
+  public static FSTDictionary create(@NotNull FST<CharsRef> fst, long denseTableBudget) {
+    checkNotNull(fst);
+    checkArgument(denseTableBudget >= 0, "denseTableBudget must not be negative");
+    return new FSTDictionary(fst, denseTableBudget);
+  }
+
+  /**
+   * @return 根节点之外展开的节点估算占用的内存，不超过创建时给出的预算
+   */
+  public long denseTableBytes() {
+    return denseTableBytes;
+  }
+
+  @Override
+  public Matcher matcher() {
+    return new FSTMatcher();
+  }
+
+  /**
+   * 从根节点的子节点开始，每次展开边最多的候选节点，再将它的子节点加入候选
+   *
+   * @return 展开的节点估算占用的内存
+   */
+  private long expandHotNodes(long budget, FST.BytesReader reader) throws IOException {
+    final Map<Long, DenseNode> expanded = Maps.newHashMap();
+    final PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+    offerChildren(root, candidates, reader);
+    long used = 0;
+    while (!candidates.isEmpty()) {
+      final Candidate candidate = candidates.poll();
+      DenseNode node = expanded.get(candidate.node);
+      if (node == null) {
+        if (used + candidate.bytes > budget) {
+          continue;
+        }
+        node = expand(readArcs(fst, candidate.node, reader), Integer.MAX_VALUE);
+        used += candidate.bytes;
+        expanded.put(candidate.node, node);
+        offerChildren(node, candidates, reader);
+      }
+      //FST共享后缀，同一个节点可能有多个父节点，只展开一次
+      candidate.parent.targets[candidate.index] = node;
+    }
+    return used;
+  }
+
+  private void offerChildren(DenseNode parent, PriorityQueue<Candidate> candidates, FST.BytesReader reader)
+          throws IOException {
+    final FST.Arc<CharsRef> scratch = new FST.Arc<>();
+    for (int i = 0; i < parent.arcs.length; i++) {
+      final FST.Arc<CharsRef> arc = parent.arcs[i];
+      if (arc == null || arc.target <= 0) {
+        continue;
+      }
+      fst.readFirstRealTargetArc(arc.target, scratch, reader);
+      final int firstLabel = scratch.label;
+      int numArcs = 1;
+      while (!scratch.isLast()) {
+        fst.readNextRealArc(scratch, reader);
+        numArcs++;
+      }
+      final long span = scratch.label - firstLabel + 1L;
+      if (numArcs >= MIN_DENSE_ARCS && span <= (long) numArcs * MAX_SLOTS_PER_ARC) {
+        candidates.add(new Candidate(arc.target, numArcs, span * SLOT_BYTES + (long) numArcs * ARC_BYTES,
+                parent, i));
+      }
+    }
+  }
+
+  /**
+   * @return 节点上按标签排序的所有边
+   */
+  private static List<FST.Arc<CharsRef>> readArcs(FST<CharsRef> fst, long node, FST.BytesReader reader)
+          throws IOException {
+    final List<FST.Arc<CharsRef>> arcs = Lists.newArrayList();
+    if (node <= 0) {
+      return arcs;
+    }
+    final FST.Arc<CharsRef> arc = fst.readFirstRealTargetArc(node, new FST.Arc<CharsRef>(), reader);
+    while (true) {
+      arcs.add(new FST.Arc<CharsRef>().copyFrom(arc));
+      if (arc.isLast()) {
+        return arcs;
+      }
+      fst.readNextRealArc(arc, reader);
+    }
+  }
+
+  /**
+   * @param maxSize 表最多的项数，超出范围的边不放入表中，仍然在FST中查找
+   */
+  private static DenseNode expand(List<FST.Arc<CharsRef>> arcs, int maxSize) {
+    if (arcs.isEmpty()) {
+      return new DenseNode(0, 0);
+    }
+    final int base = arcs.get(0).label;
+    final DenseNode node = new DenseNode(base, Math.min(arcs.get(arcs.size() - 1).label - base + 1, maxSize));
+    for (FST.Arc<CharsRef> arc : arcs) {
+      if (arc.label - base < node.arcs.length) {
+        node.arcs[arc.label - base] = arc;
+      }
+    }
+    return node;
+  }
+
+  /**
+   * 展开成直接寻址表的节点
+   */
+  private static final class DenseNode {
+    private final int base;
+    /**
+     * 节点上的边，下标为标签减去{@link #base}，没有这个标签的边时为null
+     */
+    private final FST.Arc<CharsRef>[] arcs;
+    /**
+     * 边指向的节点也展开了时为展开后的节点，否则为null
+     */
+    private final DenseNode[] targets;
+
+    private DenseNode(int base, int size) {
+      this.base = base;
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      final FST.Arc<CharsRef>[] arcs = new FST.Arc[size];
+      this.arcs = arcs;
+      this.targets = new DenseNode[size];
+    }
+  }
+
+  /**
+   * 待展开的节点，边多的优先
+   */
+  private static final class Candidate implements Comparable<Candidate> {
+    private final long node;
+    private final int numArcs;
+    private final long bytes;
+    private final DenseNode parent;
+    private final int index;
+
+    private Candidate(long node, int numArcs, long bytes, DenseNode parent, int index) {
+      this.node = node;
+      this.numArcs = numArcs;
+      this.bytes = bytes;
+      this.parent = parent;
+      this.index = index;
+    }
+
+    @Override
+    public int compareTo(Candidate o) {
+      return Integer.compare(o.numArcs, numArcs);
+    }
+  }
+
+  private final class FSTMatcher extends Matcher {
+    /**
+     * 以字节作为标签时，用于存放一个字符的UTF-8编码
+     */
+    private final byte[] utf8 = new byte[MAX_UTF8_LENGTH];
+    /**
+     * FST的读取器，只依赖于FST，在整个匹配器的生命周期中复用
+     */
+    private final FST.BytesReader fstReader = fst.getBytesReader();
+    /**
+     * 最近一次匹配成功的边，用于判断最后一次匹配结束后，是否完全匹配了一个词
+     */
+    private FST.Arc<CharsRef> follow = new FST.Arc<>();
+    /**
+     * 用于匹配下一个字符的临时边，匹配成功后与{@link #follow}交换
+     */
+    private FST.Arc<CharsRef> current = new FST.Arc<>();
+    /**
+     * 以字节作为标签时，匹配一个字符中间字节使用的临时边
+     */
+    private final FST.Arc<CharsRef> byteScratch = new FST.Arc<>();
+    /**
+     * {@link #follow}指向的节点展开后的表，没有展开时为null
+     */
+    private DenseNode dense;
+    private DenseNode previousDense;
+    /**
+     * 最近一次找到的边指向的节点展开后的表
+     */
+    private DenseNode nextDense;
+
+    @Override
+    public void reset() {
+      fst.getFirstArc(follow);
+      dense = root;
+    }
+
+    @Override
+    public boolean match(int codePoint) throws IOException {
+      if (codePointLabel) {
+        if (!findTargetArc(codePoint, follow, dense, current)) {
+          return false;
+        }
+      } else {
+        //UTF-8中，字符可能不是单字节，需要一个字符中的所有字节都能匹配上，才认为成功匹配了一个字符
+        current.copyFrom(follow);
+        DenseNode node = dense;
+        for (int i = 0, len = encodeUTF8(codePoint, utf8); i < len; i++) {
+          if (!findTargetArc(utf8[i] & FST_LABEL_FLAG, current, node, byteScratch)) {
+            return false;
+          }
+          node = nextDense;
+          current.copyFrom(byteScratch);
+        }
+      }
+      final FST.Arc<CharsRef> matched = current;
+      current = follow;
+      follow = matched;
+      previousDense = dense;
+      dense = nextDense;
+      return true;
+    }
+
+    /**
+     * 节点展开了时查直接寻址表，否则在FST中查找
+     *
+     * @param node 节点展开后的表，没有展开时为null
+     * @param arc  用于存放找到的边
+     */
+    private boolean findTargetArc(int label, FST.Arc<CharsRef> from, DenseNode node, FST.Arc<CharsRef> arc)
+            throws IOException {
+      if (node != null) {
+        final int index = label - node.base;
+        if (index >= 0 && index < node.arcs.length) {
+          final FST.Arc<CharsRef> denseArc = node.arcs[index];
+          if (denseArc == null) {
+            return false;
+          }
+          arc.copyFrom(denseArc);
+          nextDense = node.targets[index];
+          return true;
+        }
+      }
+      nextDense = null;
+      return fst.findTargetArc(label, from, arc, fstReader) != null;
+    }
+
+    @Override
+    public boolean isFinal() {
+      return follow.isFinal();
+    }
+
+    @Override
+    public void undo() {
+      //匹配成功后current就是匹配之前的边
+      final FST.Arc<CharsRef> previous = current;
+      current = follow;
+      follow = previous;
+      dense = previousDense;
+    }
+  }
+}
@@ -1,11 +1,17 @@
 package cn.yxffcode.easyanalyzer.analyzer;
 
-import cn.yxffcode.easyanalyzer.collection.IteratorAdapter;
+import cn.yxffcode.easyanalyzer.io.IOReaderException;
 import cn.yxffcode.easyanalyzer.io.IOStreams;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.IntsRefBuilder;
 import org.apache.lucene.util.fst.Builder;
 import org.apache.lucene.util.fst.CharSequenceOutputs;
@@ -14,18 +20,48 @@ import org.apache.lucene.util.fst.Util;
 
 import javax.validation.constraints.NotNull;
 import java.io.*;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
 import static cn.yxffcode.easyanalyzer.utils.StringUtils.isBlank;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * 用于创建{@link FST}字典
+ * 用于创建{@link FST}字典.
+ * <p/>
+ * 除了从.dic文本词典创建，还可以通过{@link #save(FST, File)}将创建好的FST保存为编译后的二进制词典
+ * （以{@link #COMPILED_SUFFIX}结尾），启动时通过{@link #load(File)}直接加载，不需要再排序和创建FST，
+ * 或者通过{@link #map(File, boolean)}映射到内存中，不占用堆内存
+ * <p/>
+ * 词典很大时可以使用{@link ParallelFSTBuilder}多线程创建，词条放不进堆内存时使用{@link OfflineFSTBuilder}
  *
  * @author gaohang on 15/11/19.
  */
-abstract class FSTFactory {
+public abstract class FSTFactory {
+  /**
+   * 编译后的二进制词典文件的后缀
+   */
+  public static final String COMPILED_SUFFIX = ".fst";
+
+  static final String CODEC_NAME = "EasyAnalyzerDictionary";
+  static final int VERSION_START = 1;
+  /**
+   * 版本头之后记录FST输出的类型
+   */
+  static final int VERSION_OUTPUTS = 2;
+  static final int VERSION_CURRENT = VERSION_OUTPUTS;
+  /**
+   * 文件中记录的{@link CharSequenceOutputs}的名称，分词器只支持这一种输出
+   */
+  static final String OUTPUTS_NAME = "CharSequenceOutputs";
+
   private FSTFactory() {
   }
 
@@ -39,89 +75,305 @@ abstract class FSTFactory {
   }
 
   /**
-   * @param classpath   词典文件的类路径，支持目录
+   * @param classpath   词典文件的类路径，支持目录和jar包中的目录，以.dic.gz结尾的词典按gzip解压。
+   *                    如果是以{@link #COMPILED_SUFFIX}结尾的编译后的词典，则直接加载
    * @param classLoader 用于加载词典文件的类加载器
    * @return 基于FST的分词器
    * @throws IOException 读取字典或创建FST出错
    */
   public static FST<CharsRef> create(String classpath, ClassLoader classLoader) throws IOException {
-    final Enumeration<URL> resources = checkNotNull(classLoader.getResources(classpath));
-    SortedSet<String> set = Sets.newTreeSet();
-    for (Iterator<URL> iterator = IteratorAdapter.create(resources); iterator.hasNext(); ) {
-      URL url = iterator.next();
-      File file = new File(url.getFile());
-      if (file.isFile()) {
-        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
-          readDictionary(set, in);
-        }
-      } else if (file.isDirectory()) {
-        //广度优先
-        File[] files = list(file);
-        if (files == null) {
-          continue;
-        }
-        LinkedList<File> queue = Lists.newLinkedList(Arrays.asList(files));
-        while (!queue.isEmpty()) {
-          File f = queue.removeFirst();
-          if (f.isFile()) {
-            try (BufferedReader in = new BufferedReader(new FileReader(f))) {
-              readDictionary(set, in);
-            }
-          } else if (f.isDirectory()) {
-            queue.addAll(Arrays.asList(list(f)));
-          }
-        }
+    if (classpath.endsWith(COMPILED_SUFFIX)) {
+      return load(classpath, classLoader);
+    }
+    SortedSet<String> set = Sets.newTreeSet(CODE_POINT_ORDER);
+    for (DictionarySource source : DictionarySource.resolve(classpath, classLoader)) {
+      try (BufferedReader in = source.openReader()) {
+        readDictionary(set, in);
       }
     }
     return create(set);
   }
 
-  private static void readDictionary(SortedSet<? super String> set, BufferedReader in) {
-    for (String line : IOStreams.lines(in)) {
-      if (isBlank(line)) {
-        continue;
+  private static void readDictionary(SortedSet<? super String> set, BufferedReader in) throws IOException {
+    try {
+      for (String line : IOStreams.lines(in)) {
+        final String word = normalize(line);
+        if (word != null) {
+          set.add(word);
+        }
       }
-      set.add(line.trim().toLowerCase());
+    } catch (IOReaderException e) {
+      throw (IOException) e.getCause();
     }
   }
 
-  private static File[] list(File file) {
-    return file.listFiles(new FilenameFilter() {
-      @Override
-      public boolean accept(File dir, String name) {
-        return name.endsWith(".dic");
-      }
-    });
+  /**
+   * 词典中的一行转换成词条
+   *
+   * @return 空行返回null
+   */
+  static String normalize(String line) {
+    if (isBlank(line)) {
+      return null;
+    }
+    return line.trim().toLowerCase();
   }
 
   /**
+   * 创建以Unicode码点作为边标签的FST，分词时每个字符只需要做一次边的查找
+   *
    * @param sortedWords 所有词条，因为FST的创建过程中需要词条排好序，所以使用SortedSet,
    *                    使用字符串的默认排序，不要使用字符串的自定义排序
+   * @see #create(SortedSet, FST.INPUT_TYPE)
    */
   public static FST<CharsRef> create(@NotNull SortedSet<String> sortedWords) throws IOException {
+    return create(sortedWords, FST.INPUT_TYPE.BYTE4);
+  }
+
+  /**
+   * @param sortedWords 所有词条
+   * @param inputType   边标签的类型，{@link FST.INPUT_TYPE#BYTE4}表示以Unicode码点作为标签，
+   *                    {@link FST.INPUT_TYPE#BYTE1}表示以词条UTF-8编码后的字节作为标签，
+   *                    分词器通过{@link FST#inputType}判断使用哪种方式匹配输入
+   */
+  public static FST<CharsRef> create(@NotNull SortedSet<String> sortedWords, @NotNull FST.INPUT_TYPE inputType)
+          throws IOException {
     checkNotNull(sortedWords);
+    checkNotNull(inputType);
+    if (inputType == FST.INPUT_TYPE.BYTE2) {
+      throw new IllegalArgumentException("unsupported input type " + inputType);
+    }
+    return build(inCodePointOrder(sortedWords), inputType);
+  }
+
+  /**
+   * @param words 已按{@link cn.yxffcode.easyanalyzer.utils.StringUtils#CODE_POINT_ORDER}排好序且不重复的词条
+   * @return 没有词条时返回null
+   */
+  static FST<CharsRef> build(Iterable<String> words, FST.INPUT_TYPE inputType) throws IOException {
     final CharSequenceOutputs outputs = CharSequenceOutputs.getSingleton();
-    final Builder<CharsRef> builder = new Builder<>(FST.INPUT_TYPE.BYTE4, outputs);
+    final Builder<CharsRef> builder = new Builder<>(inputType, outputs);
     final IntsRefBuilder scratch = new IntsRefBuilder();
     final CharsRef noOutput = outputs.getNoOutput();
-    for (String word : sortedWords) {
-      builder.add(Util.toIntsRef(new BytesRef(word.getBytes()), scratch), noOutput);
+    for (String word : words) {
+      builder.add(toLabels(word, inputType, scratch), noOutput);
     }
     return builder.finish();
   }
 
   /**
-   * @param dictionaries 词典文件列表
+   * 将词条转换成FST中边的标签
+   */
+  static IntsRef toLabels(String word, FST.INPUT_TYPE inputType, IntsRefBuilder scratch) {
+    if (inputType == FST.INPUT_TYPE.BYTE4) {
+      return Util.toUTF32(word, scratch);
+    }
+    return Util.toIntsRef(new BytesRef(word.getBytes(StandardCharsets.UTF_8)), scratch);
+  }
+
+  /**
+   * 将FST中边的标签转换成词条，与{@link #toLabels(String, FST.INPUT_TYPE, IntsRefBuilder)}相反
+   */
+  static String toWord(IntsRef labels, FST.INPUT_TYPE inputType) {
+    if (inputType == FST.INPUT_TYPE.BYTE4) {
+      return new String(labels.ints, labels.offset, labels.length);
+    }
+    final byte[] bytes = new byte[labels.length];
+    for (int i = 0; i < labels.length; i++) {
+      bytes[i] = (byte) labels.ints[labels.offset + i];
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * FST要求词条按标签顺序加入，码点和UTF-8字节的顺序都与{@link String}的默认排序在增补字符上不一致，
+   * 只有在顺序确实不一致时才重新排序
+   */
+  private static SortedSet<String> inCodePointOrder(SortedSet<String> sortedWords) {
+    if (sortedWords.comparator() == CODE_POINT_ORDER) {
+      return sortedWords;
+    }
+    String last = null;
+    for (String word : sortedWords) {
+      if (last != null && CODE_POINT_ORDER.compare(last, word) > 0) {
+        SortedSet<String> sorted = Sets.newTreeSet(CODE_POINT_ORDER);
+        sorted.addAll(sortedWords);
+        return sorted;
+      }
+      last = word;
+    }
+    return sortedWords;
+  }
+
+  /**
+   * @param dictionaries 词典文件列表，按UTF-8读取
    */
   public static FST<CharsRef> create(@NotNull Iterable<File> dictionaries) throws IOException {
     checkNotNull(dictionaries);
-    SortedSet<String> set = Sets.newTreeSet();
+    SortedSet<String> set = Sets.newTreeSet(CODE_POINT_ORDER);
     for (File dictionary : dictionaries) {
-      try (BufferedReader in = new BufferedReader(new FileReader(dictionary))) {
+      try (BufferedReader in = DictionarySource.of(dictionary).openReader()) {
         readDictionary(set, in);
       }
     }
     return create(set);
   }
 
+  /**
+   * 将FST保存为编译后的二进制词典，格式为：版本头、输出类型、FST、CRC32校验和.
+   * <p/>
+   * 先写入临时文件再重命名，加载方不会读到写了一半的文件
+   *
+   * @param fst    需要保存的FST
+   * @param target 目标文件，通常以{@link #COMPILED_SUFFIX}结尾
+   */
+  public static void save(@NotNull FST<CharsRef> fst, @NotNull File target) throws IOException {
+    checkNotNull(fst);
+    checkNotNull(target);
+    checkArgument(fst.outputs instanceof CharSequenceOutputs, "unsupported outputs %s", fst.outputs);
+    final File tmp = new File(target.getPath() + ".tmp");
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+      final CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+      final DataOutput dataOutput = new OutputStreamDataOutput(checked);
+      CodecUtil.writeHeader(dataOutput, CODEC_NAME, VERSION_CURRENT);
+      dataOutput.writeString(OUTPUTS_NAME);
+      fst.save(dataOutput);
+      new OutputStreamDataOutput(out).writeLong(checked.getChecksum().getValue());
+    }
+    Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * 加载编译后的二进制词典
+   *
+   * @param compiled 由{@link #save(FST, File)}保存的文件
+   * @throws CorruptIndexException 文件格式或校验和不正确
+   */
+  public static FST<CharsRef> load(@NotNull File compiled) throws IOException {
+    checkNotNull(compiled);
+    try (InputStream in = new BufferedInputStream(new FileInputStream(compiled))) {
+      return load(in, compiled.getPath());
+    }
+  }
+
+  /**
+   * 从类路径加载编译后的二进制词典
+   *
+   * @param classpath   编译后的词典在类路径中的位置
+   * @param classLoader 用于加载词典文件的类加载器
+   */
+  public static FST<CharsRef> load(@NotNull String classpath, @NotNull ClassLoader classLoader) throws IOException {
+    checkNotNull(classpath);
+    final InputStream resource = classLoader.getResourceAsStream(classpath);
+    if (resource == null) {
+      throw new FileNotFoundException(classpath);
+    }
+    try (InputStream in = new BufferedInputStream(resource)) {
+      return load(in, classpath);
+    }
+  }
+
+  /**
+   * 从输入流加载编译后的二进制词典，不会关闭输入流
+   *
+   * @param resourceDescription 用于出错时描述输入的来源
+   */
+  public static FST<CharsRef> load(@NotNull InputStream in, String resourceDescription) throws IOException {
+    checkNotNull(in);
+    final CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+    final DataInput dataInput = new InputStreamDataInput(checked);
+    checkOutputs(dataInput, CodecUtil.checkHeader(dataInput, CODEC_NAME, VERSION_START, VERSION_CURRENT),
+            resourceDescription);
+    final FST<CharsRef> fst;
+    try {
+      fst = new FST<>(dataInput, CharSequenceOutputs.getSingleton());
+    } catch (RuntimeException e) {
+      //读完才能比较校验和，损坏的字节可能先使FST的解析失败
+      throw new CorruptIndexException("failed to read FST", resourceDescription, e);
+    }
+    final long actual = checked.getChecksum().getValue();
+    final long expected;
+    try {
+      expected = new InputStreamDataInput(in).readLong();
+    } catch (EOFException e) {
+      throw new CorruptIndexException("missing checksum", resourceDescription, e);
+    }
+    if (actual != expected) {
+      throw new CorruptIndexException("checksum failed (actual=" + Long.toHexString(actual)
+              + ", expected=" + Long.toHexString(expected) + ")", resourceDescription);
+    }
+    return fst;
+  }
+
+  /**
+   * 读取版本头之后的输出类型，不是{@link CharSequenceOutputs}时拒绝加载。
+   * 第一版的文件没有记录输出类型，只能由{@link #save(FST, File)}保存，按{@link CharSequenceOutputs}加载
+   *
+   * @param version 文件头中的版本
+   */
+  static void checkOutputs(DataInput in, int version, String resourceDescription) throws IOException {
+    if (version < VERSION_OUTPUTS) {
+      return;
+    }
+    final String outputs = in.readString();
+    if (!OUTPUTS_NAME.equals(outputs)) {
+      throw new IllegalArgumentException("unsupported outputs " + outputs + ", expected " + OUTPUTS_NAME
+              + ": " + resourceDescription);
+    }
+  }
+
+  /**
+   * 通过内存映射加载编译后的二进制词典，FST的字节不会复制到堆中，多个JVM映射同一个文件时共享页缓存
+   *
+   * @param compiled 由{@link #save(FST, File)}保存的文件
+   * @param preTouch 是否在加载时读取所有的页，读取的同时校验校验和，避免分词时才触发缺页；
+   *                 为false时按需加载，只校验文件头
+   * @throws CorruptIndexException 文件格式或校验和不正确
+   */
+  public static MappedFST map(@NotNull File compiled, boolean preTouch) throws IOException {
+    checkNotNull(compiled);
+    return new MappedFST(compiled, preTouch);
+  }
+
+  /**
+   * 词典中最长的词条的char数，{@link ChunkedSegmenter}以此作为检查切分位置时向前回看的范围.
+   * <p/>
+   * 以UTF-8字节作为标签的FST按字节数计算，不小于实际的char数
+   *
+   * @return 没有词条时为0
+   */
+  public static <T> int maxWordLength(@NotNull FST<T> fst) throws IOException {
+    checkNotNull(fst);
+    final FST.Arc<T> root = fst.getFirstArc(new FST.Arc<T>());
+    return maxPathLength(fst, root.target, fst.getBytesReader(), new HashMap<Long, Integer>());
+  }
+
+  /**
+   * FST是无环的，从节点出发的最长路径只计算一次
+   */
+  private static <T> int maxPathLength(FST<T> fst, long node, FST.BytesReader reader, Map<Long, Integer> lengths)
+          throws IOException {
+    if (node <= 0) {
+      return 0;
+    }
+    final Integer known = lengths.get(node);
+    if (known != null) {
+      return known;
+    }
+    final boolean codePointLabel = fst.inputType == FST.INPUT_TYPE.BYTE4;
+    int max = 0;
+    final FST.Arc<T> arc = fst.readFirstRealTargetArc(node, new FST.Arc<T>(), reader);
+    while (true) {
+      final int labelLength = codePointLabel ? Character.charCount(arc.label) : 1;
+      //读取子节点会移动reader，readNextRealArc根据arc中记录的位置重新定位
+      max = Math.max(max, labelLength + maxPathLength(fst, arc.target, reader, lengths));
+      if (arc.isLast()) {
+        break;
+      }
+      fst.readNextRealArc(arc, reader);
+    }
+    lengths.put(node, max);
+    return max;
+  }
+
 }
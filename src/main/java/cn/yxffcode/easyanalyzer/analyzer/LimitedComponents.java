@@ -0,0 +1,41 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import org.apache.lucene.analysis.Tokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 限制词条长度的分析器组件，组件会被复用，每次切换输入时把{@link TokenLengthLimit}中最新的长度限制交给分词器
+ *
+ * @author gaohang on 15/12/27.
+ */
+final class LimitedComponents extends DirectComponents {
+
+  /**
+   * 可以限制词条长度的分词器
+   */
+  interface LengthLimited {
+    /**
+     * 在{@link Tokenizer#reset()}之前调用，对之后的输入有效
+     *
+     * @param maxTokenLength 词条最多的码点数
+     */
+    void setMaxTokenLength(int maxTokenLength);
+  }
+
+  private final LengthLimited tokenizer;
+  private final TokenLengthLimit limit;
+
+  <T extends Tokenizer & LengthLimited> LimitedComponents(T tokenizer, TokenLengthLimit limit) {
+    super(tokenizer);
+    this.tokenizer = tokenizer;
+    this.limit = limit;
+  }
+
+  @Override
+  protected void setReader(Reader reader) throws IOException {
+    tokenizer.setMaxTokenLength(limit.get());
+    super.setReader(reader);
+  }
+}
@@ -0,0 +1,528 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 通过内存映射加载的编译后的词典，FST的字节保存在映射的文件中，不占用堆内存.
+ * <p/>
+ * lucene的{@link FST}在加载时总是将所有字节复制到堆中，因此这里直接解析{@link FSTFactory#save(FST, File)}
+ * 保存的文件格式，通过{@link MappedBytesReader}在{@link MappedByteBuffer}上遍历FST。同一台机器上的多个JVM
+ * 映射同一个文件时共享操作系统的页缓存，堆内存的占用不再随词典的大小增长.
+ * <p/>
+ * 只支持以{@link org.apache.lucene.util.fst.CharSequenceOutputs}为输出的非packed的FST，单个文件不能超过2GB。
+ * 映射的内存在对象被回收后才会释放
+ *
+ * @author gaohang on 15/12/14.
+ */
+public final class MappedFST extends Dictionary {
+
+  private static final String FST_CODEC_NAME = "FST";
+  private static final int FST_VERSION_PACKED = 3;
+  private static final int FST_VERSION_VINT_TARGET = 4;
+  private static final int FST_VERSION_NO_NODE_ARC_COUNTS = 5;
+
+  private static final int BIT_FINAL_ARC = 1;
+  private static final int BIT_LAST_ARC = 1 << 1;
+  private static final int BIT_TARGET_NEXT = 1 << 2;
+  private static final int BIT_STOP_NODE = 1 << 3;
+  private static final int BIT_ARC_HAS_OUTPUT = 1 << 4;
+  private static final int BIT_ARC_HAS_FINAL_OUTPUT = 1 << 5;
+  private static final int ARCS_AS_FIXED_ARRAY = BIT_ARC_HAS_FINAL_OUTPUT;
+
+  private static final int FINAL_END_NODE = -1;
+  private static final int NON_FINAL_END_NODE = 0;
+
+  private static final int CHECKSUM_LENGTH = 8;
+  private static final int CHECKSUM_CHUNK = 8192;
+
+  private final MappedByteBuffer buffer;
+  /**
+   * FST字节在映射的文件中的起始位置
+   */
+  private final int bytesOffset;
+  /**
+   * FST字节的长度
+   */
+  private final int bytesLength;
+  private final int fstVersion;
+  private final long startNode;
+  /**
+   * 是否包含空字符串，即起始状态本身就是一个完整的词
+   */
+  private final boolean acceptsEmpty;
+  private final FST.INPUT_TYPE inputType;
+  /**
+   * 根节点的直接寻址表，下标为标签减去{@link #rootBase}，
+   * rootFlags为-1表示根节点上没有这个标签的边
+   */
+  private final int rootBase;
+  private final int[] rootFlags;
+  private final long[] rootTargets;
+
+  /**
+   * 使用{@link FSTFactory#map(File, boolean)}创建
+   */
+  MappedFST(File compiled, boolean preTouch) throws IOException {
+    final String resourceDescription = compiled.getPath();
+    try (RandomAccessFile file = new RandomAccessFile(compiled, "r")) {
+      final FileChannel channel = file.getChannel();
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("compiled dictionary larger than 2GB: " + resourceDescription);
+      }
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    if (preTouch) {
+      buffer.load();
+      verifyChecksum(resourceDescription);
+    }
+
+    final BufferDataInput in = new BufferDataInput(buffer, resourceDescription);
+    try {
+      FSTFactory.checkOutputs(in,
+              CodecUtil.checkHeader(in, FSTFactory.CODEC_NAME, FSTFactory.VERSION_START, FSTFactory.VERSION_CURRENT),
+              resourceDescription);
+      this.fstVersion = CodecUtil.checkHeader(in, FST_CODEC_NAME, FST_VERSION_PACKED, FST_VERSION_NO_NODE_ARC_COUNTS);
+      if (in.readByte() == 1) {
+        throw new IllegalArgumentException("packed FST can not be mapped: " + resourceDescription);
+      }
+      this.acceptsEmpty = in.readByte() == 1;
+      if (acceptsEmpty) {
+        in.skipBytes(in.readVInt());
+      }
+      this.inputType = readInputType(in.readByte(), resourceDescription);
+      this.startNode = in.readVLong();
+      if (fstVersion < FST_VERSION_NO_NODE_ARC_COUNTS) {
+        in.readVLong();
+        in.readVLong();
+        in.readVLong();
+      }
+      final long numBytes = in.readVLong();
+      this.bytesOffset = in.position;
+      if (numBytes != buffer.capacity() - bytesOffset - CHECKSUM_LENGTH) {
+        throw new CorruptIndexException("truncated or oversized FST (numBytes=" + numBytes + ")", resourceDescription);
+      }
+      this.bytesLength = (int) numBytes;
+    } catch (EOFException e) {
+      throw new CorruptIndexException("truncated compiled dictionary", resourceDescription, e);
+    }
+
+    //每个词条的匹配都从根节点开始，为根节点建立按标签直接寻址的表
+    final int[] labels = rootLabels(new MappedBytesReader(buffer, bytesOffset, bytesLength));
+    this.rootBase = labels.length == 0 ? 0 : labels[0];
+    final int size = labels.length == 0 ? 0 : Math.min(labels[labels.length - 1] - rootBase + 1, ROOT_TABLE_MAX_SIZE);
+    this.rootFlags = new int[size];
+    this.rootTargets = new long[size];
+    Arrays.fill(rootFlags, -1);
+    final MappedBytesReader reader = new MappedBytesReader(buffer, bytesOffset, bytesLength);
+    final MappedArc arc = new MappedArc();
+    for (int label : labels) {
+      if (label - rootBase < size && searchTargetArc(label, startNode, arc, reader)) {
+        rootFlags[label - rootBase] = arc.flags;
+        rootTargets[label - rootBase] = arc.target;
+      }
+    }
+  }
+
+  /**
+   * @return 根节点上所有边的标签，按从小到大排序
+   */
+  private int[] rootLabels(MappedBytesReader in) throws IOException {
+    if (startNode <= 0) {
+      return new int[0];
+    }
+    in.setPosition(startNode);
+    if (in.readByte() == ARCS_AS_FIXED_ARRAY) {
+      final int numArcs = in.readVInt();
+      final int bytesPerArc = fstVersion >= FST_VERSION_VINT_TARGET ? in.readVInt() : in.readInt();
+      final long arcsStart = in.getPosition();
+      final int[] labels = new int[numArcs];
+      for (int i = 0; i < numArcs; i++) {
+        in.setPosition(arcsStart);
+        in.skipBytes(bytesPerArc * i + 1);
+        labels[i] = readLabel(in);
+      }
+      return labels;
+    }
+    in.setPosition(startNode);
+    final List<Integer> labels = Lists.newArrayList();
+    while (true) {
+      final int flags = in.readByte();
+      labels.add(readLabel(in));
+      if (flag(flags, BIT_LAST_ARC)) {
+        return Ints.toArray(labels);
+      }
+      skipOutputsAndTarget(flags, in);
+    }
+  }
+
+  private static FST.INPUT_TYPE readInputType(byte type, String resourceDescription) throws IOException {
+    switch (type) {
+      case 0:
+        return FST.INPUT_TYPE.BYTE1;
+      case 2:
+        return FST.INPUT_TYPE.BYTE4;
+      default:
+        throw new CorruptIndexException("unsupported input type " + type, resourceDescription);
+    }
+  }
+
+  /**
+   * 计算校验和的同时会读取文件的每一页
+   */
+  private void verifyChecksum(String resourceDescription) throws IOException {
+    final int end = buffer.capacity() - CHECKSUM_LENGTH;
+    if (end < 0) {
+      throw new CorruptIndexException("missing checksum", resourceDescription);
+    }
+    final ByteBuffer view = buffer.duplicate();
+    final byte[] chunk = new byte[CHECKSUM_CHUNK];
+    final CRC32 crc = new CRC32();
+    view.position(0);
+    while (view.position() < end) {
+      final int len = Math.min(chunk.length, end - view.position());
+      view.get(chunk, 0, len);
+      crc.update(chunk, 0, len);
+    }
+    final long actual = crc.getValue();
+    final long expected = view.getLong();
+    if (actual != expected) {
+      throw new CorruptIndexException("checksum failed (actual=" + Long.toHexString(actual)
+              + ", expected=" + Long.toHexString(expected) + ")", resourceDescription);
+    }
+  }
+
+  public FST.INPUT_TYPE inputType() {
+    return inputType;
+  }
+
+  /**
+   * @return 映射的文件的大小
+   */
+  public long sizeInBytes() {
+    return buffer.capacity();
+  }
+
+  @Override
+  public Matcher matcher() {
+    return new MappedMatcher();
+  }
+
+  /**
+   * 查找从node出发、标签为label的边，从根节点出发时查直接寻址表
+   *
+   * @param arc 用于存放找到的边
+   * @return 是否找到
+   */
+  private boolean findTargetArc(int label, long node, MappedArc arc, MappedBytesReader in) throws IOException {
+    if (node == startNode) {
+      final int index = label - rootBase;
+      if (index >= 0 && index < rootFlags.length) {
+        if (rootFlags[index] < 0) {
+          return false;
+        }
+        arc.flags = rootFlags[index];
+        arc.target = rootTargets[index];
+        return true;
+      }
+    }
+    return searchTargetArc(label, node, arc, in);
+  }
+
+  /**
+   * 在FST中查找从node出发、标签为label的边，与{@link FST#findTargetArc(int, FST.Arc, FST.Arc, FST.BytesReader)}一致
+   */
+  private boolean searchTargetArc(int label, long node, MappedArc arc, MappedBytesReader in) throws IOException {
+    if (node <= 0) {
+      return false;
+    }
+    in.setPosition(node);
+    if (in.readByte() == ARCS_AS_FIXED_ARRAY) {
+      //边按固定长度存储，二分查找
+      final int numArcs = in.readVInt();
+      final int bytesPerArc = fstVersion >= FST_VERSION_VINT_TARGET ? in.readVInt() : in.readInt();
+      final long arcsStart = in.getPosition();
+      int low = 0;
+      int high = numArcs - 1;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        in.setPosition(arcsStart);
+        in.skipBytes(bytesPerArc * mid + 1);
+        final int midLabel = readLabel(in);
+        if (midLabel < label) {
+          low = mid + 1;
+        } else if (midLabel > label) {
+          high = mid - 1;
+        } else {
+          in.setPosition(arcsStart);
+          in.skipBytes(bytesPerArc * mid);
+          final int flags = in.readByte();
+          readLabel(in);
+          readTarget(flags, arc, in, arcsStart, bytesPerArc * numArcs);
+          return true;
+        }
+      }
+      return false;
+    }
+    //线性查找
+    in.setPosition(node);
+    while (true) {
+      final int flags = in.readByte();
+      final int arcLabel = readLabel(in);
+      if (arcLabel == label) {
+        readTarget(flags, arc, in, -1, 0);
+        return true;
+      }
+      if (arcLabel > label || flag(flags, BIT_LAST_ARC)) {
+        return false;
+      }
+      skipOutputsAndTarget(flags, in);
+    }
+  }
+
+  /**
+   * 读取边的输出之后的目标节点
+   *
+   * @param arcsStart 如果边按固定长度存储，为第一条边的位置，否则为-1
+   * @param arcsBytes 按固定长度存储的所有边的字节数
+   */
+  private void readTarget(int flags, MappedArc arc, MappedBytesReader in, long arcsStart, int arcsBytes)
+          throws IOException {
+    skipOutputs(flags, in);
+    arc.flags = flags;
+    if (flag(flags, BIT_STOP_NODE)) {
+      arc.target = flag(flags, BIT_FINAL_ARC) ? FINAL_END_NODE : NON_FINAL_END_NODE;
+    } else if (flag(flags, BIT_TARGET_NEXT)) {
+      //目标节点紧跟在当前节点之后
+      if (!flag(flags, BIT_LAST_ARC)) {
+        if (arcsStart < 0) {
+          seekToNextNode(in);
+        } else {
+          in.setPosition(arcsStart);
+          in.skipBytes(arcsBytes);
+        }
+      }
+      arc.target = in.getPosition();
+    } else {
+      arc.target = readNodeTarget(in);
+    }
+  }
+
+  private void seekToNextNode(MappedBytesReader in) throws IOException {
+    while (true) {
+      final int flags = in.readByte();
+      readLabel(in);
+      skipOutputsAndTarget(flags, in);
+      if (flag(flags, BIT_LAST_ARC)) {
+        return;
+      }
+    }
+  }
+
+  private void skipOutputsAndTarget(int flags, MappedBytesReader in) throws IOException {
+    skipOutputs(flags, in);
+    if (!flag(flags, BIT_STOP_NODE) && !flag(flags, BIT_TARGET_NEXT)) {
+      readNodeTarget(in);
+    }
+  }
+
+  /**
+   * 跳过{@link org.apache.lucene.util.fst.CharSequenceOutputs}的输出：长度及每个字符，都是vInt
+   */
+  private static void skipOutputs(int flags, MappedBytesReader in) throws IOException {
+    if (flag(flags, BIT_ARC_HAS_OUTPUT)) {
+      skipCharSequence(in);
+    }
+    if (flag(flags, BIT_ARC_HAS_FINAL_OUTPUT)) {
+      skipCharSequence(in);
+    }
+  }
+
+  private static void skipCharSequence(MappedBytesReader in) throws IOException {
+    for (int i = 0, len = in.readVInt(); i < len; i++) {
+      in.readVInt();
+    }
+  }
+
+  private long readNodeTarget(MappedBytesReader in) throws IOException {
+    return fstVersion >= FST_VERSION_VINT_TARGET ? in.readVLong() : in.readInt();
+  }
+
+  private int readLabel(MappedBytesReader in) throws IOException {
+    return inputType == FST.INPUT_TYPE.BYTE1 ? in.readByte() & 0xFF : in.readVInt();
+  }
+
+  private static boolean flag(int flags, int bit) {
+    return (flags & bit) != 0;
+  }
+
+  /**
+   * 一条边中分词需要的部分
+   */
+  private static final class MappedArc {
+    private int flags;
+    private long target;
+  }
+
+  private final class MappedMatcher extends Matcher {
+    private final boolean codePointLabel = inputType == FST.INPUT_TYPE.BYTE4;
+    private final byte[] utf8 = new byte[MAX_UTF8_LENGTH];
+    private final MappedBytesReader in = new MappedBytesReader(buffer, bytesOffset, bytesLength);
+    private final MappedArc arc = new MappedArc();
+    /**
+     * 最近一次匹配成功的边指向的节点
+     */
+    private long target;
+    private boolean finalState;
+    private long previousTarget;
+    private boolean previousFinalState;
+
+    @Override
+    public void reset() {
+      target = startNode;
+      finalState = acceptsEmpty;
+    }
+
+    @Override
+    public boolean match(int codePoint) throws IOException {
+      if (codePointLabel) {
+        if (!findTargetArc(codePoint, target, arc, in)) {
+          return false;
+        }
+      } else {
+        //一个字符中的所有字节都能匹配上，才认为成功匹配了一个字符
+        long node = target;
+        for (int i = 0, len = encodeUTF8(codePoint, utf8); i < len; i++) {
+          if (!findTargetArc(utf8[i] & FST_LABEL_FLAG, node, arc, in)) {
+            return false;
+          }
+          node = arc.target;
+        }
+      }
+      previousTarget = target;
+      previousFinalState = finalState;
+      target = arc.target;
+      finalState = flag(arc.flags, BIT_FINAL_ARC);
+      return true;
+    }
+
+    @Override
+    public boolean isFinal() {
+      return finalState;
+    }
+
+    @Override
+    public void undo() {
+      target = previousTarget;
+      finalState = previousFinalState;
+    }
+  }
+
+  /**
+   * 在映射的FST字节上反向读取的{@link FST.BytesReader}，与lucene中非packed的FST的读取方式一致，
+   * 位置从FST字节的起始处计算。只使用绝对位置读取，多个读取器可以共享同一个映射.
+   * <p/>
+   * 映射的文件不超过2GB，位置用int保存，设置或跳转到FST字节之外的位置时抛出{@link IllegalArgumentException}
+   */
+  static final class MappedBytesReader extends FST.BytesReader {
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private int position;
+
+    MappedBytesReader(ByteBuffer buffer, int offset, int length) {
+      this.buffer = buffer;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public byte readByte() {
+      return buffer.get(offset + position--);
+    }
+
+    @Override
+    public void readBytes(byte[] b, int off, int len) {
+      for (int i = 0; i < len; i++) {
+        b[off + i] = buffer.get(offset + position--);
+      }
+    }
+
+    @Override
+    public void skipBytes(long count) {
+      setPosition(position - count);
+    }
+
+    @Override
+    public long getPosition() {
+      return position;
+    }
+
+    @Override
+    public void setPosition(long pos) {
+      if (pos < 0 || pos >= length) {
+        throw new IllegalArgumentException("position " + pos + " out of FST bytes [0, " + length + ")");
+      }
+      this.position = (int) pos;
+    }
+
+    @Override
+    public boolean reversed() {
+      return true;
+    }
+  }
+
+  /**
+   * 顺序读取文件头部的{@link DataInput}
+   */
+  private static final class BufferDataInput extends DataInput {
+    private final ByteBuffer buffer;
+    private final String resourceDescription;
+    private int position;
+
+    private BufferDataInput(ByteBuffer buffer, String resourceDescription) {
+      this.buffer = buffer;
+      this.resourceDescription = resourceDescription;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      if (position >= buffer.capacity()) {
+        throw new EOFException(resourceDescription);
+      }
+      return buffer.get(position++);
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      for (int i = 0; i < len; i++) {
+        b[offset + i] = readByte();
+      }
+    }
+
+    @Override
+    public void skipBytes(long numBytes) throws IOException {
+      if (position + numBytes > buffer.capacity()) {
+        throw new EOFException(resourceDescription);
+      }
+      position += numBytes;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import java.io.IOException;
+
+/**
+ * 在词典上逐个字符匹配输入的状态机，是有状态的，只能在一个分词器中使用
+ *
+ * @author gaohang on 15/12/14.
+ */
+public abstract class Matcher {
+
+  /**
+   * FST中的字节与此int做&，对于UTF-8编码，很多字符不只一个字节，
+   * FST在存储字节里将多字节字符中每个字节做了一个按位与，因此在匹
+   * 配的时候需要将输入的字节转换成FST中的格式
+   */
+  static final int FST_LABEL_FLAG = 0xFF;
+  /**
+   * 一个码点UTF-8编码后最多4个字节
+   */
+  static final int MAX_UTF8_LENGTH = 4;
+
+  /**
+   * 回到词典的起始状态，开始匹配一个新的词条
+   */
+  public abstract void reset();
+
+  /**
+   * 从当前状态出发匹配一个字符，匹配失败时状态保持不变
+   *
+   * @param codePoint 已转换成小写的字符
+   * @return 是否匹配成功
+   */
+  public abstract boolean match(int codePoint) throws IOException;
+
+  /**
+   * @return 从起始状态到当前状态匹配的字符是否构成词典中的一个完整的词
+   */
+  public abstract boolean isFinal();
+
+  /**
+   * 当前匹配的词条的附加信息，只在{@link #isFinal()}为true时有效，由词典通过{@link Dictionary#type(long)}
+   * 和{@link Dictionary#flags(long)}解释
+   *
+   * @return 词典不带附加信息时为0
+   */
+  public long metadata() {
+    return 0;
+  }
+
+  /**
+   * 撤销最近一次成功的{@link #match(int)}，回到匹配之前的状态，只能撤销一次
+   */
+  public abstract void undo();
+
+  /**
+   * 将码点按UTF-8编码，不依赖平台默认字符集
+   *
+   * @param utf8 长度至少为{@link #MAX_UTF8_LENGTH}
+   * @return 编码后的字节数
+   */
+  static int encodeUTF8(int codePoint, byte[] utf8) {
+    if (codePoint < 0x80) {
+      utf8[0] = (byte) codePoint;
+      return 1;
+    }
+    if (codePoint < 0x800) {
+      utf8[0] = (byte) (0xC0 | (codePoint >> 6));
+      utf8[1] = (byte) (0x80 | (codePoint & 0x3F));
+      return 2;
+    }
+    if (codePoint < 0x10000) {
+      utf8[0] = (byte) (0xE0 | (codePoint >> 12));
+      utf8[1] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      utf8[2] = (byte) (0x80 | (codePoint & 0x3F));
+      return 3;
+    }
+    utf8[0] = (byte) (0xF0 | (codePoint >> 18));
+    utf8[1] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+    utf8[2] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+    utf8[3] = (byte) (0x80 | (codePoint & 0x3F));
+    return 4;
+  }
+}
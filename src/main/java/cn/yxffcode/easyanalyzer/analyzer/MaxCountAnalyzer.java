@@ -2,6 +2,7 @@ package cn.yxffcode.easyanalyzer.analyzer;
 
 import cn.yxffcode.easyanalyzer.lang.IntArrayStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.fst.FST;
 
@@ -13,18 +14,34 @@ import java.util.SortedSet;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * 最多数量匹配
+ * 最多数量匹配.
+ * <p/>
+ * 通过{@link #create(AhoCorasickAutomaton)}创建时使用Aho-Corasick自动机，一次扫描输出所有的词条，
+ * 默认的实现输出的词典中的词条都包含在其中。两种实现中词典外的英文字母、数字都不会越过空白字符
  *
  * @author gaohang on 15/12/3.
  */
 public class MaxCountAnalyzer extends Analyzer {
 
-  private final FST<CharsRef> fst;
+  private final Dictionary dictionary;
   private final boolean outputPrefix;
+  /**
+   * 不为null时使用Aho-Corasick自动机分词，不使用dictionary
+   */
+  private final AhoCorasickAutomaton automaton;
+  private final TokenizerMetrics metrics = new TokenizerMetrics();
+  private final TokenLengthLimit maxTokenLength = new TokenLengthLimit();
 
-  private MaxCountAnalyzer(FST<CharsRef> fst, boolean outputPrefix) {
-    this.fst = fst;
+  private MaxCountAnalyzer(Dictionary dictionary, boolean outputPrefix) {
+    this.dictionary = dictionary;
     this.outputPrefix = outputPrefix;
+    this.automaton = null;
+  }
+
+  private MaxCountAnalyzer(AhoCorasickAutomaton automaton) {
+    this.dictionary = null;
+    this.outputPrefix = false;
+    this.automaton = automaton;
   }
 
   /**
@@ -46,7 +63,7 @@ public class MaxCountAnalyzer extends Analyzer {
    */
   public static MaxCountAnalyzer create(FST<CharsRef> fst, boolean outputPrefix) {
     checkNotNull(fst);
-    return new MaxCountAnalyzer(fst, outputPrefix);
+    return new MaxCountAnalyzer(Dictionary.of(fst), outputPrefix);
   }
 
   /**
@@ -74,6 +91,41 @@ public class MaxCountAnalyzer extends Analyzer {
     return create(FSTFactory.create(dictionaries), outputPrefix);
   }
 
+  /**
+   * 通过编译后的二进制词典创建分词器，启动时不需要排序词条和创建FST
+   *
+   * @param compiledDictionary 由{@link FSTFactory#save(FST, File)}保存的词典文件
+   * @param outputPrefix       如果输入不能完全匹配，只匹配了一部分，是否将匹配的一部分输出
+   */
+  public static MaxCountAnalyzer create(@NotNull File compiledDictionary,
+                                        boolean outputPrefix) throws IOException {
+    return create(FSTFactory.load(compiledDictionary), outputPrefix);
+  }
+
+  /**
+   * 通过任意的词典实现创建分词器，如{@link FSTDictionary#create(FST, long)}展开了直接寻址表的词典、
+   * {@link FSTFactory#map(File, boolean)}内存映射的词典、{@link DoubleArrayTrie}、
+   * 可替换的{@link ReloadableDictionary}和叠加了增量修改的{@link OverlayDictionary}
+   *
+   * @param dictionary   词典，可以在多个分词器之间共享
+   * @param outputPrefix 如果输入不能完全匹配，只匹配了一部分，是否将匹配的一部分输出
+   */
+  public static MaxCountAnalyzer create(@NotNull Dictionary dictionary, boolean outputPrefix) {
+    checkNotNull(dictionary);
+    return new MaxCountAnalyzer(dictionary, outputPrefix);
+  }
+
+  /**
+   * 通过Aho-Corasick自动机创建分词器，一次扫描输出输入中所有的词条（包括相互重叠的词条），不回退输入.
+   * <p/>
+   * 词条按起始位置输出，同一位置上长的词条在前；没有被任何词条覆盖的连续英文字母、连续数字各作为一个词条，
+   * 没有被覆盖的汉字单独作为一个词条，其它字符被忽略
+   */
+  public static MaxCountAnalyzer create(@NotNull AhoCorasickAutomaton automaton) {
+    checkNotNull(automaton);
+    return new MaxCountAnalyzer(automaton);
+  }
+
   /**
    * 指定词条创建分词器
    *
@@ -86,18 +138,69 @@ public class MaxCountAnalyzer extends Analyzer {
     return create(FSTFactory.create(sortedWords), outputPrefix);
   }
 
+  /**
+   * 分词统计，默认关闭，通过{@link TokenizerMetrics#setEnabled(boolean)}开启，
+   * 通过{@link TokenizerMetrics#register(String)}注册到JMX
+   */
+  public TokenizerMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * 限制词条的长度，词典外连续的英文字母、数字超出时按此长度切开，分词器占用的内存不再随输入的长度增长，
+   * 适合分词没有边界的输入（如日志流）。对之后开始分词的输入有效
+   *
+   * @param maxTokenLength 词条最多的码点数
+   */
+  public void setMaxTokenLength(int maxTokenLength) {
+    this.maxTokenLength.set(maxTokenLength);
+  }
+
+  public int getMaxTokenLength() {
+    return maxTokenLength.get();
+  }
+
+  /**
+   * 对内存中的输入分词，分词器直接按位置读取输入，不经过Reader和缓冲区。
+   * {@link #tokenStream(String, String)}包装字符串使用的Reader不是公开的类，只能按普通的Reader读取
+   *
+   * @param text 分词结束之前不能修改
+   */
+  public final TokenStream directTokenStream(String fieldName, CharSequence text) throws IOException {
+    return DirectComponents.tokenStream(this, fieldName, text);
+  }
+
   @Override
   protected TokenStreamComponents createComponents(final String fieldName) {
-    return new TokenStreamComponents(new FSTTokenizer(fst, outputPrefix));
+    if (automaton != null) {
+      final AhoCorasickTokenizer tokenizer = new AhoCorasickTokenizer(automaton, metrics);
+      return new LimitedComponents(tokenizer, maxTokenLength);
+    }
+    final FSTTokenizer tokenizer = new FSTTokenizer(dictionary, outputPrefix, metrics);
+    return new LimitedComponents(tokenizer, maxTokenLength);
   }
 
   static final class FSTTokenizer extends PrefixWordFSTAnalyzer.FSTTokenizer {
 
-    private IntArrayStringBuilder lastPushBack;
+    /**
+     * 最近一次压回输入的字符，{@link BaseTokenizer}会复用appender，所以这里保存的是拷贝
+     */
+    private final IntArrayStringBuilder lastPushBack = new IntArrayStringBuilder();
+    /**
+     * {@link #lastPushBack}中已经被后续匹配消费掉的字符数
+     */
+    private int lastPushBackOffset;
+
+    FSTTokenizer(final Dictionary dictionary,
+                 final boolean outputPrefix,
+                 final TokenizerMetrics metrics) {
+      super(dictionary, outputPrefix, metrics);
+    }
 
-    FSTTokenizer(final FST<CharsRef> fst,
-                 final boolean outputPrefix) {
-      super(fst, outputPrefix);
+    @Override
+    public void reset() throws IOException {
+      super.reset();
+      rememberPushBack(null, 0);
     }
 
     @Override
@@ -105,24 +208,32 @@ public class MaxCountAnalyzer extends Analyzer {
       if (remains()) {
         int s = shortestWord();
         if (s != appender.length()) {//如果栈里的元素和当前元素不相同才压回
-          pushBack(appender, s);
-          lastPushBack = appender.slice(s, appender.length() - s);
+          pushBack(s);
+          rememberPushBack(appender, s);
         }
       } else {
         if (state == TokenState.FINISHED) {
-          lastPushBack = null;
+          rememberPushBack(null, 0);
           return;
         }
-        if (lastPushBack != null && !lastPushBack.isEmpty() && lastPushBack.startWith(appender)) {
-          lastPushBack = lastPushBack.slice(appender.length());
+        if (lastPushBackOffset < lastPushBack.length() && lastPushBack.startWith(appender, lastPushBackOffset)) {
+          lastPushBackOffset += appender.length();
           return;
         }
         //压回所有
-        pushBack(appender, 0);
-        lastPushBack = appender;
+        pushBack(0);
+        rememberPushBack(appender, 0);
       }
       super.onMatchFinished(appender);
     }
 
+    private void rememberPushBack(IntArrayStringBuilder appender, int begin) {
+      lastPushBack.clear();
+      lastPushBackOffset = 0;
+      if (appender != null) {
+        lastPushBack.append(appender, begin, appender.length() - begin);
+      }
+    }
+
   }
 }
@@ -0,0 +1,341 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.io.InputWindow;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.fst.FST;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static cn.yxffcode.easyanalyzer.analyzer.BaseTokenizer.isEnglishChar;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 最大概率切分：对每个句子建立所有可能的词组成的有向无环图，通过动态规划选出各个词的概率之积最大的切分.
+ * <p/>
+ * 词的概率为词频除以词典中所有词的词频之和，词典中没有的单字和连续的英文字母、连续的数字按词频为1计算。
+ * 句子是连续的字母和数字（包括汉字），其它字符作为分隔符被忽略。与最长、最短匹配不同，切分结果不依赖于
+ * 从哪个方向匹配，也不需要回退输入
+ *
+ * @author gaohang on 15/12/22.
+ */
+public class MaxProbabilityAnalyzer extends Analyzer {
+
+  private final WeightedDictionary dictionary;
+  private final TokenizerMetrics metrics = new TokenizerMetrics();
+
+  private MaxProbabilityAnalyzer(WeightedDictionary dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * 从指定的classpath路径下读取带词频的词典，使用{@link Thread#getContextClassLoader()}加载
+   *
+   * @param classpath 词典文件的类路径，支持目录
+   * @see WeightedDictionary
+   */
+  public static MaxProbabilityAnalyzer create(String classpath) throws IOException {
+    return create(WeightedDictionary.create(classpath));
+  }
+
+  /**
+   * @param classpath   词典文件的类路径，支持目录
+   * @param classLoader 用于加载词典文件的类加载器
+   */
+  public static MaxProbabilityAnalyzer create(String classpath, ClassLoader classLoader) throws IOException {
+    return create(WeightedDictionary.create(classpath, classLoader));
+  }
+
+  /**
+   * @param dictionaries 带词频的词典文件列表
+   */
+  public static MaxProbabilityAnalyzer create(@NotNull Iterable<File> dictionaries) throws IOException {
+    return create(WeightedDictionary.create(dictionaries));
+  }
+
+  /**
+   * 通过带词频的词典创建分词器，词典可以在多个分词器之间共享
+   */
+  public static MaxProbabilityAnalyzer create(@NotNull WeightedDictionary dictionary) {
+    checkNotNull(dictionary);
+    return new MaxProbabilityAnalyzer(dictionary);
+  }
+
+  /**
+   * 分词统计，默认关闭，通过{@link TokenizerMetrics#setEnabled(boolean)}开启，
+   * 通过{@link TokenizerMetrics#register(String)}注册到JMX
+   */
+  public TokenizerMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * 对内存中的输入分词，分词器直接按位置读取输入，不经过Reader和缓冲区。
+   * {@link #tokenStream(String, String)}包装字符串使用的Reader不是公开的类，只能按普通的Reader读取
+   *
+   * @param text 分词结束之前不能修改
+   */
+  public final TokenStream directTokenStream(String fieldName, CharSequence text) throws IOException {
+    return DirectComponents.tokenStream(this, fieldName, text);
+  }
+
+  @Override
+  protected TokenStreamComponents createComponents(String fieldName) {
+    return new DirectComponents(new DAGTokenizer(dictionary, metrics));
+  }
+
+  /**
+   * 逐个句子读入并切分，句子过长时按{@link #MAX_SENTENCE_LENGTH}截断
+   */
+  static final class DAGTokenizer extends Tokenizer {
+
+    /**
+     * 一个句子最多的字符数，超出的部分作为下一个句子，限制缓冲区的大小
+     */
+    static final int MAX_SENTENCE_LENGTH = 4096;
+
+    private final WeightedDictionary dictionary;
+    private final FST<Long> fst;
+    private final FST.BytesReader fstReader;
+    private final FST.Arc<Long> arc = new FST.Arc<>();
+    private final double unknownLogProbability;
+    private final InputWindow window = new InputWindow();
+    private final CharTermAttribute termAtt;
+    private final OffsetAttribute offsetAtt;
+    private final TypeAttribute typeAtt;
+    private final TokenizerMetrics metrics;
+    private TokenizerMetrics.Recorder recorder;
+
+    /**
+     * 当前句子的字符及其在输入中的位置
+     */
+    private int[] codePoints = new int[64];
+    private long[] offsets = new long[64];
+    private int length;
+    /**
+     * best[i]为前i个字符的最大对数概率，from[i]为这个切分中最后一个词的起始位置
+     */
+    private double[] best = new double[65];
+    private int[] from = new int[65];
+    /**
+     * 切分出的各个词的起始位置，最后一个元素为句子的长度，{@link #next}为下一个要输出的词
+     */
+    private int[] bounds = new int[65];
+    private int boundCount;
+    private int next;
+    /**
+     * 已经读取但不属于当前句子的字符，下一个句子从它开始
+     */
+    private int pending;
+    private long pendingOffset;
+    private boolean eof;
+
+    DAGTokenizer(WeightedDictionary dictionary, TokenizerMetrics metrics) {
+      this.dictionary = dictionary;
+      this.fst = dictionary.fst();
+      this.fstReader = fst.getBytesReader();
+      this.unknownLogProbability = dictionary.logProbability(1);
+      this.metrics = metrics;
+      this.termAtt = addAttribute(CharTermAttribute.class);
+      this.offsetAtt = addAttribute(OffsetAttribute.class);
+      this.typeAtt = addAttribute(TypeAttribute.class);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+      clearAttributes();
+      while (next >= boundCount - 1) {
+        if (!readSentence()) {
+          return false;
+        }
+        segment();
+      }
+      emit(bounds[next], bounds[next + 1]);
+      next++;
+      if (recorder != null) {
+        recorder.tokens++;
+      }
+      return true;
+    }
+
+    /**
+     * 读入下一个句子：跳过分隔符，读取连续的字母和数字
+     *
+     * @return 是否还有句子
+     */
+    private boolean readSentence() throws IOException {
+      length = 0;
+      int read = pending;
+      long offset = pendingOffset;
+      pending = InputWindow.EOF;
+      while (true) {
+        if (read == InputWindow.EOF) {
+          if (eof) {
+            return length > 0;
+          }
+          offset = window.position();
+          read = window.read();
+          window.mark();
+          if (read == InputWindow.EOF) {
+            eof = true;
+            continue;
+          }
+        }
+        if (Character.isLetterOrDigit(read)) {
+          if (length == MAX_SENTENCE_LENGTH) {
+            pending = read;
+            pendingOffset = offset;
+            return true;
+          }
+          append(read, offset);
+        } else if (length > 0) {
+          return true;
+        }
+        read = InputWindow.EOF;
+      }
+    }
+
+    private void append(int codePoint, long offset) {
+      if (length == codePoints.length) {
+        codePoints = Arrays.copyOf(codePoints, length * 2);
+        offsets = Arrays.copyOf(offsets, length * 2);
+        best = Arrays.copyOf(best, length * 2 + 1);
+        from = Arrays.copyOf(from, length * 2 + 1);
+        bounds = Arrays.copyOf(bounds, length * 2 + 1);
+      }
+      codePoints[length] = codePoint;
+      offsets[length] = offset;
+      length++;
+    }
+
+    /**
+     * 从前向后遍历一次：从每个位置出发在FST中找出所有的词，即有向无环图中的边，同时更新边的终点的最大概率，
+     * 再从句子的最后沿from回溯得到切分
+     */
+    private void segment() throws IOException {
+      Arrays.fill(best, 0, length + 1, Double.NEGATIVE_INFINITY);
+      best[0] = 0;
+      for (int i = 0; i < length; i++) {
+        final double base = best[i];
+        if (base == Double.NEGATIVE_INFINITY) {
+          continue;
+        }
+        //单字或连续的英文字母、数字，保证总有一条切分
+        final int unknownEnd = unknownWordEnd(i);
+        if (unknownEnd > i) {
+          relax(i, unknownEnd, base + unknownLogProbability);
+        }
+        fst.getFirstArc(arc);
+        long output = 0;
+        for (int j = i; j < length; j++) {
+          if (recorder != null) {
+            recorder.arcLookups++;
+          }
+          if (fst.findTargetArc(Character.toLowerCase(codePoints[j]), arc, arc, fstReader) == null) {
+            break;
+          }
+          output += arc.output;
+          if (arc.isFinal()) {
+            relax(i, j + 1, base + dictionary.logProbability(output + arc.nextFinalOutput));
+          }
+        }
+      }
+      boundCount = 0;
+      for (int end = length; end > 0; end = from[end]) {
+        bounds[boundCount++] = end;
+      }
+      bounds[boundCount++] = 0;
+      reverse(bounds, boundCount);
+      next = 0;
+    }
+
+    private void relax(int start, int end, double logProbability) {
+      if (logProbability > best[end]) {
+        best[end] = logProbability;
+        from[end] = start;
+      }
+    }
+
+    /**
+     * @return 从start开始的词典外的词的结束位置：英文字母和数字只从连续的一段的开头开始，整段作为一个词，
+     * 其它字符单独作为一个词；start在一段英文字母或数字的中间时返回start
+     */
+    private int unknownWordEnd(int start) {
+      final int codePoint = codePoints[start];
+      final boolean english = isEnglishChar(codePoint);
+      if (!english && !Character.isDigit(codePoint)) {
+        return start + 1;
+      }
+      if (start > 0 && sameKind(codePoints[start - 1], english)) {
+        return start;
+      }
+      int end = start + 1;
+      while (end < length && sameKind(codePoints[end], english)) {
+        end++;
+      }
+      return end;
+    }
+
+    private static boolean sameKind(int codePoint, boolean english) {
+      return english ? isEnglishChar(codePoint) : Character.isDigit(codePoint);
+    }
+
+    private static void reverse(int[] array, int length) {
+      for (int i = 0, j = length - 1; i < j; i++, j--) {
+        final int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+      }
+    }
+
+    private void emit(int start, int end) {
+      final int count = end - start;
+      char[] buffer = termAtt.buffer();
+      if (buffer.length < count << 1) {
+        buffer = termAtt.resizeBuffer(count << 1);
+      }
+      int charCount = 0;
+      for (int i = start; i < end; i++) {
+        charCount += Character.toChars(codePoints[i], buffer, charCount);
+      }
+      termAtt.setLength(charCount);
+      offsetAtt.setOffset(correctOffset(BaseTokenizer.offset(offsets[start])),
+              correctOffset(BaseTokenizer.offset(offsets[end - 1] + Character.charCount(codePoints[end - 1]))));
+      typeAtt.setType(TypeAttribute.DEFAULT_TYPE);
+    }
+
+    @Override
+    public void reset() throws IOException {
+      super.reset();
+      window.reset(input);
+      length = 0;
+      boundCount = 0;
+      next = 0;
+      pending = InputWindow.EOF;
+      eof = false;
+      if (metrics == null || !metrics.isEnabled()) {
+        recorder = null;
+      } else if (recorder == null) {
+        recorder = new TokenizerMetrics.Recorder(metrics);
+      }
+    }
+
+    @Override
+    public void end() throws IOException {
+      super.end();
+      final int finalOffset = correctOffset(BaseTokenizer.offset(window.limit()));
+      offsetAtt.setOffset(finalOffset, finalOffset);
+      if (recorder != null) {
+        recorder.chars += window.limit();
+        recorder.flush();
+      }
+    }
+  }
+}
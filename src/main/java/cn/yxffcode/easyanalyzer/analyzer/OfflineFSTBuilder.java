@@ -0,0 +1,167 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.collection.ImmutableIterator;
+import cn.yxffcode.easyanalyzer.io.IOReaderException;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.OfflineSorter;
+import org.apache.lucene.util.fst.FST;
+
+import javax.validation.constraints.NotNull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 使用外部排序创建FST词典，用于词条多到放不进堆内存的场景.
+ * <p/>
+ * 词条先写入临时文件，通过lucene的{@link OfflineSorter}在给定的内存预算内分段排序、写出有序的临时文件并多路归并，
+ * 归并的结果去重后直接按顺序加入FST的Builder，不需要在内存中保存所有的词条。
+ * UTF-8编码后按字节排序与按码点排序的结果一致.
+ * <p/>
+ * 排序使用的内存受预算限制，创建出的FST仍然在堆中
+ *
+ * @author gaohang on 15/12/18.
+ */
+public final class OfflineFSTBuilder {
+
+  private static final int DEFAULT_RAM_BUFFER_MB = 64;
+
+  private final int ramBufferMB;
+  private final File tempDirectory;
+
+  private OfflineFSTBuilder(int ramBufferMB, File tempDirectory) {
+    this.ramBufferMB = ramBufferMB;
+    this.tempDirectory = tempDirectory;
+  }
+
+  /**
+   * 使用64MB的排序内存，临时文件写入java.io.tmpdir
+   */
+  public static OfflineFSTBuilder create() {
+    return create(DEFAULT_RAM_BUFFER_MB, new File(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * @param ramBufferMB   排序使用的内存，单位为MB
+   * @param tempDirectory 存放临时文件的目录，创建完成后临时文件会被删除
+   */
+  public static OfflineFSTBuilder create(int ramBufferMB, @NotNull File tempDirectory) {
+    checkArgument(ramBufferMB > 0 && ramBufferMB < 2048, "ramBufferMB must be in (0, 2048)");
+    checkNotNull(tempDirectory);
+    return new OfflineFSTBuilder(ramBufferMB, tempDirectory);
+  }
+
+  /**
+   * @param classpath   词典文件的类路径，支持目录
+   * @param classLoader 用于加载词典文件的类加载器
+   */
+  public FST<CharsRef> build(@NotNull String classpath, @NotNull ClassLoader classLoader) throws IOException {
+    checkNotNull(classpath);
+    checkNotNull(classLoader);
+    return build(DictionarySource.resolve(classpath, classLoader));
+  }
+
+  /**
+   * @param dictionaries 词典文件列表，按UTF-8读取
+   * @return 没有词条时返回null
+   */
+  public FST<CharsRef> build(@NotNull Iterable<File> dictionaries) throws IOException {
+    checkNotNull(dictionaries);
+    return build(DictionarySource.of(dictionaries));
+  }
+
+  private FST<CharsRef> build(List<DictionarySource> dictionaries) throws IOException {
+    final Path tempDir = tempDirectory.toPath();
+    final Path unsorted = Files.createTempFile(tempDir, "dictionary", ".unsorted");
+    final Path sorted = Files.createTempFile(tempDir, "dictionary", ".sorted");
+    try {
+      try (OfflineSorter.ByteSequencesWriter writer = new OfflineSorter.ByteSequencesWriter(unsorted)) {
+        for (DictionarySource dictionary : dictionaries) {
+          try (BufferedReader in = dictionary.openReader()) {
+            String line;
+            while ((line = in.readLine()) != null) {
+              final String word = FSTFactory.normalize(line);
+              if (word != null) {
+                writer.write(word.getBytes(StandardCharsets.UTF_8));
+              }
+            }
+          }
+        }
+      }
+      new OfflineSorter(OfflineSorter.DEFAULT_COMPARATOR, OfflineSorter.BufferSize.megabytes(ramBufferMB),
+              tempDir, OfflineSorter.MAX_TEMPFILES).sort(unsorted, sorted);
+      Files.delete(unsorted);
+
+      try (final OfflineSorter.ByteSequencesReader reader = new OfflineSorter.ByteSequencesReader(sorted)) {
+        return FSTFactory.build(new Iterable<String>() {
+          @Override
+          public Iterator<String> iterator() {
+            return new SortedWords(reader);
+          }
+        }, FST.INPUT_TYPE.BYTE4);
+      } catch (IOReaderException e) {
+        throw (IOException) e.getCause();
+      }
+    } finally {
+      Files.deleteIfExists(unsorted);
+      Files.deleteIfExists(sorted);
+    }
+  }
+
+  /**
+   * 逐个读取排好序的词条，跳过重复的词条
+   */
+  private static final class SortedWords extends ImmutableIterator<String> {
+    private final OfflineSorter.ByteSequencesReader reader;
+    private final BytesRefBuilder scratch = new BytesRefBuilder();
+    private final BytesRefBuilder last = new BytesRefBuilder();
+    private boolean hasLast;
+    private String next;
+
+    private SortedWords(OfflineSorter.ByteSequencesReader reader) {
+      this.reader = reader;
+      this.next = advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public String next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      final String current = next;
+      next = advance();
+      return current;
+    }
+
+    private String advance() {
+      try {
+        while (reader.read(scratch)) {
+          if (hasLast && scratch.get().bytesEquals(last.get())) {
+            continue;
+          }
+          last.copyBytes(scratch);
+          hasLast = true;
+          return scratch.get().utf8ToString();
+        }
+        return null;
+      } catch (IOException e) {
+        throw new IOReaderException(e);
+      }
+    }
+  }
+}
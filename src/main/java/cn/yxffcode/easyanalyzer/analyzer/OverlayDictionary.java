@@ -0,0 +1,508 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.collection.ImmutableIterator;
+import cn.yxffcode.easyanalyzer.io.IOReaderException;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+
+import javax.validation.constraints.NotNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.isBlank;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * 在不可变的基础词典上叠加增量修改的词典，增加或删除少量的词条不需要重新创建整个FST.
+ * <p/>
+ * 增加的词条和删除的词条（墓碑）各自保存在一个小的FST中，每次修改只重新创建增量的FST，
+ * 代价与增量的大小成正比。分词时基础词典与增量的FST同时匹配，效果与合并后的词典一致：增加的词条总是可以匹配，
+ * 基础词典中的词条被删除后不再作为完整的词，但仍然可以作为其它词的前缀；
+ * 如果以它为前缀的词都被删除了，这个前缀也不再能匹配.
+ * <p/>
+ * 增量超过阈值后，在后台线程中将增量合并到新的基础词典。修改后的词典在分词器下一次
+ * {@link org.apache.lucene.analysis.Tokenizer#reset()}时生效
+ *
+ * @author gaohang on 15/12/16.
+ */
+public final class OverlayDictionary extends Dictionary implements Closeable {
+
+  private static final int DEFAULT_COMPACT_THRESHOLD = 10000;
+
+  /**
+   * 增量中的词条，true为增加，false为删除
+   */
+  private final NavigableMap<String, Boolean> delta = Maps.newTreeMap(CODE_POINT_ORDER);
+  private final int compactThreshold;
+  private FST<CharsRef> base;
+  private volatile Layers layers;
+  private ExecutorService executor;
+  private Future<FST<CharsRef>> compaction;
+  private boolean closed;
+
+  private OverlayDictionary(FST<CharsRef> base, int compactThreshold) {
+    this.base = base;
+    this.compactThreshold = compactThreshold;
+    this.layers = new Layers(Dictionary.of(base), null, null, null);
+  }
+
+  /**
+   * @param base 基础词典
+   */
+  public static OverlayDictionary create(@NotNull FST<CharsRef> base) {
+    return create(base, DEFAULT_COMPACT_THRESHOLD);
+  }
+
+  /**
+   * @param base             基础词典
+   * @param compactThreshold 增量中的词条数达到此值时在后台合并到基础词典
+   */
+  public static OverlayDictionary create(@NotNull FST<CharsRef> base, int compactThreshold) {
+    checkNotNull(base);
+    checkArgument(compactThreshold > 0, "compactThreshold must be positive");
+    return new OverlayDictionary(base, compactThreshold);
+  }
+
+  /**
+   * 增加词条
+   */
+  public void add(@NotNull Iterable<String> words) throws IOException {
+    update(words, true);
+  }
+
+  public void add(String... words) throws IOException {
+    add(Arrays.asList(words));
+  }
+
+  /**
+   * 删除词条，删除不存在的词条没有影响
+   */
+  public void remove(@NotNull Iterable<String> words) throws IOException {
+    update(words, false);
+  }
+
+  public void remove(String... words) throws IOException {
+    remove(Arrays.asList(words));
+  }
+
+  /**
+   * @return 还没有合并到基础词典的增量的词条数
+   */
+  public synchronized int deltaSize() {
+    return delta.size();
+  }
+
+  /**
+   * 在后台线程中将增量合并到新的基础词典，合并过程中的修改不受影响
+   *
+   * @return 合并后的基础词典，已经有合并在进行时返回正在进行的合并
+   */
+  public synchronized Future<FST<CharsRef>> compact() {
+    checkState(!closed, "closed");
+    if (compaction != null && !compaction.isDone()) {
+      return compaction;
+    }
+    if (executor == null) {
+      executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("dictionary-compaction-%d")
+              .build());
+    }
+    final FST<CharsRef> snapshotBase = base;
+    final NavigableMap<String, Boolean> snapshotDelta = Maps.newTreeMap(delta);
+    compaction = executor.submit(new Callable<FST<CharsRef>>() {
+      @Override
+      public FST<CharsRef> call() throws Exception {
+        final FST<CharsRef> merged = FSTFactory.build(new Iterable<String>() {
+          @Override
+          public Iterator<String> iterator() {
+            return new MergeIterator(snapshotBase, snapshotDelta);
+          }
+        }, snapshotBase.inputType);
+        checkState(merged != null, "dictionary becomes empty after compaction");
+        onCompacted(merged, snapshotDelta);
+        return merged;
+      }
+    });
+    return compaction;
+  }
+
+  /**
+   * 停止后台合并
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public Matcher matcher() {
+    return layers.matcher();
+  }
+
+  @Override
+  public Dictionary current() {
+    return layers;
+  }
+
+  @Override
+  public String type(long metadata) {
+    return layers.type(metadata);
+  }
+
+  @Override
+  public int flags(long metadata) {
+    return layers.flags(metadata);
+  }
+
+  private synchronized void update(Iterable<String> words, boolean add) throws IOException {
+    checkNotNull(words);
+    for (String word : words) {
+      if (isBlank(word)) {
+        continue;
+      }
+      delta.put(word.trim().toLowerCase(), add);
+    }
+    publish(layers.base);
+    if (delta.size() >= compactThreshold && !closed) {
+      compact();
+    }
+  }
+
+  /**
+   * 合并完成后替换基础词典，合并开始之后又被修改过的词条保留在增量中
+   */
+  private synchronized void onCompacted(FST<CharsRef> merged, Map<String, Boolean> merging) throws IOException {
+    for (Map.Entry<String, Boolean> entry : merging.entrySet()) {
+      if (entry.getValue().equals(delta.get(entry.getKey()))) {
+        delta.remove(entry.getKey());
+      }
+    }
+    base = merged;
+    publish(Dictionary.of(merged));
+  }
+
+  /**
+   * 根据当前的增量重新创建增量的FST，发布新的一组词典
+   */
+  private void publish(Dictionary baseDictionary) throws IOException {
+    final SortedSet<String> added = Sets.newTreeSet(CODE_POINT_ORDER);
+    final SortedSet<String> removed = Sets.newTreeSet(CODE_POINT_ORDER);
+    for (Map.Entry<String, Boolean> entry : delta.entrySet()) {
+      (entry.getValue() ? added : removed).add(entry.getKey());
+    }
+    layers = new Layers(baseDictionary, of(added), of(removed), of(pruned(added, removed)));
+  }
+
+  /**
+   * 基础词典中的路径，以它为前缀的词都被删除了，合并后的词典中不再有这个路径。
+   * 从每个被删除的词开始，逐个去掉最后一个字符，直到遇到还有其它词以它为前缀的路径
+   */
+  private SortedSet<String> pruned(SortedSet<String> added, SortedSet<String> removed) throws IOException {
+    final SortedSet<String> pruned = Sets.newTreeSet(CODE_POINT_ORDER);
+    if (removed.isEmpty()) {
+      return pruned;
+    }
+    final IntsRefFSTEnum<CharsRef> baseEnum = new IntsRefFSTEnum<>(base);
+    final IntsRefBuilder scratch = new IntsRefBuilder();
+    for (String word : removed) {
+      for (String prefix = word; !prefix.isEmpty() && !pruned.contains(prefix);
+           prefix = prefix.substring(0, prefix.offsetByCodePoints(prefix.length(), -1))) {
+        if (hasLiveWord(prefix, added, removed, baseEnum, scratch)) {
+          break;
+        }
+        pruned.add(prefix);
+      }
+    }
+    return pruned;
+  }
+
+  /**
+   * 合并后的词典中是否有以prefix为前缀的词
+   */
+  private boolean hasLiveWord(String prefix, SortedSet<String> added, SortedSet<String> removed,
+                              IntsRefFSTEnum<CharsRef> baseEnum, IntsRefBuilder scratch) throws IOException {
+    final SortedSet<String> addedTail = added.tailSet(prefix);
+    if (!addedTail.isEmpty() && addedTail.first().startsWith(prefix)) {
+      return true;
+    }
+    final IntsRef labels = FSTFactory.toLabels(prefix, base.inputType, scratch);
+    for (IntsRefFSTEnum.InputOutput<CharsRef> current = baseEnum.seekCeil(labels);
+         current != null && startsWith(current.input, labels); current = baseEnum.next()) {
+      if (!removed.contains(FSTFactory.toWord(current.input, base.inputType))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean startsWith(IntsRef input, IntsRef prefix) {
+    if (input.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (input.ints[input.offset + i] != prefix.ints[prefix.offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Dictionary of(SortedSet<String> words) throws IOException {
+    final FST<CharsRef> fst = FSTFactory.build(words, FST.INPUT_TYPE.BYTE4);
+    return fst == null ? null : Dictionary.of(fst);
+  }
+
+  /**
+   * 不可变的一组词典，分词器在一次输入的分词过程中使用同一组
+   */
+  private static final class Layers extends Dictionary {
+    private final Dictionary base;
+    /**
+     * 没有增加或删除的词条时为null
+     */
+    private final Dictionary added;
+    private final Dictionary removed;
+    private final Dictionary pruned;
+
+    private Layers(Dictionary base, Dictionary added, Dictionary removed, Dictionary pruned) {
+      this.base = base;
+      this.added = added;
+      this.removed = removed;
+      this.pruned = pruned;
+    }
+
+    @Override
+    public Matcher matcher() {
+      return new LayeredMatcher(base.matcher(), matcher(added), matcher(removed), matcher(pruned));
+    }
+
+    /**
+     * 附加信息只来自基础词典，增量中的词条没有附加信息
+     */
+    @Override
+    public String type(long metadata) {
+      return base.type(metadata);
+    }
+
+    @Override
+    public int flags(long metadata) {
+      return base.flags(metadata);
+    }
+
+    private static Matcher matcher(Dictionary dictionary) {
+      return dictionary == null ? null : dictionary.matcher();
+    }
+  }
+
+  /**
+   * 在基础词典和增量的词典上同时匹配，某个词典匹配失败后在本次匹配中不再参与
+   */
+  private static final class LayeredMatcher extends Matcher {
+    private final Matcher base;
+    private final Matcher added;
+    private final Matcher removed;
+    private final Matcher pruned;
+    private boolean baseAlive;
+    private boolean addedAlive;
+    private boolean removedAlive;
+    private boolean prunedAlive;
+    /**
+     * 最近一次成功的匹配之前各词典是否参与匹配，以及各词典是否前进了一步，用于{@link #undo()}
+     */
+    private boolean previousBaseAlive;
+    private boolean previousAddedAlive;
+    private boolean previousRemovedAlive;
+    private boolean previousPrunedAlive;
+    private boolean baseMoved;
+    private boolean addedMoved;
+    private boolean removedMoved;
+    private boolean prunedMoved;
+
+    private LayeredMatcher(Matcher base, Matcher added, Matcher removed, Matcher pruned) {
+      this.base = base;
+      this.added = added;
+      this.removed = removed;
+      this.pruned = pruned;
+    }
+
+    @Override
+    public void reset() {
+      base.reset();
+      baseAlive = true;
+      addedAlive = reset(added);
+      removedAlive = reset(removed);
+      prunedAlive = reset(pruned);
+      baseMoved = addedMoved = removedMoved = prunedMoved = false;
+    }
+
+    private static boolean reset(Matcher matcher) {
+      if (matcher == null) {
+        return false;
+      }
+      matcher.reset();
+      return true;
+    }
+
+    @Override
+    public boolean match(int codePoint) throws IOException {
+      boolean baseMatched = baseAlive && base.match(codePoint);
+      final boolean prunedMatched = baseMatched && prunedAlive && pruned.match(codePoint);
+      if (prunedMatched && pruned.isFinal()) {
+        //以这个路径为前缀的词都被删除了
+        base.undo();
+        pruned.undo();
+        baseMatched = false;
+      }
+      final boolean addedMatched = addedAlive && added.match(codePoint);
+      //都没有匹配时状态保持不变
+      if (!baseMatched && !addedMatched) {
+        return false;
+      }
+      final boolean removedMatched = baseMatched && removedAlive && removed.match(codePoint);
+      previousBaseAlive = baseAlive;
+      previousAddedAlive = addedAlive;
+      previousRemovedAlive = removedAlive;
+      previousPrunedAlive = prunedAlive;
+      baseMoved = baseMatched;
+      addedMoved = addedMatched;
+      removedMoved = removedMatched;
+      prunedMoved = baseMatched && prunedMatched;
+      baseAlive = baseMatched;
+      addedAlive = addedMatched;
+      prunedAlive = prunedMoved;
+      removedAlive = removedMatched;
+      return true;
+    }
+
+    @Override
+    public void undo() {
+      if (baseMoved) {
+        base.undo();
+      }
+      if (addedMoved) {
+        added.undo();
+      }
+      if (removedMoved) {
+        removed.undo();
+      }
+      if (prunedMoved) {
+        pruned.undo();
+      }
+      baseMoved = addedMoved = removedMoved = prunedMoved = false;
+      baseAlive = previousBaseAlive;
+      addedAlive = previousAddedAlive;
+      removedAlive = previousRemovedAlive;
+      prunedAlive = previousPrunedAlive;
+    }
+
+    @Override
+    public boolean isFinal() {
+      return isBaseFinal() || (addedAlive && added.isFinal());
+    }
+
+    /**
+     * 基础词典中的词条没有被删除时使用它的附加信息，只在增量中的词条没有附加信息
+     */
+    @Override
+    public long metadata() {
+      return isBaseFinal() ? base.metadata() : 0;
+    }
+
+    private boolean isBaseFinal() {
+      return baseAlive && base.isFinal() && !(removedAlive && removed.isFinal());
+    }
+  }
+
+  /**
+   * 按码点顺序合并基础词典和增量中的词条，跳过被删除的词条
+   */
+  private static final class MergeIterator extends ImmutableIterator<String> {
+    private final IntsRefFSTEnum<CharsRef> baseEnum;
+    private final FST.INPUT_TYPE inputType;
+    private final Iterator<Map.Entry<String, Boolean>> deltaIterator;
+    private String nextBase;
+    private Map.Entry<String, Boolean> nextDelta;
+    private String next;
+
+    private MergeIterator(FST<CharsRef> base, NavigableMap<String, Boolean> delta) {
+      this.baseEnum = new IntsRefFSTEnum<>(base);
+      this.inputType = base.inputType;
+      this.deltaIterator = delta.entrySet().iterator();
+      this.nextBase = readBase();
+      this.nextDelta = deltaIterator.hasNext() ? deltaIterator.next() : null;
+      this.next = advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public String next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      final String current = next;
+      next = advance();
+      return current;
+    }
+
+    private String advance() {
+      while (nextBase != null || nextDelta != null) {
+        final int cmp = nextBase == null ? 1
+                : nextDelta == null ? -1 : CODE_POINT_ORDER.compare(nextBase, nextDelta.getKey());
+        if (cmp < 0) {
+          final String word = nextBase;
+          nextBase = readBase();
+          return word;
+        }
+        final Map.Entry<String, Boolean> entry = nextDelta;
+        nextDelta = deltaIterator.hasNext() ? deltaIterator.next() : null;
+        if (cmp == 0) {
+          nextBase = readBase();
+        }
+        if (entry.getValue()) {
+          return entry.getKey();
+        }
+      }
+      return null;
+    }
+
+    private String readBase() {
+      final IntsRefFSTEnum.InputOutput<CharsRef> current;
+      try {
+        current = baseEnum.next();
+      } catch (IOException e) {
+        throw new IOReaderException(e);
+      }
+      if (current == null) {
+        return null;
+      }
+      return FSTFactory.toWord(current.input, inputType);
+    }
+  }
+}
@@ -0,0 +1,468 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+
+import javax.validation.constraints.NotNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 多线程创建FST词典，用于词典很大、单线程创建很慢的场景.
+ * <p/>
+ * 创建分为三个阶段：多个.dic文件并行解析，大文件按字节范围切分成多段并行解析，每一段各自排序去重；
+ * 排好序的分片两两并行归并；最后将归并结果按顺序加入FST的Builder。Builder本身只能单线程使用.
+ * <p/>
+ * 词典文件按UTF-8读取，字节范围在换行符处对齐，因此不会切断多字节字符；jar包中的词典和.dic.gz压缩的词典不切分。
+ * 每次创建都会返回各阶段的耗时，通过{@link #setMeasurePeakHeap(boolean)}开启后还会返回堆内存峰值.
+ * <p/>
+ * 同一个实例可以多次创建，但不能并发调用{@link #build(Iterable)}
+ *
+ * @author gaohang on 15/12/17.
+ */
+public final class ParallelFSTBuilder {
+
+  /**
+   * 默认的切分大小，超过此大小的文件会被切分成多段
+   */
+  private static final long DEFAULT_SPLIT_BYTES = 16L << 20;
+  private static final int LINE_FEED = '\n';
+
+  /**
+   * 外部传入的线程池，为null时每次创建都新建线程池，创建完成后关闭
+   */
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final long splitBytes;
+  /**
+   * 是否统计堆内存峰值
+   */
+  private volatile boolean measurePeakHeap;
+
+  private ParallelFSTBuilder(ExecutorService executor, int parallelism, long splitBytes) {
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.splitBytes = splitBytes;
+  }
+
+  /**
+   * 使用CPU核数个线程
+   */
+  public static ParallelFSTBuilder create() {
+    return create(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param threads 线程数，每次创建都会新建线程池，创建完成后关闭
+   */
+  public static ParallelFSTBuilder create(int threads) {
+    checkArgument(threads > 0, "threads must be positive");
+    return new ParallelFSTBuilder(null, threads, DEFAULT_SPLIT_BYTES);
+  }
+
+  /**
+   * @param executor    执行解析和归并的线程池，不会被关闭
+   * @param parallelism 线程池的并行度，用于决定大文件切分的段数
+   * @param splitBytes  超过此大小的文件会被切分成多段并行解析
+   */
+  public static ParallelFSTBuilder create(@NotNull ExecutorService executor, int parallelism, long splitBytes) {
+    checkNotNull(executor);
+    checkArgument(parallelism > 0, "parallelism must be positive");
+    checkArgument(splitBytes > 0, "splitBytes must be positive");
+    return new ParallelFSTBuilder(executor, parallelism, splitBytes);
+  }
+
+  /**
+   * 统计创建过程中的堆内存峰值，默认不统计.
+   * <p/>
+   * 开启后每次创建前会重置JVM中所有堆内存池的峰值（{@link MemoryPoolMXBean#resetPeakUsage()}），
+   * 会影响同一个JVM中其他读取内存池峰值的监控，只应在离线创建词典时使用
+   */
+  public void setMeasurePeakHeap(boolean measurePeakHeap) {
+    this.measurePeakHeap = measurePeakHeap;
+  }
+
+  /**
+   * @param classpath   词典文件的类路径，支持目录
+   * @param classLoader 用于加载词典文件的类加载器
+   */
+  public Result build(@NotNull String classpath, @NotNull ClassLoader classLoader) throws IOException {
+    checkNotNull(classpath);
+    checkNotNull(classLoader);
+    return build(DictionarySource.resolve(classpath, classLoader));
+  }
+
+  /**
+   * @param dictionaries 词典文件列表
+   */
+  public Result build(@NotNull Iterable<File> dictionaries) throws IOException {
+    checkNotNull(dictionaries);
+    return build(DictionarySource.of(dictionaries));
+  }
+
+  private Result build(List<DictionarySource> dictionaries) throws IOException {
+    final boolean measurePeakHeap = this.measurePeakHeap;
+    final List<MemoryPoolMXBean> heapPools = measurePeakHeap ? heapPools() : Collections.<MemoryPoolMXBean>emptyList();
+    for (MemoryPoolMXBean pool : heapPools) {
+      pool.resetPeakUsage();
+    }
+    final ExecutorService executor = this.executor != null ? this.executor : newExecutor(parallelism);
+    final long start = System.nanoTime();
+    try {
+      //解析，每一段得到一个排好序的分片
+      final List<Future<String[]>> parsing = Lists.newArrayList();
+      for (final DictionarySource dictionary : dictionaries) {
+        if (!dictionary.isSplittable()) {
+          //jar包中的条目和压缩的词典只能顺序读取
+          parsing.add(executor.submit(new Callable<String[]>() {
+            @Override
+            public String[] call() throws Exception {
+              return sortedUnique(parse(dictionary));
+            }
+          }));
+          continue;
+        }
+        final File file = dictionary.file();
+        for (final long[] range : split(file)) {
+          parsing.add(executor.submit(new Callable<String[]>() {
+            @Override
+            public String[] call() throws Exception {
+              return sortedUnique(parse(file, range[0], range[1]));
+            }
+          }));
+        }
+      }
+      List<String[]> shards = Lists.newArrayListWithCapacity(parsing.size());
+      for (Future<String[]> future : parsing) {
+        shards.add(get(future));
+      }
+      final long parsed = System.nanoTime();
+
+      //两两并行归并，直到只剩一个分片
+      while (shards.size() > 1) {
+        final List<Future<String[]>> merging = Lists.newArrayList();
+        for (int i = 0; i + 1 < shards.size(); i += 2) {
+          final String[] left = shards.get(i);
+          final String[] right = shards.get(i + 1);
+          merging.add(executor.submit(new Callable<String[]>() {
+            @Override
+            public String[] call() {
+              return merge(left, right);
+            }
+          }));
+        }
+        final List<String[]> merged = Lists.newArrayListWithCapacity((shards.size() + 1) / 2);
+        for (Future<String[]> future : merging) {
+          merged.add(get(future));
+        }
+        if (shards.size() % 2 == 1) {
+          merged.add(shards.get(shards.size() - 1));
+        }
+        shards = merged;
+      }
+      final String[] words = shards.isEmpty() ? new String[0] : shards.get(0);
+      final long sorted = System.nanoTime();
+
+      final FST<CharsRef> fst = FSTFactory.build(Arrays.asList(words), FST.INPUT_TYPE.BYTE4);
+      final long built = System.nanoTime();
+
+      long peakHeapBytes = measurePeakHeap ? 0 : -1;
+      for (MemoryPoolMXBean pool : heapPools) {
+        peakHeapBytes += pool.getPeakUsage().getUsed();
+      }
+      return new Result(fst, new Stats(dictionaries.size(), parsing.size(), words.length,
+              millis(parsed - start), millis(sorted - parsed), millis(built - sorted), millis(built - start),
+              peakHeapBytes));
+    } finally {
+      if (executor != this.executor) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private static ExecutorService newExecutor(int threads) {
+    return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("dictionary-build-%d")
+            .build());
+  }
+
+  /**
+   * 将文件按{@link #splitBytes}切分，段数不超过并行度的4倍
+   *
+   * @return 每一段的[起始, 结束)字节位置
+   */
+  private List<long[]> split(File file) {
+    final long length = file.length();
+    final List<long[]> ranges = Lists.newArrayList();
+    if (length <= splitBytes) {
+      ranges.add(new long[]{0, length});
+      return ranges;
+    }
+    final long count = Math.min((length + splitBytes - 1) / splitBytes, parallelism * 4L);
+    final long step = (length + count - 1) / count;
+    for (long begin = 0; begin < length; begin += step) {
+      ranges.add(new long[]{begin, Math.min(begin + step, length)});
+    }
+    return ranges;
+  }
+
+  /**
+   * 读取起始位置在[begin, end)之间的行。begin不在行首时，所在的行属于上一段
+   */
+  private static List<String> parse(File file, long begin, long end) throws IOException {
+    final List<String> words = Lists.newArrayList();
+    final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      final FileChannel channel = raf.getChannel();
+      long position = begin == 0 ? 0 : begin - 1;
+      channel.position(position);
+      final InputStream in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+      if (begin > 0) {
+        //跳过属于上一段的行，begin - 1处是换行符时begin就是行首
+        int b;
+        while ((b = in.read()) != -1) {
+          position++;
+          if (b == LINE_FEED) {
+            break;
+          }
+        }
+      }
+      byte[] line = new byte[256];
+      while (position < end) {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+          position++;
+          if (b == LINE_FEED) {
+            break;
+          }
+          if (length == line.length) {
+            line = Arrays.copyOf(line, length * 2);
+          }
+          line[length++] = (byte) b;
+        }
+        final String word = FSTFactory.normalize(decoder.decode(ByteBuffer.wrap(line, 0, length)).toString());
+        if (word != null) {
+          words.add(word);
+        }
+        if (b == -1) {
+          break;
+        }
+      }
+    }
+    return words;
+  }
+
+  private static List<String> parse(DictionarySource dictionary) throws IOException {
+    final List<String> words = Lists.newArrayList();
+    try (BufferedReader in = dictionary.openReader()) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        final String word = FSTFactory.normalize(line);
+        if (word != null) {
+          words.add(word);
+        }
+      }
+    }
+    return words;
+  }
+
+  private static String[] sortedUnique(List<String> words) {
+    final String[] array = words.toArray(new String[words.size()]);
+    Arrays.sort(array, CODE_POINT_ORDER);
+    int size = 0;
+    for (int i = 0; i < array.length; i++) {
+      if (size == 0 || !array[i].equals(array[size - 1])) {
+        array[size++] = array[i];
+      }
+    }
+    return size == array.length ? array : Arrays.copyOf(array, size);
+  }
+
+  /**
+   * 归并两个排好序且不重复的分片，结果也不重复
+   */
+  private static String[] merge(String[] left, String[] right) {
+    final String[] merged = new String[left.length + right.length];
+    int i = 0;
+    int j = 0;
+    int size = 0;
+    while (i < left.length && j < right.length) {
+      final int cmp = CODE_POINT_ORDER.compare(left[i], right[j]);
+      if (cmp < 0) {
+        merged[size++] = left[i++];
+      } else if (cmp > 0) {
+        merged[size++] = right[j++];
+      } else {
+        merged[size++] = left[i++];
+        j++;
+      }
+    }
+    while (i < left.length) {
+      merged[size++] = left[i++];
+    }
+    while (j < right.length) {
+      merged[size++] = right[j++];
+    }
+    return size == merged.length ? merged : Arrays.copyOf(merged, size);
+  }
+
+  private static <T> T get(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while building dictionary", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private static List<MemoryPoolMXBean> heapPools() {
+    final List<MemoryPoolMXBean> pools = Lists.newArrayList();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pools.add(pool);
+      }
+    }
+    return pools;
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  /**
+   * 创建的结果
+   */
+  public static final class Result {
+    private final FST<CharsRef> fst;
+    private final Stats stats;
+
+    private Result(FST<CharsRef> fst, Stats stats) {
+      this.fst = fst;
+      this.stats = stats;
+    }
+
+    /**
+     * @return 创建的FST，没有词条时为null
+     */
+    public FST<CharsRef> fst() {
+      return fst;
+    }
+
+    public Stats stats() {
+      return stats;
+    }
+  }
+
+  /**
+   * 创建过程的统计
+   */
+  public static final class Stats {
+    private final int files;
+    private final int shards;
+    private final int words;
+    private final long parseMillis;
+    private final long mergeMillis;
+    private final long buildMillis;
+    private final long totalMillis;
+    private final long peakHeapBytes;
+
+    private Stats(int files, int shards, int words, long parseMillis, long mergeMillis, long buildMillis,
+                  long totalMillis, long peakHeapBytes) {
+      this.files = files;
+      this.shards = shards;
+      this.words = words;
+      this.parseMillis = parseMillis;
+      this.mergeMillis = mergeMillis;
+      this.buildMillis = buildMillis;
+      this.totalMillis = totalMillis;
+      this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public int getFiles() {
+      return files;
+    }
+
+    /**
+     * @return 文件切分后并行解析的段数
+     */
+    public int getShards() {
+      return shards;
+    }
+
+    /**
+     * @return 去重后的词条数
+     */
+    public int getWords() {
+      return words;
+    }
+
+    public long getParseMillis() {
+      return parseMillis;
+    }
+
+    public long getMergeMillis() {
+      return mergeMillis;
+    }
+
+    /**
+     * @return 将词条加入FST的Builder的耗时
+     */
+    public long getBuildMillis() {
+      return buildMillis;
+    }
+
+    public long getTotalMillis() {
+      return totalMillis;
+    }
+
+    /**
+     * @return 创建过程中所有堆内存池的使用峰值之和，没有开启统计时为-1
+     * @see ParallelFSTBuilder#setMeasurePeakHeap(boolean)
+     */
+    public long getPeakHeapBytes() {
+      return peakHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "files=" + files + ", shards=" + shards + ", words=" + words
+              + ", parse=" + parseMillis + "ms, merge=" + mergeMillis + "ms, build=" + buildMillis
+              + "ms, total=" + totalMillis + "ms" + (peakHeapBytes < 0 ? "" : ", peakHeap=" + (peakHeapBytes >> 20) + "MB");
+    }
+  }
+}
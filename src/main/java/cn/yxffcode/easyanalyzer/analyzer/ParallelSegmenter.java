@@ -0,0 +1,389 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.collection.ImmutableIterator;
+import cn.yxffcode.easyanalyzer.io.IOReaderException;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.lucene.analysis.Analyzer;
+
+import javax.validation.constraints.NotNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 多线程切分大量的文档，所有线程共享同一个分词器（及其词典），用于词典变化后重新切分整个语料这类离线任务.
+ * <p/>
+ * 每次切分提交并行度个工作任务，每个任务从输入中按批取文档，通过{@link Segmenter}切分后放入结果队列。
+ * 工作任务在整个切分过程中运行在同一个线程上，分词器为每个线程复用一个tokenizer，因此每个工作任务只有一个tokenizer。
+ * 还没有被读取的批次不超过{@link #create(Analyzer, ExecutorService, int, int, int) maxPendingBatches}，
+ * 结果读取得慢时工作任务会等待，不会读完整个输入.
+ * <p/>
+ * 默认使用{@link ForkJoinPool}，也可以传入其它线程池，如JDK 21的{@code Executors.newVirtualThreadPerTaskExecutor()}
+ *
+ * @author gaohang on 15/12/25.
+ */
+public final class ParallelSegmenter implements Closeable {
+
+  private static final int DEFAULT_BATCH_SIZE = 256;
+  /**
+   * 每个工作任务平均可以积压的批次
+   */
+  private static final int PENDING_BATCHES_PER_WORKER = 4;
+
+  private final Segmenter segmenter;
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final int batchSize;
+  private final int maxPendingBatches;
+  /**
+   * 是否是自己创建的线程池，在{@link #close()}时关闭
+   */
+  private final boolean ownExecutor;
+
+  private ParallelSegmenter(Segmenter segmenter, ExecutorService executor, int parallelism, int batchSize,
+                            int maxPendingBatches, boolean ownExecutor) {
+    this.segmenter = segmenter;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+    this.maxPendingBatches = maxPendingBatches;
+    this.ownExecutor = ownExecutor;
+  }
+
+  /**
+   * 使用CPU核数个线程
+   */
+  public static ParallelSegmenter create(@NotNull Analyzer analyzer) {
+    return create(analyzer, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param threads 线程数，创建自己的{@link ForkJoinPool}，在{@link #close()}时关闭
+   */
+  public static ParallelSegmenter create(@NotNull Analyzer analyzer, int threads) {
+    checkNotNull(analyzer);
+    checkArgument(threads > 0, "threads must be positive");
+    return new ParallelSegmenter(Segmenter.create(analyzer), new ForkJoinPool(threads), threads,
+            DEFAULT_BATCH_SIZE, threads * PENDING_BATCHES_PER_WORKER, true);
+  }
+
+  /**
+   * @param executor          执行工作任务的线程池，不会被关闭，至少要能同时运行parallelism个任务
+   * @param parallelism       每次切分的工作任务数
+   * @param batchSize         每个工作任务一次从输入中取的文档数
+   * @param maxPendingBatches 已经开始切分但还没有被读取的批次的上限
+   */
+  public static ParallelSegmenter create(@NotNull Analyzer analyzer, @NotNull ExecutorService executor,
+                                         int parallelism, int batchSize, int maxPendingBatches) {
+    checkNotNull(analyzer);
+    checkNotNull(executor);
+    checkArgument(parallelism > 0, "parallelism must be positive");
+    checkArgument(batchSize > 0, "batchSize must be positive");
+    checkArgument(maxPendingBatches >= parallelism, "maxPendingBatches must not be less than parallelism");
+    return new ParallelSegmenter(Segmenter.create(analyzer), executor, parallelism, batchSize,
+            maxPendingBatches, false);
+  }
+
+  /**
+   * @see #segment(Iterator, boolean)
+   */
+  public Results segment(@NotNull Iterable<? extends CharSequence> documents, boolean ordered) {
+    checkNotNull(documents);
+    return segment(documents.iterator(), ordered);
+  }
+
+  /**
+   * 开始切分并立即返回，结果按批次读取，读取完成或不再需要时关闭返回的结果
+   *
+   * @param documents 需要切分的文档，由工作任务加锁后读取，只遍历一次
+   * @param ordered   是否按输入的顺序返回批次，为false时先切分完的批次先返回
+   */
+  public Results segment(@NotNull Iterator<? extends CharSequence> documents, boolean ordered) {
+    checkNotNull(documents);
+    final Results results = new Results(documents, ordered);
+    for (int i = 0; i < parallelism; i++) {
+      executor.execute(results.new Worker());
+    }
+    return results;
+  }
+
+  /**
+   * 切分所有文档，按输入的顺序合并成一个结果，不计算词条的序号
+   */
+  public Segmentation segmentAll(@NotNull Iterable<? extends CharSequence> documents) throws IOException {
+    int[] documentBounds = new int[]{0};
+    int[] startOffsets = new int[0];
+    int[] endOffsets = new int[0];
+    int documentCount = 0;
+    int tokenCount = 0;
+    try (Results results = segment(documents, true)) {
+      while (results.hasNext()) {
+        final Segmentation segmentation = results.next().segmentation();
+        final int batchDocuments = segmentation.documentCount();
+        final int tokens = segmentation.tokenCount();
+        if (documentCount + batchDocuments + 1 > documentBounds.length) {
+          documentBounds = Arrays.copyOf(documentBounds, Math.max(documentBounds.length * 2,
+                  documentCount + batchDocuments + 1));
+        }
+        for (int i = 1; i <= batchDocuments; i++) {
+          documentBounds[documentCount + i] = tokenCount + segmentation.documentBounds()[i];
+        }
+        if (tokenCount + tokens > startOffsets.length) {
+          final int capacity = Math.max(startOffsets.length * 2, tokenCount + tokens);
+          startOffsets = Arrays.copyOf(startOffsets, capacity);
+          endOffsets = Arrays.copyOf(endOffsets, capacity);
+        }
+        System.arraycopy(segmentation.startOffsets(), 0, startOffsets, tokenCount, tokens);
+        System.arraycopy(segmentation.endOffsets(), 0, endOffsets, tokenCount, tokens);
+        documentCount += batchDocuments;
+        tokenCount += tokens;
+      }
+    } catch (IOReaderException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw e;
+    }
+    return new Segmentation(Arrays.copyOf(documentBounds, documentCount + 1),
+            Arrays.copyOf(startOffsets, tokenCount), Arrays.copyOf(endOffsets, tokenCount), null, -1);
+  }
+
+  /**
+   * 关闭自己创建的线程池，传入的线程池不会被关闭
+   */
+  @Override
+  public void close() {
+    if (ownExecutor) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * 一批文档的切分结果
+   */
+  public static final class Batch {
+    private final int sequence;
+    private final int firstDocument;
+    private final Segmentation segmentation;
+
+    private Batch(int sequence, int firstDocument, Segmentation segmentation) {
+      this.sequence = sequence;
+      this.firstDocument = firstDocument;
+      this.segmentation = segmentation;
+    }
+
+    /**
+     * @return 批次中第一个文档在输入中的下标，批次中的第i个文档在输入中的下标为firstDocument() + i
+     */
+    public int firstDocument() {
+      return firstDocument;
+    }
+
+    /**
+     * @return 批次中所有文档的切分结果，不包含词条的序号
+     */
+    public Segmentation segmentation() {
+      return segmentation;
+    }
+  }
+
+  /**
+   * 一次切分的结果，按批次遍历，不是线程安全的.
+   * <p/>
+   * 工作任务切分失败时，{@link #hasNext()}和{@link #next()}抛出以失败原因为cause的{@link IOReaderException}
+   */
+  public final class Results extends ImmutableIterator<Batch> implements Closeable {
+
+    /**
+     * 所有的工作任务都结束后放入结果队列
+     */
+    private final Batch end = new Batch(-1, -1, null);
+
+    private final Iterator<? extends CharSequence> documents;
+    private final boolean ordered;
+    /**
+     * 读取输入时加锁，不使用synchronized，避免虚拟线程在等待时占用载体线程
+     */
+    private final Lock inputLock = new ReentrantLock();
+    private int nextSequence;
+    private int nextDocument;
+    private boolean exhausted;
+
+    /**
+     * 工作任务取一批文档之前获取一个许可，批次被读取后释放
+     */
+    private final Semaphore pendingBatches = new Semaphore(maxPendingBatches);
+    private final BlockingQueue<Batch> finished = new LinkedBlockingQueue<>();
+    private final AtomicInteger runningWorkers = new AtomicInteger(parallelism);
+    private volatile boolean cancelled;
+    private volatile Throwable failure;
+
+    /**
+     * 按顺序返回时，先于前面的批次完成的批次
+     */
+    private final Map<Integer, Batch> outOfOrder = Maps.newHashMap();
+    private int expectedSequence;
+    private Batch next;
+    private boolean ended;
+
+    private Results(Iterator<? extends CharSequence> documents, boolean ordered) {
+      this.documents = documents;
+      this.ordered = ordered;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null && !ended) {
+        next = ordered ? takeInOrder() : take();
+      }
+      if (failure != null) {
+        throw new IOReaderException(failure);
+      }
+      return next != null;
+    }
+
+    @Override
+    public Batch next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final Batch batch = next;
+      next = null;
+      pendingBatches.release();
+      return batch;
+    }
+
+    private Batch takeInOrder() {
+      while (true) {
+        final Batch batch = outOfOrder.remove(expectedSequence);
+        if (batch != null) {
+          expectedSequence++;
+          return batch;
+        }
+        final Batch taken = take();
+        if (taken == null) {
+          return null;
+        }
+        outOfOrder.put(taken.sequence, taken);
+      }
+    }
+
+    /**
+     * @return 下一个完成的批次，所有的工作任务都结束后为null
+     */
+    private Batch take() {
+      if (ended) {
+        return null;
+      }
+      final Batch batch;
+      try {
+        batch = finished.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        throw new IOReaderException(e);
+      }
+      if (batch == end) {
+        ended = true;
+        return null;
+      }
+      return batch;
+    }
+
+    /**
+     * 停止切分，正在切分的批次完成后工作任务结束，没有读取的输入不再读取
+     */
+    @Override
+    public void close() {
+      cancel();
+    }
+
+    private void cancel() {
+      cancelled = true;
+      //唤醒等待许可的工作任务
+      pendingBatches.release(parallelism);
+    }
+
+    /**
+     * 需要持有{@link #inputLock}
+     *
+     * @return 下一批文档，输入已经读完或切分已经取消时为null
+     */
+    private List<CharSequence> nextBatch() {
+      if (exhausted || cancelled) {
+        return null;
+      }
+      final List<CharSequence> batch = Lists.newArrayListWithCapacity(batchSize);
+      while (batch.size() < batchSize && documents.hasNext()) {
+        batch.add(documents.next());
+      }
+      if (!documents.hasNext()) {
+        exhausted = true;
+      }
+      return batch.isEmpty() ? null : batch;
+    }
+
+    /**
+     * 工作任务，循环取一批文档并切分，直到输入读完、切分取消或失败
+     */
+    private final class Worker implements Runnable {
+      @Override
+      public void run() {
+        try {
+          while (!cancelled) {
+            pendingBatches.acquire();
+            final int sequence;
+            final int firstDocument;
+            final List<CharSequence> batch;
+            inputLock.lock();
+            try {
+              batch = nextBatch();
+              if (batch == null) {
+                break;
+              }
+              sequence = nextSequence++;
+              firstDocument = nextDocument;
+              nextDocument += batch.size();
+            } finally {
+              inputLock.unlock();
+            }
+            finished.add(new Batch(sequence, firstDocument, segmenter.segment(batch)));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          fail(e);
+        } catch (IOException | RuntimeException | Error e) {
+          fail(e);
+        } finally {
+          if (runningWorkers.decrementAndGet() == 0) {
+            finished.add(end);
+          }
+        }
+      }
+
+      private void fail(Throwable e) {
+        if (failure == null) {
+          failure = e;
+        }
+        cancel();
+      }
+    }
+  }
+}
@@ -3,6 +3,7 @@ package cn.yxffcode.easyanalyzer.analyzer;
 import cn.yxffcode.easyanalyzer.collection.IntStack;
 import cn.yxffcode.easyanalyzer.lang.IntArrayStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.fst.FST;
 
@@ -19,11 +20,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class PrefixWordFSTAnalyzer extends Analyzer {
 
-  private final FST<CharsRef> fst;
+  private final Dictionary dictionary;
   private final boolean outputPrefix;
+  private final TokenizerMetrics metrics = new TokenizerMetrics();
+  private final TokenLengthLimit maxTokenLength = new TokenLengthLimit();
 
-  private PrefixWordFSTAnalyzer(FST<CharsRef> fst, boolean outputPrefix) {
-    this.fst = fst;
+  private PrefixWordFSTAnalyzer(Dictionary dictionary, boolean outputPrefix) {
+    this.dictionary = dictionary;
     this.outputPrefix = outputPrefix;
   }
 
@@ -46,7 +49,7 @@ public class PrefixWordFSTAnalyzer extends Analyzer {
    */
   public static PrefixWordFSTAnalyzer create(FST<CharsRef> fst, boolean outputPrefix) {
     checkNotNull(fst);
-    return new PrefixWordFSTAnalyzer(fst, outputPrefix);
+    return new PrefixWordFSTAnalyzer(Dictionary.of(fst), outputPrefix);
   }
 
   /**
@@ -74,6 +77,30 @@ public class PrefixWordFSTAnalyzer extends Analyzer {
     return create(FSTFactory.create(dictionaries), outputPrefix);
   }
 
+  /**
+   * 通过编译后的二进制词典创建分词器，启动时不需要排序词条和创建FST
+   *
+   * @param compiledDictionary 由{@link FSTFactory#save(FST, File)}保存的词典文件
+   * @param outputPrefix       如果输入不能完全匹配，只匹配了一部分，是否将匹配的一部分输出
+   */
+  public static PrefixWordFSTAnalyzer create(@NotNull File compiledDictionary,
+                                             boolean outputPrefix) throws IOException {
+    return create(FSTFactory.load(compiledDictionary), outputPrefix);
+  }
+
+  /**
+   * 通过任意的词典实现创建分词器，如{@link FSTDictionary#create(FST, long)}展开了直接寻址表的词典、
+   * {@link FSTFactory#map(File, boolean)}内存映射的词典、{@link DoubleArrayTrie}、
+   * 可替换的{@link ReloadableDictionary}和叠加了增量修改的{@link OverlayDictionary}
+   *
+   * @param dictionary   词典，可以在多个分词器之间共享
+   * @param outputPrefix 如果输入不能完全匹配，只匹配了一部分，是否将匹配的一部分输出
+   */
+  public static PrefixWordFSTAnalyzer create(@NotNull Dictionary dictionary, boolean outputPrefix) {
+    checkNotNull(dictionary);
+    return new PrefixWordFSTAnalyzer(dictionary, outputPrefix);
+  }
+
   /**
    * 指定词条创建分词器
    *
@@ -86,9 +113,42 @@ public class PrefixWordFSTAnalyzer extends Analyzer {
     return create(FSTFactory.create(sortedWords), outputPrefix);
   }
 
+  /**
+   * 分词统计，默认关闭，通过{@link TokenizerMetrics#setEnabled(boolean)}开启，
+   * 通过{@link TokenizerMetrics#register(String)}注册到JMX
+   */
+  public TokenizerMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * 限制词条的长度，词典外连续的英文字母、数字超出时按此长度切开，分词器占用的内存不再随输入的长度增长，
+   * 适合分词没有边界的输入（如日志流）。对之后开始分词的输入有效
+   *
+   * @param maxTokenLength 词条最多的码点数
+   */
+  public void setMaxTokenLength(int maxTokenLength) {
+    this.maxTokenLength.set(maxTokenLength);
+  }
+
+  public int getMaxTokenLength() {
+    return maxTokenLength.get();
+  }
+
+  /**
+   * 对内存中的输入分词，分词器直接按位置读取输入，不经过Reader和缓冲区。
+   * {@link #tokenStream(String, String)}包装字符串使用的Reader不是公开的类，只能按普通的Reader读取
+   *
+   * @param text 分词结束之前不能修改
+   */
+  public final TokenStream directTokenStream(String fieldName, CharSequence text) throws IOException {
+    return DirectComponents.tokenStream(this, fieldName, text);
+  }
+
   @Override
   protected TokenStreamComponents createComponents(String fieldName) {
-    return new TokenStreamComponents(new FSTTokenizer(fst, outputPrefix));
+    final FSTTokenizer tokenizer = new FSTTokenizer(dictionary, outputPrefix, metrics);
+    return new LimitedComponents(tokenizer, maxTokenLength);
   }
 
   static class FSTTokenizer extends BaseTokenizer {
@@ -97,22 +157,24 @@ public class PrefixWordFSTAnalyzer extends Analyzer {
     protected IntStack words;
     private IntArrayStringBuilder appender;
 
-    FSTTokenizer(FST<CharsRef> fst,
-                 boolean outputPrefix) {
-      super(fst);
+    FSTTokenizer(Dictionary dictionary,
+                 boolean outputPrefix,
+                 TokenizerMetrics metrics) {
+      super(dictionary, metrics);
       this.words = new IntStack();
       this.outputPrefix = outputPrefix;
     }
 
     @Override
-    protected String nextWorld() throws IOException {
+    protected boolean nextWord() throws IOException {
       while (words.isEmpty() && state != TokenState.FINISHED) {
         doToken();
       }
       if (words.isEmpty()) {
-        return null;
+        return false;
       }
-      return appender.toString(0, words.poll());
+      emit(words.poll());
+      return true;
     }
 
     @Override
@@ -136,22 +198,16 @@ public class PrefixWordFSTAnalyzer extends Analyzer {
     @Override
     protected void onUnmatched(IntArrayStringBuilder appender) {
       if (!words.isEmpty()) {
-        pushBack(appender, words.peak());
+        pushBack(words.peak());
         return;
       } else {
-        pushBack(appender, 1);
+        pushBack(1);
       }
       if (outputPrefix) {
         onWordMatched(appender);
       }
     }
 
-    protected void pushBack(final IntArrayStringBuilder appender, final int begin) {
-      for (int i = appender.length() - 1; i >= begin; --i) {
-        bufStack.push(appender.element(i));
-      }
-    }
-
     private void capture(IntArrayStringBuilder appender) {
       if (this.appender == null || this.appender != appender) {
         this.appender = appender;
@@ -2,6 +2,7 @@ package cn.yxffcode.easyanalyzer.analyzer;
 
 import cn.yxffcode.easyanalyzer.lang.IntArrayStringBuilder;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.util.CharsRef;
 import org.apache.lucene.util.fst.FST;
 
@@ -21,12 +22,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class PrefixWordFirstAnalyzer extends Analyzer {
 
-  private final FST<CharsRef> fst;
+  private final Dictionary dictionary;
   private final boolean outputPrefix;
+  private final TokenizerMetrics metrics = new TokenizerMetrics();
+  private final TokenLengthLimit maxTokenLength = new TokenLengthLimit();
 
-  private PrefixWordFirstAnalyzer(FST<CharsRef> fst,
+  private PrefixWordFirstAnalyzer(Dictionary dictionary,
                                   boolean outputPrefix) {
-    this.fst = fst;
+    this.dictionary = dictionary;
     this.outputPrefix = outputPrefix;
   }
 
@@ -51,7 +54,7 @@ public class PrefixWordFirstAnalyzer extends Analyzer {
   public static PrefixWordFirstAnalyzer create(FST<CharsRef> fst,
                                                boolean outputPrefix) {
     checkNotNull(fst);
-    return new PrefixWordFirstAnalyzer(fst, outputPrefix);
+    return new PrefixWordFirstAnalyzer(Dictionary.of(fst), outputPrefix);
   }
 
   /**
@@ -80,6 +83,30 @@ public class PrefixWordFirstAnalyzer extends Analyzer {
     return create(FSTFactory.create(dictionaries), outputPrefix);
   }
 
+  /**
+   * 通过编译后的二进制词典创建分词器，启动时不需要排序词条和创建FST
+   *
+   * @param compiledDictionary 由{@link FSTFactory#save(FST, File)}保存的词典文件
+   * @param outputPrefix       如果输入不能完全匹配，只匹配了一部分，是否将匹配的一部分输出
+   */
+  public static PrefixWordFirstAnalyzer create(@NotNull File compiledDictionary,
+                                               boolean outputPrefix) throws IOException {
+    return create(FSTFactory.load(compiledDictionary), outputPrefix);
+  }
+
+  /**
+   * 通过任意的词典实现创建分词器，如{@link FSTDictionary#create(FST, long)}展开了直接寻址表的词典、
+   * {@link FSTFactory#map(File, boolean)}内存映射的词典、{@link DoubleArrayTrie}、
+   * 可替换的{@link ReloadableDictionary}和叠加了增量修改的{@link OverlayDictionary}
+   *
+   * @param dictionary   词典，可以在多个分词器之间共享
+   * @param outputPrefix 如果输入不能完全匹配，只匹配了一部分，是否将匹配的一部分输出
+   */
+  public static PrefixWordFirstAnalyzer create(@NotNull Dictionary dictionary, boolean outputPrefix) {
+    checkNotNull(dictionary);
+    return new PrefixWordFirstAnalyzer(dictionary, outputPrefix);
+  }
+
   /**
    * 指定词条创建分词器
    *
@@ -92,16 +119,50 @@ public class PrefixWordFirstAnalyzer extends Analyzer {
     return create(FSTFactory.create(sortedWords), outputPrefix);
   }
 
+  /**
+   * 分词统计，默认关闭，通过{@link TokenizerMetrics#setEnabled(boolean)}开启，
+   * 通过{@link TokenizerMetrics#register(String)}注册到JMX
+   */
+  public TokenizerMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * 限制词条的长度，词典外连续的英文字母、数字超出时按此长度切开，分词器占用的内存不再随输入的长度增长，
+   * 适合分词没有边界的输入（如日志流）。对之后开始分词的输入有效
+   *
+   * @param maxTokenLength 词条最多的码点数
+   */
+  public void setMaxTokenLength(int maxTokenLength) {
+    this.maxTokenLength.set(maxTokenLength);
+  }
+
+  public int getMaxTokenLength() {
+    return maxTokenLength.get();
+  }
+
+  /**
+   * 对内存中的输入分词，分词器直接按位置读取输入，不经过Reader和缓冲区。
+   * {@link #tokenStream(String, String)}包装字符串使用的Reader不是公开的类，只能按普通的Reader读取
+   *
+   * @param text 分词结束之前不能修改
+   */
+  public final TokenStream directTokenStream(String fieldName, CharSequence text) throws IOException {
+    return DirectComponents.tokenStream(this, fieldName, text);
+  }
+
   @Override
   protected TokenStreamComponents createComponents(final String fieldName) {
-    return new TokenStreamComponents(new FSTTokenizer(fst, outputPrefix));
+    final FSTTokenizer tokenizer = new FSTTokenizer(dictionary, outputPrefix, metrics);
+    return new LimitedComponents(tokenizer, maxTokenLength);
   }
 
   static final class FSTTokenizer extends PrefixWordFSTAnalyzer.FSTTokenizer {
 
-    FSTTokenizer(final FST<CharsRef> fst,
-                 final boolean outputPrefix) {
-      super(fst, outputPrefix);
+    FSTTokenizer(final Dictionary dictionary,
+                 final boolean outputPrefix,
+                 final TokenizerMetrics metrics) {
+      super(dictionary, outputPrefix, metrics);
     }
 
     @Override
@@ -110,10 +171,8 @@ public class PrefixWordFirstAnalyzer extends Analyzer {
         onWordMatched(appender);
         return;
       }
-      pushBack(appender, 1);
-      if (remains()) {
-        pushBack(appender, words.peak());
-      }
+      //有已匹配的前缀词时从前缀词之后继续匹配，否则从第二个字符开始重新匹配
+      pushBack(remains() ? words.peak() : 1);
     }
   }
 }
@@ -0,0 +1,318 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+
+import javax.validation.constraints.NotNull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * 可以在运行时替换的词典，分词器通过它读取词典，更新词典不需要重新创建分词器.
+ * <p/>
+ * 新的词典在后台线程中创建，创建完成后通过一次volatile写替换，分词过程中不需要加锁。
+ * 分词器只在{@link org.apache.lucene.analysis.Tokenizer#reset()}时取得最新的词典，
+ * 正在分词的输入仍然使用旧的词典完成.
+ * <p/>
+ * 通过{@link #create(File, boolean)}可以从目录加载词典并监视目录的变化：目录中有编译后的词典
+ * （以{@link FSTFactory#COMPILED_SUFFIX}结尾）时使用最近修改的一个，通过内存映射加载；
+ * 否则使用目录中所有的.dic文件创建FST。编译后的词典需要通过{@link FSTFactory#save(FST, File)}写入，
+ * 不能原地修改已经映射的文件
+ *
+ * @author gaohang on 15/12/15.
+ */
+public final class ReloadableDictionary extends Dictionary implements Closeable {
+
+  private static final String DICTIONARY_SUFFIX = ".dic";
+  /**
+   * 目录发生变化后等待的时间，一次复制多个文件时只重新加载一次
+   */
+  private static final long QUIET_PERIOD_MILLIS = 1000;
+
+  private volatile Dictionary current;
+  private volatile long version;
+  private volatile Throwable lastFailure;
+
+  /**
+   * 词典所在的目录，不从目录加载时为null
+   */
+  private final File directory;
+  private final AtomicBoolean reloadPending = new AtomicBoolean();
+  private ScheduledExecutorService executor;
+  private WatchService watchService;
+  private volatile boolean closed;
+
+  private ReloadableDictionary(Dictionary initial, File directory) {
+    this.current = initial;
+    this.directory = directory;
+  }
+
+  /**
+   * @param initial 初始的词典
+   */
+  public static ReloadableDictionary create(@NotNull FST<CharsRef> initial) {
+    return new ReloadableDictionary(Dictionary.of(initial), null);
+  }
+
+  /**
+   * @param initial 初始的词典
+   */
+  public static ReloadableDictionary create(@NotNull MappedFST initial) {
+    return new ReloadableDictionary(checkNotNull(initial), null);
+  }
+
+  /**
+   * @param initial 初始的词典，如带附加信息的{@link TaggedDictionary}，需要是不可变的
+   */
+  public static ReloadableDictionary create(@NotNull Dictionary initial) {
+    return new ReloadableDictionary(checkNotNull(initial).current(), null);
+  }
+
+  /**
+   * 从目录加载词典，只读取目录中的文件，不包括子目录
+   *
+   * @param directory 词典所在的目录
+   * @param watch     是否监视目录，目录中的词典发生变化时自动在后台重新加载
+   * @throws IOException 初始的词典加载失败
+   */
+  public static ReloadableDictionary create(@NotNull File directory, boolean watch) throws IOException {
+    checkNotNull(directory);
+    if (!directory.isDirectory()) {
+      throw new FileNotFoundException(directory.getPath());
+    }
+    final ReloadableDictionary dictionary = new ReloadableDictionary(load(directory), directory);
+    if (watch) {
+      dictionary.watch();
+    }
+    return dictionary;
+  }
+
+  /**
+   * 立即替换为新的词典
+   */
+  public void update(@NotNull FST<CharsRef> fst) {
+    swap(Dictionary.of(fst));
+  }
+
+  /**
+   * 立即替换为新的词典
+   */
+  public void update(@NotNull MappedFST mapped) {
+    swap(checkNotNull(mapped));
+  }
+
+  /**
+   * 立即替换为新的词典
+   *
+   * @param dictionary 不可变的词典，如带附加信息的{@link TaggedDictionary}
+   */
+  public void update(@NotNull Dictionary dictionary) {
+    swap(checkNotNull(dictionary).current());
+  }
+
+  /**
+   * 在后台线程中创建新的词典，创建完成后替换。创建失败时保持原来的词典不变，并记录到{@link #lastFailure()}
+   *
+   * @param builder 创建词典，在后台线程中执行
+   * @return 替换后的版本号
+   */
+  public Future<Long> reload(@NotNull final Callable<FST<CharsRef>> builder) {
+    checkNotNull(builder);
+    return executor().submit(new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        try {
+          return swap(Dictionary.of(builder.call()));
+        } catch (Exception e) {
+          lastFailure = e;
+          throw e;
+        }
+      }
+    });
+  }
+
+  /**
+   * 在后台线程中从目录重新加载词典，加载失败时保持原来的词典不变，并记录到{@link #lastFailure()}
+   *
+   * @return 替换后的版本号
+   * @throws IllegalStateException 不是从目录创建的词典
+   */
+  public Future<Long> reload() {
+    checkState(directory != null, "not loaded from a directory");
+    return executor().submit(new Callable<Long>() {
+      @Override
+      public Long call() throws Exception {
+        try {
+          return swap(load(directory));
+        } catch (Exception e) {
+          lastFailure = e;
+          throw e;
+        }
+      }
+    });
+  }
+
+  /**
+   * @return 词典被替换的次数，初始为0
+   */
+  public long version() {
+    return version;
+  }
+
+  /**
+   * @return 最近一次重新加载失败的异常，包括监视目录触发的重新加载，成功替换词典后清空
+   */
+  public Throwable lastFailure() {
+    return lastFailure;
+  }
+
+  /**
+   * 停止监视目录和后台线程，已经加载的词典仍然可以使用
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    if (watchService != null) {
+      watchService.close();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Override
+  public Matcher matcher() {
+    return current.matcher();
+  }
+
+  @Override
+  public Dictionary current() {
+    return current;
+  }
+
+  /**
+   * 由当前的词典解释，词典可能已被替换，分词器使用{@link #current()}取得的版本解释自己匹配到的附加信息
+   */
+  @Override
+  public String type(long metadata) {
+    return current.type(metadata);
+  }
+
+  @Override
+  public int flags(long metadata) {
+    return current.flags(metadata);
+  }
+
+  private synchronized long swap(Dictionary dictionary) {
+    current = dictionary;
+    lastFailure = null;
+    return ++version;
+  }
+
+  private synchronized ScheduledExecutorService executor() {
+    checkState(!closed, "closed");
+    if (executor == null) {
+      executor = Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("dictionary-reload-%d")
+              .build());
+    }
+    return executor;
+  }
+
+  private static Dictionary load(File directory) throws IOException {
+    final File[] compiled = list(directory, FSTFactory.COMPILED_SUFFIX);
+    if (compiled.length > 0) {
+      File latest = compiled[0];
+      for (File file : compiled) {
+        if (file.lastModified() > latest.lastModified()) {
+          latest = file;
+        }
+      }
+      return FSTFactory.map(latest, true);
+    }
+    return Dictionary.of(FSTFactory.create(Arrays.asList(list(directory, DICTIONARY_SUFFIX))));
+  }
+
+  private static File[] list(File directory, final String suffix) throws IOException {
+    final File[] files = directory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.endsWith(suffix) && new File(dir, name).isFile();
+      }
+    });
+    if (files == null) {
+      throw new IOException("can not list " + directory);
+    }
+    return files;
+  }
+
+  private synchronized void watch() throws IOException {
+    watchService = directory.toPath().getFileSystem().newWatchService();
+    directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    final Thread watcher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (!closed) {
+            final WatchKey key = watchService.take();
+            for (WatchEvent<?> event : key.pollEvents()) {
+              final String name = String.valueOf(event.context());
+              if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                      || name.endsWith(DICTIONARY_SUFFIX) || name.endsWith(FSTFactory.COMPILED_SUFFIX)) {
+                scheduleReload();
+              }
+            }
+            if (!key.reset()) {
+              return;
+            }
+          }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+          //关闭
+        }
+      }
+    }, "dictionary-watcher-" + directory.getName());
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  /**
+   * 合并短时间内的多次变化，只重新加载一次
+   */
+  private void scheduleReload() {
+    if (closed || !reloadPending.compareAndSet(false, true)) {
+      return;
+    }
+    executor().schedule(new Runnable() {
+      @Override
+      public void run() {
+        reloadPending.set(false);
+        try {
+          swap(load(directory));
+        } catch (Throwable e) {
+          lastFailure = e;
+        }
+      }
+    }, QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+  }
+}
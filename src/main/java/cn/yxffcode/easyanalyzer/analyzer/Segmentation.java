@@ -0,0 +1,108 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * {@link Segmenter}对一批文档的切分结果，所有文档的词条按顺序保存在扁平的int数组中.
+ * <p/>
+ * 第i个文档的词条为下标从{@link #begin(int) begin(i)}到{@link #end(int) end(i)}（不包含）的词条，
+ * 词条的起止位置是在文档中的char偏移
+ *
+ * @author gaohang on 15/12/24.
+ */
+public final class Segmentation {
+
+  private final int[] documentBounds;
+  private final int[] startOffsets;
+  private final int[] endOffsets;
+  private final int[] ordinals;
+  private final int termCount;
+
+  Segmentation(int[] documentBounds, int[] startOffsets, int[] endOffsets, int[] ordinals, int termCount) {
+    this.documentBounds = documentBounds;
+    this.startOffsets = startOffsets;
+    this.endOffsets = endOffsets;
+    this.ordinals = ordinals;
+    this.termCount = termCount;
+  }
+
+  public int documentCount() {
+    return documentBounds.length - 1;
+  }
+
+  /**
+   * @return 所有文档的词条总数
+   */
+  public int tokenCount() {
+    return documentBounds[documentBounds.length - 1];
+  }
+
+  /**
+   * @return 文档的第一个词条的下标
+   */
+  public int begin(int document) {
+    checkElementIndex(document, documentCount());
+    return documentBounds[document];
+  }
+
+  /**
+   * @return 文档的最后一个词条之后的下标
+   */
+  public int end(int document) {
+    checkElementIndex(document, documentCount());
+    return documentBounds[document + 1];
+  }
+
+  public int startOffset(int token) {
+    return startOffsets[token];
+  }
+
+  public int endOffset(int token) {
+    return endOffsets[token];
+  }
+
+  /**
+   * @return 词条的序号，同一批文档中文本相同（不计越过的换行符）的词条序号相同，按第一次出现的顺序从0开始编号
+   * @throws IllegalStateException 切分时没有要求计算序号
+   */
+  public int ordinal(int token) {
+    checkState(ordinals != null, "ordinals not computed");
+    return ordinals[token];
+  }
+
+  /**
+   * @return 不同的词条的个数，没有计算序号时为-1
+   */
+  public int termCount() {
+    return termCount;
+  }
+
+  /**
+   * @return 长度为文档数加1，第i个元素为第i个文档的第一个词条的下标，最后一个元素为词条总数。返回的是内部数组，不要修改
+   */
+  public int[] documentBounds() {
+    return documentBounds;
+  }
+
+  /**
+   * @return 所有词条的起始位置，长度为{@link #tokenCount()}。返回的是内部数组，不要修改
+   */
+  public int[] startOffsets() {
+    return startOffsets;
+  }
+
+  /**
+   * @return 所有词条的结束位置，长度为{@link #tokenCount()}。返回的是内部数组，不要修改
+   */
+  public int[] endOffsets() {
+    return endOffsets;
+  }
+
+  /**
+   * @return 所有词条的序号，没有计算序号时为null。返回的是内部数组，不要修改
+   */
+  public int[] ordinals() {
+    return ordinals;
+  }
+}
@@ -0,0 +1,251 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.io.CharSequenceReader;
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 批量切分大量的短文本，只计算词条的边界，结果保存在扁平的int数组中，适合只需要词条边界的离线任务.
+ * <p/>
+ * 与通过{@link Analyzer#tokenStream(String, java.io.Reader)}逐个读取属性相比，基于{@link BaseTokenizer}的分词器
+ * 不写入{@link org.apache.lucene.analysis.tokenattributes.CharTermAttribute}等属性，也不创建字符串；
+ * 其它分词器（如{@link MaxProbabilityAnalyzer}）只读取{@link OffsetAttribute}。
+ * 每个线程复用分词器自己的组件，可以在多个线程中同时使用
+ *
+ * @author gaohang on 15/12/24.
+ */
+public final class Segmenter {
+
+  private static final String DEFAULT_FIELD_NAME = "";
+
+  private final Analyzer analyzer;
+  private final String fieldName;
+
+  private Segmenter(Analyzer analyzer, String fieldName) {
+    this.analyzer = analyzer;
+    this.fieldName = fieldName;
+  }
+
+  public static Segmenter create(@NotNull Analyzer analyzer) {
+    return create(analyzer, DEFAULT_FIELD_NAME);
+  }
+
+  /**
+   * @param fieldName 传给{@link Analyzer#tokenStream(String, java.io.Reader)}的字段名
+   */
+  public static Segmenter create(@NotNull Analyzer analyzer, @NotNull String fieldName) {
+    checkNotNull(analyzer);
+    checkNotNull(fieldName);
+    return new Segmenter(analyzer, fieldName);
+  }
+
+  /**
+   * @see #segment(Iterable, boolean)
+   */
+  public Segmentation segment(@NotNull Iterable<? extends CharSequence> documents) throws IOException {
+    return segment(documents, false);
+  }
+
+  /**
+   * @param documents 需要切分的文档，只遍历一次
+   * @param ordinals  是否为词条计算序号，计算序号时需要保留对文档的引用直到切分结束
+   */
+  public Segmentation segment(@NotNull Iterable<? extends CharSequence> documents, boolean ordinals)
+          throws IOException {
+    checkNotNull(documents);
+    final CharSequenceReader reader = new CharSequenceReader();
+    final Collector collector = new Collector(ordinals);
+    for (CharSequence document : documents) {
+      reader.reset(document);
+      collector.startDocument(document);
+      try (TokenStream stream = analyzer.tokenStream(fieldName, reader)) {
+        stream.reset();
+        if (stream instanceof BaseTokenizer) {
+          final BaseTokenizer tokenizer = (BaseTokenizer) stream;
+          tokenizer.setBoundariesOnly(true);
+          while (tokenizer.nextBoundary()) {
+            collector.add(tokenizer.tokenStart(), tokenizer.tokenEnd());
+          }
+        } else {
+          final OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+          while (stream.incrementToken()) {
+            collector.add(offsetAtt.startOffset(), offsetAtt.endOffset());
+          }
+        }
+        stream.end();
+      }
+    }
+    return collector.finish();
+  }
+
+  /**
+   * 收集一批文档的词条边界，需要时通过开放寻址的散列表直接在文档的字符上为词条编号
+   */
+  private static final class Collector {
+    private static final int EMPTY = -1;
+
+    private int[] documentBounds = new int[64];
+    private int documentCount;
+    private int[] startOffsets = new int[256];
+    private int[] endOffsets = new int[256];
+    private int tokenCount;
+
+    private final boolean computeOrdinals;
+    private int[] ordinals;
+    private final List<CharSequence> documents;
+    /**
+     * 散列表，元素为词条的序号；每个序号对应的词条第一次出现的文档和位置
+     */
+    private int[] table;
+    private int[] termDocuments;
+    private int[] termStarts;
+    private int[] termEnds;
+    private int[] termHashes;
+    private int termCount;
+    private CharSequence document;
+
+    private Collector(boolean computeOrdinals) {
+      this.computeOrdinals = computeOrdinals;
+      if (computeOrdinals) {
+        ordinals = new int[256];
+        documents = Lists.newArrayList();
+        table = new int[256];
+        Arrays.fill(table, EMPTY);
+        termDocuments = new int[128];
+        termStarts = new int[128];
+        termEnds = new int[128];
+        termHashes = new int[128];
+      } else {
+        documents = null;
+      }
+    }
+
+    private void startDocument(CharSequence document) {
+      if (documentCount + 1 == documentBounds.length) {
+        documentBounds = Arrays.copyOf(documentBounds, documentBounds.length * 2);
+      }
+      documentBounds[documentCount++] = tokenCount;
+      this.document = document;
+      if (computeOrdinals) {
+        documents.add(document);
+      }
+    }
+
+    private void add(int start, int end) {
+      if (tokenCount == startOffsets.length) {
+        startOffsets = Arrays.copyOf(startOffsets, tokenCount * 2);
+        endOffsets = Arrays.copyOf(endOffsets, tokenCount * 2);
+        if (computeOrdinals) {
+          ordinals = Arrays.copyOf(ordinals, tokenCount * 2);
+        }
+      }
+      startOffsets[tokenCount] = start;
+      endOffsets[tokenCount] = end;
+      if (computeOrdinals) {
+        ordinals[tokenCount] = ordinal(start, end);
+      }
+      tokenCount++;
+    }
+
+    /**
+     * 词条可以越过换行符，换行符不计入词条，越过换行符的词条与不含换行符的同一个词条序号相同
+     */
+    private int ordinal(int start, int end) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        final char c = document.charAt(i);
+        if (!isLineDelimiter(c)) {
+          hash = 31 * hash + c;
+        }
+      }
+      final int mask = table.length - 1;
+      int slot = mix(hash) & mask;
+      while (table[slot] != EMPTY) {
+        final int term = table[slot];
+        if (termHashes[term] == hash && sameTerm(term, start, end)) {
+          return term;
+        }
+        slot = (slot + 1) & mask;
+      }
+      if (termCount == termStarts.length) {
+        termDocuments = Arrays.copyOf(termDocuments, termCount * 2);
+        termStarts = Arrays.copyOf(termStarts, termCount * 2);
+        termEnds = Arrays.copyOf(termEnds, termCount * 2);
+        termHashes = Arrays.copyOf(termHashes, termCount * 2);
+      }
+      termDocuments[termCount] = documentCount - 1;
+      termStarts[termCount] = start;
+      termEnds[termCount] = end;
+      termHashes[termCount] = hash;
+      table[slot] = termCount;
+      if (++termCount * 2 > table.length) {
+        rehash();
+      }
+      return termCount - 1;
+    }
+
+    private boolean sameTerm(int term, int start, int end) {
+      final CharSequence other = documents.get(termDocuments[term]);
+      final int otherEnd = termEnds[term];
+      int i = termStarts[term];
+      int j = start;
+      while (true) {
+        i = skipLineDelimiters(other, i, otherEnd);
+        j = skipLineDelimiters(document, j, end);
+        if (i == otherEnd || j == end) {
+          return i == otherEnd && j == end;
+        }
+        if (other.charAt(i++) != document.charAt(j++)) {
+          return false;
+        }
+      }
+    }
+
+    private static int skipLineDelimiters(CharSequence text, int from, int end) {
+      while (from < end && isLineDelimiter(text.charAt(from))) {
+        from++;
+      }
+      return from;
+    }
+
+    private static boolean isLineDelimiter(char c) {
+      return c == '\n' || c == '\r';
+    }
+
+    private void rehash() {
+      final int[] rehashed = new int[table.length * 2];
+      Arrays.fill(rehashed, EMPTY);
+      final int mask = rehashed.length - 1;
+      for (int term = 0; term < termCount; term++) {
+        int slot = mix(termHashes[term]) & mask;
+        while (rehashed[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        rehashed[slot] = term;
+      }
+      table = rehashed;
+    }
+
+    private static int mix(int hash) {
+      hash *= 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+    }
+
+    private Segmentation finish() {
+      documentBounds[documentCount] = tokenCount;
+      return new Segmentation(Arrays.copyOf(documentBounds, documentCount + 1),
+              Arrays.copyOf(startOffsets, tokenCount), Arrays.copyOf(endOffsets, tokenCount),
+              computeOrdinals ? Arrays.copyOf(ordinals, tokenCount) : null,
+              computeOrdinals ? termCount : -1);
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.io.IOReaderException;
+import cn.yxffcode.easyanalyzer.io.IOStreams;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import javax.validation.constraints.NotNull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 带附加信息（类型和标记）的词典，附加信息打包成一个long作为FST的输出保存，匹配词条的同时取得，
+ * 分词器将类型写入{@link TypeAttribute}，标记写入{@link FlagsAttribute}，不需要再在后面的过滤器中查一次表.
+ * <p/>
+ * 词典文件中一行为一个词条，格式为“词条 类型 标记1,标记2”，以空白字符分隔，类型和标记都可以省略，
+ * 类型为“-”时表示没有类型，输出{@link TypeAttribute#DEFAULT_TYPE}。同一个词条出现多次时以最后一次为准.
+ * <p/>
+ * 附加信息的高32位为类型的编号，低32位为标记，每个不同的标记占一位，最多{@link #MAX_FLAGS}个，
+ * 通过{@link #flag(String)}取得标记对应的位
+ *
+ * @author gaohang on 15/12/23.
+ */
+public final class TaggedDictionary extends Dictionary {
+
+  /**
+   * 标记的最大个数，与{@link FlagsAttribute}的位数相同
+   */
+  public static final int MAX_FLAGS = Integer.SIZE;
+  private static final String NO_TYPE = "-";
+  private static final Splitter COLUMN_SPLITTER = Splitter.onPattern("\\s+").omitEmptyStrings();
+  private static final Splitter FLAG_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private final FST<Long> fst;
+  /**
+   * 类型的名称，下标为类型的编号，编号0为{@link TypeAttribute#DEFAULT_TYPE}
+   */
+  private final String[] types;
+  /**
+   * 标记的名称，下标为标记所在的位
+   */
+  private final String[] flags;
+
+  private TaggedDictionary(FST<Long> fst, String[] types, String[] flags) {
+    this.fst = fst;
+    this.types = types;
+    this.flags = flags;
+  }
+
+  /**
+   * 使用{@link Thread#getContextClassLoader()}加载类路径下的词典文件
+   *
+   * @param classpath 词典文件的类路径，支持目录
+   */
+  public static TaggedDictionary create(String classpath) throws IOException {
+    return create(classpath, Thread.currentThread().getContextClassLoader());
+  }
+
+  /**
+   * @param classpath   词典文件的类路径，支持目录和jar包中的目录，以.dic.gz结尾的词典按gzip解压
+   * @param classLoader 用于加载词典文件的类加载器
+   */
+  public static TaggedDictionary create(String classpath, ClassLoader classLoader) throws IOException {
+    final Entries entries = new Entries();
+    for (DictionarySource source : DictionarySource.resolve(classpath, classLoader)) {
+      try (BufferedReader in = source.openReader()) {
+        entries.read(in, source.toString());
+      }
+    }
+    return entries.build();
+  }
+
+  /**
+   * @param dictionaries 词典文件列表，按UTF-8读取
+   */
+  public static TaggedDictionary create(@NotNull Iterable<File> dictionaries) throws IOException {
+    checkNotNull(dictionaries);
+    final Entries entries = new Entries();
+    for (File dictionary : dictionaries) {
+      try (BufferedReader in = DictionarySource.of(dictionary).openReader()) {
+        entries.read(in, dictionary.getPath());
+      }
+    }
+    return entries.build();
+  }
+
+  /**
+   * @param lines 与词典文件格式相同的行
+   */
+  public static TaggedDictionary parse(@NotNull Iterable<String> lines) throws IOException {
+    checkNotNull(lines);
+    final Entries entries = new Entries();
+    for (String line : lines) {
+      entries.add(line, "lines");
+    }
+    return entries.build();
+  }
+
+  /**
+   * @return 标记对应的位，词典中没有这个标记时为0
+   */
+  public int flag(String name) {
+    for (int i = 0; i < flags.length; i++) {
+      if (flags[i].equals(name)) {
+        return 1 << i;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public String type(long metadata) {
+    return types[(int) (metadata >>> Integer.SIZE)];
+  }
+
+  @Override
+  public int flags(long metadata) {
+    return (int) metadata;
+  }
+
+  @Override
+  public Matcher matcher() {
+    return new TaggedMatcher();
+  }
+
+  /**
+   * 读取词典时收集的词条、类型和标记
+   */
+  private static final class Entries {
+    private final SortedMap<String, Long> words = Maps.newTreeMap(CODE_POINT_ORDER);
+    private final Map<String, Integer> typeIds = Maps.newHashMap();
+    private final List<String> types = Lists.newArrayList(TypeAttribute.DEFAULT_TYPE);
+    private final Map<String, Integer> flagBits = Maps.newHashMap();
+    private final List<String> flags = Lists.newArrayList();
+
+    private Entries() {
+      typeIds.put(TypeAttribute.DEFAULT_TYPE, 0);
+    }
+
+    private void read(BufferedReader in, String resourceDescription) throws IOException {
+      try {
+        for (String line : IOStreams.lines(in)) {
+          add(line, resourceDescription);
+        }
+      } catch (IOReaderException e) {
+        throw (IOException) e.getCause();
+      }
+    }
+
+    private void add(String line, String resourceDescription) {
+      final Iterator<String> columns = COLUMN_SPLITTER.split(line).iterator();
+      if (!columns.hasNext()) {
+        return;
+      }
+      final String word = FSTFactory.normalize(columns.next());
+      long type = 0;
+      int bits = 0;
+      if (columns.hasNext()) {
+        final String name = columns.next();
+        if (!NO_TYPE.equals(name)) {
+          type = typeId(name);
+        }
+      }
+      while (columns.hasNext()) {
+        for (String name : FLAG_SPLITTER.split(columns.next())) {
+          bits |= flagBit(name, resourceDescription);
+        }
+      }
+      words.put(word, type << Integer.SIZE | (bits & 0xFFFFFFFFL));
+    }
+
+    private int typeId(String name) {
+      Integer id = typeIds.get(name);
+      if (id == null) {
+        id = types.size();
+        typeIds.put(name, id);
+        types.add(name);
+      }
+      return id;
+    }
+
+    private int flagBit(String name, String resourceDescription) {
+      Integer bit = flagBits.get(name);
+      if (bit == null) {
+        checkArgument(flags.size() < MAX_FLAGS, "more than %s flags in %s", MAX_FLAGS, resourceDescription);
+        bit = flags.size();
+        flagBits.put(name, bit);
+        flags.add(name);
+      }
+      return 1 << bit;
+    }
+
+    private TaggedDictionary build() throws IOException {
+      checkArgument(!words.isEmpty(), "dictionary is empty");
+      final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+      final Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE4, outputs);
+      final IntsRefBuilder scratch = new IntsRefBuilder();
+      for (Map.Entry<String, Long> word : words.entrySet()) {
+        final long metadata = word.getValue();
+        builder.add(Util.toUTF32(word.getKey(), scratch), metadata == 0 ? outputs.getNoOutput() : metadata);
+      }
+      return new TaggedDictionary(builder.finish(), types.toArray(new String[types.size()]),
+              flags.toArray(new String[flags.size()]));
+    }
+  }
+
+  /**
+   * 匹配的同时累加经过的边上的输出，到达词条结尾时加上结尾的输出即为词条的附加信息
+   */
+  private final class TaggedMatcher extends Matcher {
+    private final FST.BytesReader fstReader = fst.getBytesReader();
+    private FST.Arc<Long> follow = new FST.Arc<>();
+    private FST.Arc<Long> current = new FST.Arc<>();
+    private long output;
+    private long previousOutput;
+
+    @Override
+    public void reset() {
+      fst.getFirstArc(follow);
+      output = 0;
+    }
+
+    @Override
+    public boolean match(int codePoint) throws IOException {
+      if (fst.findTargetArc(codePoint, follow, current, fstReader) == null) {
+        return false;
+      }
+      final FST.Arc<Long> matched = current;
+      current = follow;
+      follow = matched;
+      previousOutput = output;
+      output += matched.output;
+      return true;
+    }
+
+    @Override
+    public boolean isFinal() {
+      return follow.isFinal();
+    }
+
+    @Override
+    public long metadata() {
+      return output + follow.nextFinalOutput;
+    }
+
+    @Override
+    public void undo() {
+      final FST.Arc<Long> previous = current;
+      current = follow;
+      follow = previous;
+      output = previousOutput;
+    }
+  }
+}
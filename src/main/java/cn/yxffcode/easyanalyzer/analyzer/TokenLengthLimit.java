@@ -0,0 +1,29 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * 分析器的词条长度限制，分析器会被多个线程共享，修改后对之后开始分词的输入有效，
+ * 由{@link LimitedComponents}在每次切换输入时交给复用的分词器
+ *
+ * @author gaohang on 15/12/27.
+ */
+final class TokenLengthLimit {
+
+  /**
+   * 词条最多的码点数，默认不限制
+   */
+  private volatile int maxTokenLength = BaseTokenizer.UNLIMITED_TOKEN_LENGTH;
+
+  int get() {
+    return maxTokenLength;
+  }
+
+  /**
+   * @param maxTokenLength 词条最多的码点数
+   */
+  void set(int maxTokenLength) {
+    checkArgument(maxTokenLength > 0, "maxTokenLength must be positive");
+    this.maxTokenLength = maxTokenLength;
+  }
+}
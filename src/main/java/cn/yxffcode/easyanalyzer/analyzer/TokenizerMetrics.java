@@ -0,0 +1,205 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * 一个分词器的运行统计，默认关闭.
+ * <p/>
+ * 开启后每个分词器在自己的{@link Recorder}中计数，不需要同步，每篇文档分词结束时再累加到
+ * 分段的{@link LongAdder}中，多线程分词时不会在同一个计数上竞争。关闭时分词器不持有Recorder，
+ * 每个统计点只多一次null判断.
+ * <p/>
+ * 通过{@link #register(String)}注册到平台的MBeanServer后，可以通过JMX查看和开关统计
+ *
+ * @author gaohang on 15/12/20.
+ */
+public final class TokenizerMetrics implements TokenizerMetricsMXBean {
+
+  private static final String DOMAIN = "cn.yxffcode.easyanalyzer";
+
+  private volatile boolean enabled;
+  private final LongAdder documents = new LongAdder();
+  private final LongAdder chars = new LongAdder();
+  private final LongAdder tokens = new LongAdder();
+  private final LongAdder arcLookups = new LongAdder();
+  private final LongAdder pushbacks = new LongAdder();
+  private final LongAdder rereadChars = new LongAdder();
+  private final AtomicLong maxPushbackDepth = new AtomicLong();
+  private final LongAdder unmatched = new LongAdder();
+  private final LongAdder englishFallbacks = new LongAdder();
+  private final LongAdder digitFallbacks = new LongAdder();
+  private ObjectName objectName;
+
+  TokenizerMetrics() {
+  }
+
+  /**
+   * 注册到平台的MBeanServer
+   *
+   * @param name ObjectName中name属性的值，通常是分词器的名字
+   */
+  public synchronized ObjectName register(String name) throws JMException {
+    checkNotNull(name);
+    checkState(objectName == null, "already registered as %s", objectName);
+    final ObjectName objectName = new ObjectName(DOMAIN + ":type=TokenizerMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    this.objectName = objectName;
+    return objectName;
+  }
+
+  /**
+   * 从平台的MBeanServer注销，没有注册时什么也不做
+   */
+  public synchronized void unregister() throws JMException {
+    if (objectName == null) {
+      return;
+    }
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    if (server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+    objectName = null;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @Override
+  public long getDocuments() {
+    return documents.sum();
+  }
+
+  @Override
+  public long getChars() {
+    return chars.sum();
+  }
+
+  @Override
+  public long getTokens() {
+    return tokens.sum();
+  }
+
+  @Override
+  public long getArcLookups() {
+    return arcLookups.sum();
+  }
+
+  @Override
+  public long getPushbacks() {
+    return pushbacks.sum();
+  }
+
+  @Override
+  public long getRereadChars() {
+    return rereadChars.sum();
+  }
+
+  @Override
+  public long getMaxPushbackDepth() {
+    return maxPushbackDepth.get();
+  }
+
+  @Override
+  public long getUnmatched() {
+    return unmatched.sum();
+  }
+
+  @Override
+  public long getEnglishFallbacks() {
+    return englishFallbacks.sum();
+  }
+
+  @Override
+  public long getDigitFallbacks() {
+    return digitFallbacks.sum();
+  }
+
+  @Override
+  public void reset() {
+    documents.reset();
+    chars.reset();
+    tokens.reset();
+    arcLookups.reset();
+    pushbacks.reset();
+    rereadChars.reset();
+    maxPushbackDepth.set(0);
+    unmatched.reset();
+    englishFallbacks.reset();
+    digitFallbacks.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "documents=" + getDocuments() + ", chars=" + getChars() + ", tokens=" + getTokens()
+            + ", arcLookups=" + getArcLookups() + ", pushbacks=" + getPushbacks()
+            + ", rereadChars=" + getRereadChars() + ", maxPushbackDepth=" + getMaxPushbackDepth()
+            + ", unmatched=" + getUnmatched() + ", englishFallbacks=" + getEnglishFallbacks()
+            + ", digitFallbacks=" + getDigitFallbacks();
+  }
+
+  /**
+   * 一个分词器私有的计数，只在一个线程中使用
+   */
+  static final class Recorder {
+    private final TokenizerMetrics metrics;
+    long chars;
+    long tokens;
+    long arcLookups;
+    long pushbacks;
+    long rereadChars;
+    long maxPushbackDepth;
+    long unmatched;
+    long englishFallbacks;
+    long digitFallbacks;
+
+    Recorder(TokenizerMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    void pushback(int depth) {
+      pushbacks++;
+      rereadChars += depth;
+      if (depth > maxPushbackDepth) {
+        maxPushbackDepth = depth;
+      }
+    }
+
+    /**
+     * 一篇文档分词结束，累加到共享的计数中并清零
+     */
+    void flush() {
+      metrics.documents.increment();
+      metrics.chars.add(chars);
+      metrics.tokens.add(tokens);
+      metrics.arcLookups.add(arcLookups);
+      metrics.pushbacks.add(pushbacks);
+      metrics.rereadChars.add(rereadChars);
+      for (long max = metrics.maxPushbackDepth.get(); max < maxPushbackDepth;
+           max = metrics.maxPushbackDepth.get()) {
+        if (metrics.maxPushbackDepth.compareAndSet(max, maxPushbackDepth)) {
+          break;
+        }
+      }
+      metrics.unmatched.add(unmatched);
+      metrics.englishFallbacks.add(englishFallbacks);
+      metrics.digitFallbacks.add(digitFallbacks);
+      chars = tokens = arcLookups = pushbacks = rereadChars = maxPushbackDepth = 0;
+      unmatched = englishFallbacks = digitFallbacks = 0;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+/**
+ * 分词统计的JMX接口，计数从创建或上一次{@link #reset()}开始累计
+ *
+ * @author gaohang on 15/12/20.
+ */
+public interface TokenizerMetricsMXBean {
+
+  boolean isEnabled();
+
+  /**
+   * 开启或关闭统计，分词器在下一次reset时生效
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * @return 分词完成的文档数
+   */
+  long getDocuments();
+
+  /**
+   * @return 分词完成的文档的字符数
+   */
+  long getChars();
+
+  long getTokens();
+
+  /**
+   * @return 在词典上匹配字符的次数，每次匹配查找一次FST的边
+   */
+  long getArcLookups();
+
+  /**
+   * @return 将已读取的字符压回输入的次数
+   */
+  long getPushbacks();
+
+  /**
+   * @return 压回输入后重新读取的字符数
+   */
+  long getRereadChars();
+
+  /**
+   * @return 一次压回的最大字符数
+   */
+  long getMaxPushbackDepth();
+
+  /**
+   * @return 不能完全匹配词典的次数
+   */
+  long getUnmatched();
+
+  /**
+   * @return 没有匹配词典，按连续的英文字母输出词条的次数
+   */
+  long getEnglishFallbacks();
+
+  /**
+   * @return 没有匹配词典，按连续的数字输出词条的次数
+   */
+  long getDigitFallbacks();
+
+  /**
+   * 清零所有计数
+   */
+  void reset();
+}
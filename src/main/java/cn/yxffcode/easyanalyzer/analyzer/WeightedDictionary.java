@@ -0,0 +1,199 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.io.IOReaderException;
+import cn.yxffcode.easyanalyzer.io.IOStreams;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import javax.validation.constraints.NotNull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * 带词频的词典，词频作为FST的输出保存，用于{@link MaxProbabilityAnalyzer}计算切分的概率.
+ * <p/>
+ * 词典文件中一行为一个词条，格式为“词条 词频”，以空白字符分隔，词频省略时为1，之后的列（如词性）被忽略。
+ * 同一个词条出现多次时以最后一次的词频为准。也可以作为普通的{@link Dictionary}给其它分词方式使用
+ *
+ * @author gaohang on 15/12/22.
+ */
+public final class WeightedDictionary extends Dictionary {
+
+  private static final long DEFAULT_FREQUENCY = 1;
+  private static final Splitter COLUMN_SPLITTER = Splitter.onPattern("\\s+").omitEmptyStrings();
+
+  private final FST<Long> fst;
+  /**
+   * 所有词条的词频之和
+   */
+  private final long total;
+  private final double logTotal;
+
+  private WeightedDictionary(FST<Long> fst, long total) {
+    this.fst = fst;
+    this.total = total;
+    this.logTotal = Math.log(total);
+  }
+
+  /**
+   * 使用{@link Thread#getContextClassLoader()}加载类路径下的词典文件
+   *
+   * @param classpath 词典文件的类路径，支持目录
+   */
+  public static WeightedDictionary create(String classpath) throws IOException {
+    return create(classpath, Thread.currentThread().getContextClassLoader());
+  }
+
+  /**
+   * @param classpath   词典文件的类路径，支持目录和jar包中的目录，以.dic.gz结尾的词典按gzip解压
+   * @param classLoader 用于加载词典文件的类加载器
+   */
+  public static WeightedDictionary create(String classpath, ClassLoader classLoader) throws IOException {
+    final SortedMap<String, Long> words = Maps.newTreeMap(CODE_POINT_ORDER);
+    for (DictionarySource source : DictionarySource.resolve(classpath, classLoader)) {
+      try (BufferedReader in = source.openReader()) {
+        readDictionary(words, in, source.toString());
+      }
+    }
+    return create(words);
+  }
+
+  /**
+   * @param dictionaries 词典文件列表，按UTF-8读取
+   */
+  public static WeightedDictionary create(@NotNull Iterable<File> dictionaries) throws IOException {
+    checkNotNull(dictionaries);
+    final SortedMap<String, Long> words = Maps.newTreeMap(CODE_POINT_ORDER);
+    for (File dictionary : dictionaries) {
+      try (BufferedReader in = DictionarySource.of(dictionary).openReader()) {
+        readDictionary(words, in, dictionary.getPath());
+      }
+    }
+    return create(words);
+  }
+
+  /**
+   * @param words 词条及其词频，词频需要为正数，词条不做转换
+   */
+  public static WeightedDictionary create(@NotNull Map<String, Long> words) throws IOException {
+    checkNotNull(words);
+    checkArgument(!words.isEmpty(), "dictionary is empty");
+    final SortedMap<String, Long> sorted;
+    if (words instanceof SortedMap && ((SortedMap<String, Long>) words).comparator() == CODE_POINT_ORDER) {
+      sorted = (SortedMap<String, Long>) words;
+    } else {
+      sorted = Maps.newTreeMap(CODE_POINT_ORDER);
+      sorted.putAll(words);
+    }
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton();
+    final Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE4, outputs);
+    final IntsRefBuilder scratch = new IntsRefBuilder();
+    long total = 0;
+    for (Map.Entry<String, Long> word : sorted.entrySet()) {
+      final long frequency = checkNotNull(word.getValue());
+      checkArgument(frequency > 0, "frequency of %s must be positive", word.getKey());
+      checkArgument(!word.getKey().isEmpty(), "empty word");
+      builder.add(Util.toUTF32(word.getKey(), scratch), frequency);
+      total += frequency;
+    }
+    return new WeightedDictionary(builder.finish(), total);
+  }
+
+  private static void readDictionary(Map<String, Long> words, BufferedReader in, String resourceDescription)
+          throws IOException {
+    try {
+      for (String line : IOStreams.lines(in)) {
+        final Iterator<String> columns = COLUMN_SPLITTER.split(line).iterator();
+        if (!columns.hasNext()) {
+          continue;
+        }
+        final String word = FSTFactory.normalize(columns.next());
+        words.put(word, columns.hasNext() ? parseFrequency(columns.next(), line, resourceDescription)
+                : DEFAULT_FREQUENCY);
+      }
+    } catch (IOReaderException e) {
+      throw (IOException) e.getCause();
+    }
+  }
+
+  private static long parseFrequency(String column, String line, String resourceDescription) {
+    final long frequency;
+    try {
+      frequency = Long.parseLong(column);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid frequency in " + resourceDescription + ": " + line, e);
+    }
+    checkArgument(frequency > 0, "frequency must be positive in %s: %s", resourceDescription, line);
+    return frequency;
+  }
+
+  /**
+   * @return 所有词条的词频之和
+   */
+  public long total() {
+    return total;
+  }
+
+  FST<Long> fst() {
+    return fst;
+  }
+
+  /**
+   * @return 词频对应的对数概率
+   */
+  double logProbability(long frequency) {
+    return Math.log(frequency) - logTotal;
+  }
+
+  @Override
+  public Matcher matcher() {
+    return new WeightedMatcher();
+  }
+
+  private final class WeightedMatcher extends Matcher {
+    private final FST.BytesReader fstReader = fst.getBytesReader();
+    private FST.Arc<Long> follow = new FST.Arc<>();
+    private FST.Arc<Long> current = new FST.Arc<>();
+
+    @Override
+    public void reset() {
+      fst.getFirstArc(follow);
+    }
+
+    @Override
+    public boolean match(int codePoint) throws IOException {
+      if (fst.findTargetArc(codePoint, follow, current, fstReader) == null) {
+        return false;
+      }
+      final FST.Arc<Long> matched = current;
+      current = follow;
+      follow = matched;
+      return true;
+    }
+
+    @Override
+    public boolean isFinal() {
+      return follow.isFinal();
+    }
+
+    @Override
+    public void undo() {
+      final FST.Arc<Long> previous = current;
+      current = follow;
+      follow = previous;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package cn.yxffcode.easyanalyzer.io;
+
+import java.io.Reader;
+
+/**
+ * 读取{@link CharSequence}的Reader，可以通过{@link #reset(CharSequence)}切换到新的输入并复用，
+ * 不需要为每个输入创建{@link java.io.StringReader}或把输入转换成字符串.
+ * <p/>
+ * 分词器通过{@link InputWindow}直接读取其中的输入，不经过Reader；char[]可以通过{@link java.nio.CharBuffer#wrap(char[], int, int)}
+ * 包装，分词器直接读取数组.
+ * <p/>
+ * 不是线程安全的，也不支持mark
+ *
+ * @author gaohang on 15/12/24.
+ */
+public final class CharSequenceReader extends Reader {
+
+  private CharSequence input;
+  private int position;
+
+  public CharSequenceReader() {
+  }
+
+  public CharSequenceReader(CharSequence input) {
+    reset(input);
+  }
+
+  /**
+   * 切换到新的输入
+   */
+  public void reset(CharSequence input) {
+    this.input = input;
+    this.position = 0;
+  }
+
+  CharSequence input() {
+    return input;
+  }
+
+  /**
+   * 下一个要读取的字符在输入中的位置
+   */
+  int position() {
+    return position;
+  }
+
+  @Override
+  public int read(char[] cbuf, int off, int len) {
+    final int remaining = input.length() - position;
+    if (remaining <= 0) {
+      return -1;
+    }
+    final int count = Math.min(len, remaining);
+    if (input instanceof String) {
+      ((String) input).getChars(position, position + count, cbuf, off);
+    } else {
+      for (int i = 0; i < count; i++) {
+        cbuf[off + i] = input.charAt(position + i);
+      }
+    }
+    position += count;
+    return count;
+  }
+
+  @Override
+  public int read() {
+    return position < input.length() ? input.charAt(position++) : -1;
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,262 @@
+package cn.yxffcode.easyanalyzer.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * 基于环形缓冲区的输入窗口，按块从{@link Reader}中读取字符，按码点返回，代理对会被合并成一个增补字符.
+ * <p/>
+ * 读取位置使用从输入开头计算的绝对位置（char的个数）表示，为long，超过2^31个字符的输入也不会溢出，可以通过{@link #rewind(long)}回退到
+ * {@link #mark()}之后的任意位置重新读取，取代逐个字符的pushback。{@link #mark()}之前的字符会被丢弃，
+ * 缓冲区只在从mark到已读取位置的字符放不下时才会扩容.
+ * <p/>
+ * 通过{@link CharSequenceReader}传入的输入已经在内存中，不经过Reader和缓冲区，直接按位置读取字符串或数组，
+ * 整个输入都可以回退。lucene的{@code Analyzer.tokenStream(String, String)}包装字符串使用的Reader不是公开的类，
+ * 按普通的Reader读取
+ *
+ * @author gaohang on 15/12/12.
+ */
+public class InputWindow {
+
+  public static final int EOF = -1;
+
+  private static final int DEFAULT_CAPACITY = 4096;
+
+  private char[] buffer;
+  private int mask;
+  private Reader reader;
+  /**
+   * 缓冲区中最早保留的字符位置，在此之前的字符已被丢弃，不能再回退
+   */
+  private long markPosition;
+  /**
+   * 下一个要读取的字符位置
+   */
+  private long position;
+  /**
+   * 已从reader读入缓冲区的字符的结束位置
+   */
+  private long limit;
+  private boolean eof;
+  /**
+   * 是否直接读取内存中的输入，此时不使用缓冲区，位置为i的字符是array[arrayOffset + i]，
+   * 没有数组时是text.charAt(textOffset + i)
+   */
+  private boolean direct;
+  private char[] array;
+  private int arrayOffset;
+  private CharSequence text;
+  private int textOffset;
+
+  public InputWindow() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param initCapacity 初始容量，会被调整为2的幂
+   */
+  public InputWindow(int initCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(initCapacity, 16) - 1) << 1;
+    this.buffer = new char[capacity];
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * 切换到新的输入，已有的缓冲区会被复用
+   */
+  public void reset(Reader reader) {
+    this.reader = reader;
+    this.markPosition = 0;
+    this.position = 0;
+    this.limit = 0;
+    this.eof = false;
+    this.direct = false;
+    this.array = null;
+    this.text = null;
+    if (reader instanceof CharSequenceReader) {
+      final CharSequenceReader in = (CharSequenceReader) reader;
+      resetDirect(in.input(), in.position());
+    }
+  }
+
+  /**
+   * 直接读取内存中的输入，输入在读取的过程中不能修改
+   *
+   * @param offset 输入中第一个要读取的字符，它的位置为0
+   */
+  private void resetDirect(CharSequence input, int offset) {
+    if (input instanceof CharBuffer && ((CharBuffer) input).hasArray()) {
+      final CharBuffer buffer = (CharBuffer) input;
+      this.array = buffer.array();
+      this.arrayOffset = buffer.arrayOffset() + buffer.position() + offset;
+    } else {
+      this.text = input;
+      this.textOffset = offset;
+    }
+    this.limit = input.length() - offset;
+    this.eof = true;
+    this.direct = true;
+  }
+
+  /**
+   * @param position 直接读取时输入的长度不超过int，位置可以直接转换
+   */
+  private char directChar(long position) {
+    final int i = (int) position;
+    return array != null ? array[arrayOffset + i] : text.charAt(textOffset + i);
+  }
+
+  /**
+   * 读取下一个字符的码点
+   *
+   * @return 码点，读到输入的最后返回{@link #EOF}
+   */
+  public int read() throws IOException {
+    if (direct) {
+      return readDirect();
+    }
+    if (position == limit && !fill()) {
+      return EOF;
+    }
+    final char c = buffer[(int) (position++ & mask)];
+    if (!Character.isHighSurrogate(c)) {
+      return c;
+    }
+    if (position == limit && !fill()) {
+      return c;
+    }
+    final char low = buffer[(int) (position & mask)];
+    if (!Character.isLowSurrogate(low)) {
+      return c;
+    }
+    position++;
+    return Character.toCodePoint(c, low);
+  }
+
+  private int readDirect() {
+    if (position == limit) {
+      return EOF;
+    }
+    final char c = directChar(position++);
+    if (!Character.isHighSurrogate(c) || position == limit) {
+      return c;
+    }
+    final char low = directChar(position);
+    if (!Character.isLowSurrogate(low)) {
+      return c;
+    }
+    position++;
+    return Character.toCodePoint(c, low);
+  }
+
+  /**
+   * 下一个要读取的字符位置
+   */
+  public long position() {
+    return position;
+  }
+
+  /**
+   * 回退到指定的位置，之后的读取从此位置开始
+   *
+   * @param position 由{@link #position()}返回的位置，不能早于{@link #mark()}的位置
+   */
+  public void rewind(long position) {
+    if (position < markPosition || position > this.position) {
+      throw new IllegalArgumentException("position " + position + " out of window ["
+              + markPosition + ", " + this.position + "]");
+    }
+    this.position = position;
+  }
+
+  /**
+   * 标记当前位置，之前的字符可以被丢弃，不能再回退到此位置之前
+   */
+  public void mark() {
+    markPosition = position;
+  }
+
+  /**
+   * 向后查看字符而不改变读取位置
+   *
+   * @param position 绝对位置，不能早于{@link #mark()}的位置
+   * @return 该位置上的char，超出输入范围返回{@link #EOF}
+   */
+  public int charAt(long position) throws IOException {
+    if (position < markPosition) {
+      throw new IllegalArgumentException("position " + position + " has been released");
+    }
+    if (direct) {
+      return position < limit ? directChar(position) : EOF;
+    }
+    while (position >= limit) {
+      if (!fill()) {
+        return EOF;
+      }
+    }
+    return buffer[(int) (position & mask)];
+  }
+
+  /**
+   * @return 缓冲区的容量，直接读取内存中的输入时不使用缓冲区
+   */
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * 已从reader中读取的字符数，读到输入的最后时即为输入的长度
+   */
+  public long limit() {
+    return limit;
+  }
+
+  /**
+   * 是否直接读取内存中的输入，不经过Reader和缓冲区
+   */
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * 已经读到了输入的最后，并且没有需要重新读取的字符
+   */
+  public boolean exhausted() {
+    return eof && position == limit;
+  }
+
+  /**
+   * 从reader中读取一块字符到缓冲区
+   *
+   * @return 是否读到了新的字符
+   */
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    if (limit - markPosition == buffer.length) {
+      grow();
+    }
+    final int offset = (int) (limit & mask);
+    final int markOffset = (int) (markPosition & mask);
+    //一次只填充到数组末尾或者mark的位置，环绕的部分留给下一次填充
+    final int end = markOffset > offset ? markOffset : buffer.length;
+    final int read = reader.read(buffer, offset, end - offset);
+    if (read == EOF) {
+      eof = true;
+      return false;
+    }
+    limit += read;
+    return true;
+  }
+
+  private void grow() {
+    final char[] nbuffer = new char[buffer.length * 2];
+    for (long i = markPosition; i < limit; i++) {
+      nbuffer[(int) (i & (nbuffer.length - 1))] = buffer[(int) (i & mask)];
+    }
+    this.buffer = nbuffer;
+    this.mask = nbuffer.length - 1;
+  }
+}
@@ -28,14 +28,18 @@ public class IntArrayStringBuilder {
   }
 
   private void resize() {
-    int[] ndest = new int[dest.length * 2];
+    resize(dest.length * 2);
+  }
+
+  private void resize(int minCapacity) {
+    int[] ndest = new int[Math.max(minCapacity, dest.length * 2)];
     System.arraycopy(dest, 0, ndest, 0, pos);
     this.dest = ndest;
   }
 
   public IntArrayStringBuilder append(int... cs) {
     if (pos + cs.length > dest.length) {
-      resize();
+      resize(pos + cs.length);
     }
     for (int c : cs) {
       dest[pos++] = c;
@@ -43,6 +47,21 @@ public class IntArrayStringBuilder {
     return this;
   }
 
+  /**
+   * 追加另一个builder中的一段，不会创建中间对象
+   */
+  public IntArrayStringBuilder append(IntArrayStringBuilder src,
+                                      int off,
+                                      int len) {
+    if (pos + len > dest.length) {
+      resize(pos + len);
+    }
+    for (int i = off, j = off + len; i < j; i++) {
+      dest[pos++] = src.element(i);
+    }
+    return this;
+  }
+
   public void clear() {
     pos = 0;
   }
@@ -115,11 +134,20 @@ public class IntArrayStringBuilder {
     return toCharArray(0, pos);
   }
 
+  /**
+   * 元素是Unicode码点，增补字符会转换成两个char
+   */
   public char[] toCharArray(int off,
                             int len) {
-    char[] chars = new char[len];
+    int charCount = len;
     for (int i = off, j = len + off; i < j; i++) {
-      chars[i - off] = (char) dest[i];
+      if (dest[i] >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        charCount++;
+      }
+    }
+    char[] chars = new char[charCount];
+    for (int i = off, j = len + off, k = 0; i < j; i++) {
+      k += Character.toChars(dest[i], chars, k);
     }
     return chars;
   }
@@ -141,6 +169,23 @@ public class IntArrayStringBuilder {
     return true;
   }
 
+  /**
+   * 从offset位置开始是否以appender开头，与{@code slice(offset).startWith(appender)}等价，但不会创建切片对象
+   */
+  public boolean startWith(IntArrayStringBuilder appender,
+                           int offset) {
+    int thatLength = appender.length();
+    if (length() - offset < thatLength) {
+      return false;
+    }
+    for (int i = 0; i < thatLength; ++i) {
+      if (appender.element(i) != element(i + offset)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public IntArrayStringBuilder slice(int offset) {
     return slice(offset, this.length() - offset);
   }
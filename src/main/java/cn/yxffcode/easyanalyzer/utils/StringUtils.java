@@ -1,9 +1,34 @@
 package cn.yxffcode.easyanalyzer.utils;
 
+import java.util.Comparator;
+
 /**
  * @author gaohang on 15/11/16.
  */
 public abstract class StringUtils {
+  /**
+   * 按Unicode码点排序，与UTF-8字节序和UTF-32的顺序一致。{@link String#compareTo(String)}按UTF-16
+   * 编码单元排序，在出现增补字符（代理对）时与码点顺序不一致，不能直接用于创建FST
+   */
+  public static final Comparator<String> CODE_POINT_ORDER = new Comparator<String>() {
+    @Override
+    public int compare(String s1, String s2) {
+      final int len = Math.min(s1.length(), s2.length());
+      for (int i = 0; i < len; i++) {
+        char c1 = s1.charAt(i);
+        char c2 = s2.charAt(i);
+        if (c1 != c2) {
+          //代理对的编码单元在码点顺序上大于所有BMP字符
+          if (Character.isSurrogate(c1) != Character.isSurrogate(c2)) {
+            return Character.isSurrogate(c1) ? 1 : -1;
+          }
+          return c1 - c2;
+        }
+      }
+      return s1.length() - s2.length();
+    }
+  };
+
   private StringUtils() {
   }
 
@@ -0,0 +1,112 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import org.apache.lucene.analysis.Analyzer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Aho-Corasick自动机输出输入中所有的词条，回退实现的最多数量匹配输出的词条都包含在其中
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class AhoCorasickTokenizerTest {
+
+  @Test
+  public void matchesBacktrackingTokenizer() throws IOException {
+    final Random random = new Random(13);
+    for (int i = 0; i < 300; i++) {
+      final SortedSet<String> words = Dictionaries.randomWords(random, 1 + random.nextInt(40), 4);
+      final Analyzer automaton = MaxCountAnalyzer.create(AhoCorasickAutomaton.create(words));
+      final Analyzer backtracking = MaxCountAnalyzer.create(words, false);
+      for (int j = 0; j < 10; j++) {
+        final String text = text(random);
+        final List<String> tokens = Tokens.of(automaton, text);
+        assertEquals(text, occurrences(words, text), inDictionary(words, tokens));
+        //每个位置上的词条都找到之后才输出，词条按起始位置输出
+        int lastStart = 0;
+        for (String token : tokens) {
+          final int start = start(token);
+          assertTrue(text + ": " + tokens, start >= lastStart);
+          lastStart = start;
+        }
+        final Multiset<String> all = HashMultiset.create(tokens);
+        for (String token : inDictionary(words, Tokens.of(backtracking, text))) {
+          assertTrue(text + ": " + token, all.remove(token));
+        }
+      }
+    }
+  }
+
+  /**
+   * 蛮力查找输入中所有的词条，换行符不参与匹配，但计入词条的起止位置
+   *
+   * @return 按起始位置排序，同一位置上长的词条在前
+   */
+  private static List<String> occurrences(Set<String> words, String text) {
+    final List<Integer> starts = Lists.newArrayList();
+    final StringBuilder letters = new StringBuilder();
+    for (int i = 0; i < text.length(); i = text.offsetByCodePoints(i, 1)) {
+      final int codePoint = text.codePointAt(i);
+      if (codePoint != '\n' && codePoint != '\r') {
+        starts.add(i);
+        letters.appendCodePoint(codePoint);
+      }
+    }
+    final List<String> occurrences = Lists.newArrayList();
+    for (int i = 0; i < starts.size(); i++) {
+      for (int j = starts.size(); j > i; j--) {
+        final int from = letters.offsetByCodePoints(0, i);
+        final String word = letters.substring(from, letters.offsetByCodePoints(from, j - i));
+        if (words.contains(word)) {
+          final int end = starts.get(j - 1) + Character.charCount(text.codePointAt(starts.get(j - 1)));
+          occurrences.add(word + '@' + starts.get(i) + '-' + end);
+        }
+      }
+    }
+    return occurrences;
+  }
+
+  private static List<String> inDictionary(Set<String> words, List<String> tokens) {
+    final List<String> matched = Lists.newArrayList();
+    for (String token : tokens) {
+      if (words.contains(token.substring(0, token.lastIndexOf('@')))) {
+        matched.add(token);
+      }
+    }
+    return matched;
+  }
+
+  private static int start(String token) {
+    return Integer.parseInt(token.substring(token.lastIndexOf('@') + 1, token.lastIndexOf('-')));
+  }
+
+  /**
+   * 由词典中的字符、增补字符、空白和换行组成的随机文本
+   */
+  private static String text(Random random) {
+    final StringBuilder text = new StringBuilder();
+    final int length = random.nextInt(40);
+    for (int i = 0; i < length; i++) {
+      final int kind = random.nextInt(10);
+      if (kind == 0) {
+        text.append(random.nextBoolean() ? '\n' : "\r\n");
+      } else if (kind == 1) {
+        text.append(' ');
+      } else {
+        text.append(Dictionaries.randomText(random, 1));
+      }
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,215 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 分段切分的结果与整个文档一次切分的结果相同
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class ChunkedSegmenterTest {
+
+  private static final String DELIMITERS = "。！？；!?; \n\t";
+
+  private static final Function<Dictionary, Analyzer> COMPLETE = new Function<Dictionary, Analyzer>() {
+    @Override
+    public Analyzer apply(Dictionary snapshot) {
+      return CompleteFSTAnalyzer.create(snapshot, false);
+    }
+  };
+
+  private static final Function<Dictionary, Analyzer> MAX_COUNT = new Function<Dictionary, Analyzer>() {
+    @Override
+    public Analyzer apply(Dictionary snapshot) {
+      return MaxCountAnalyzer.create(snapshot, false);
+    }
+  };
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void chunksMatchWholeDocument() throws IOException {
+    final Random random = new Random(5);
+    final SortedSet<String> words = Sets.newTreeSet(CODE_POINT_ORDER);
+    words.addAll(Dictionaries.randomWords(random, 300, 4));
+    //包含分隔字符的词条，不能在其中切分
+    words.add("湖北。工业");
+    words.add("中国 人民");
+    words.add("大学！");
+    words.add("！学");
+    final FST<CharsRef> fst = FSTFactory.create(words);
+    final Dictionary dictionary = FSTDictionary.create(fst, 0);
+    final int maxWordLength = FSTFactory.maxWordLength(fst);
+    final List<String> list = Lists.newArrayList(words);
+    for (int i = 0; i < 20; i++) {
+      final String document = document(random, list, 3000);
+      for (Function<Dictionary, Analyzer> factory : Lists.newArrayList(COMPLETE, MAX_COUNT)) {
+        final ChunkedSegmenter chunked = ChunkedSegmenter.create(factory, dictionary, maxWordLength, executor,
+                maxWordLength + 1 + random.nextInt(64));
+        final int[] cuts = chunked.cuts(document);
+        assertTrue(cuts.length > 3);
+        for (int j = 1; j + 1 < cuts.length; j++) {
+          assertTrue(DELIMITERS.indexOf(document.charAt(cuts[j] - 1)) >= 0);
+        }
+        assertSame(Segmenter.create(factory.apply(dictionary)).segment(Collections.singletonList(document)),
+                chunked.segment(document));
+      }
+    }
+  }
+
+  /**
+   * 切分依赖于词条不越过空白字符：匹配到一半失败时，英文的延续不能跳过结束匹配的空白字符
+   */
+  @Test
+  public void tokensEndAtWhitespace() throws IOException {
+    final Dictionary dictionary = dictionary("bbc");
+    assertEquals(Lists.newArrayList("bb@0-2", "a@3-4"), Tokens.of(COMPLETE.apply(dictionary), "bb\ta"));
+    assertEquals(Lists.newArrayList("bb@0-2", "a@3-4"), Tokens.of(MAX_COUNT.apply(dictionary), "bb a"));
+  }
+
+  /**
+   * 切分位置的检查和分词使用词典的同一个版本
+   */
+  @Test
+  public void usesOneSnapshotPerDocument() throws IOException {
+    final Dictionary withWord = dictionary("湖北。工业");
+    final Dictionary withoutWord = dictionary("湖北");
+    //每次取当前版本时交替返回两个版本
+    final Dictionary flipping = new Dictionary() {
+      private int calls;
+
+      @Override
+      public Matcher matcher() {
+        return current().matcher();
+      }
+
+      @Override
+      public Dictionary current() {
+        return calls++ % 2 == 0 ? withWord : withoutWord;
+      }
+    };
+    final ChunkedSegmenter chunked = ChunkedSegmenter.create(COMPLETE, flipping, 5, executor, 6);
+    final String document = "湖北。工业湖北。工业湖北。工业湖北。工业";
+    for (int i = 0; i < 4; i++) {
+      final Dictionary expected = i % 2 == 0 ? withWord : withoutWord;
+      assertSame(Segmenter.create(COMPLETE.apply(expected)).segment(Collections.singletonList(document)),
+              chunked.segment(document));
+    }
+  }
+
+  @Test
+  public void cancelsRemainingChunksOnFailure() throws Exception {
+    final ExecutorService single = Executors.newSingleThreadExecutor();
+    final AtomicInteger started = new AtomicInteger();
+    final AtomicInteger interrupted = new AtomicInteger();
+    final CountDownLatch never = new CountDownLatch(1);
+    //以F开头的段失败，其它的段一直等待，直到被取消
+    final Function<Dictionary, Analyzer> failing = new Function<Dictionary, Analyzer>() {
+      @Override
+      public Analyzer apply(Dictionary snapshot) {
+        return new Analyzer() {
+          @Override
+          protected TokenStreamComponents createComponents(String fieldName) {
+            return new TokenStreamComponents(new Tokenizer() {
+              @Override
+              public boolean incrementToken() throws IOException {
+                if (input.read() == 'F') {
+                  throw new IOException("failed chunk");
+                }
+                started.incrementAndGet();
+                try {
+                  never.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                  interrupted.incrementAndGet();
+                  throw new InterruptedIOException();
+                }
+                return false;
+              }
+            });
+          }
+        };
+      }
+    };
+    final Dictionary dictionary = dictionary("湖北");
+    final ChunkedSegmenter chunked = ChunkedSegmenter.create(failing, dictionary, 2, single, 4);
+    try {
+      chunked.segment("Fab。cde。fgh。ijk。lmn。opq。");
+      fail();
+    } catch (IOException expected) {
+      assertEquals("failed chunk", expected.getMessage());
+    } finally {
+      single.shutdown();
+    }
+    assertTrue(single.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(started.get() <= 1);
+    assertEquals(started.get(), interrupted.get());
+  }
+
+  private static Dictionary dictionary(String word) throws IOException {
+    return FSTDictionary.create(FSTFactory.create(Sets.newTreeSet(Collections.singleton(word))), 0);
+  }
+
+  private static void assertSame(Segmentation expected, Segmentation actual) {
+    assertEquals(expected.tokenCount(), actual.tokenCount());
+    final int[] expectedOffsets = new int[expected.tokenCount() * 2];
+    final int[] actualOffsets = new int[actual.tokenCount() * 2];
+    for (int i = 0; i < expected.tokenCount(); i++) {
+      expectedOffsets[i * 2] = expected.startOffset(i);
+      expectedOffsets[i * 2 + 1] = expected.endOffset(i);
+      actualOffsets[i * 2] = actual.startOffset(i);
+      actualOffsets[i * 2 + 1] = actual.endOffset(i);
+    }
+    assertArrayEquals(expectedOffsets, actualOffsets);
+  }
+
+  /**
+   * 由词条、随机文本和分隔字符组成的文档，词条中间偶尔有换行
+   */
+  private static String document(Random random, List<String> words, int length) {
+    final StringBuilder document = new StringBuilder();
+    while (document.length() < length) {
+      final String word = random.nextBoolean() ? words.get(random.nextInt(words.size()))
+              : Dictionaries.randomText(random, 1 + random.nextInt(3));
+      if (random.nextInt(10) == 0 && word.length() > 1 && !Character.isSurrogate(word.charAt(1))) {
+        document.append(word, 0, 1).append('\n').append(word, 1, word.length());
+      } else {
+        document.append(word);
+      }
+      if (random.nextInt(3) == 0) {
+        document.append(DELIMITERS.charAt(random.nextInt(DELIMITERS.length())));
+      }
+    }
+    return document.toString();
+  }
+}
@@ -0,0 +1,83 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+
+/**
+ * 测试中生成和读取词典的工具
+ *
+ * @author gaohang on 15/12/27.
+ */
+final class Dictionaries {
+
+  /**
+   * 生成词条使用的字符，包括增补字符
+   */
+  private static final int[] ALPHABET = {
+          '湖', '北', '工', '业', '大', '学', '中', '国', '人', '民', 'a', 'b', 'x', '1', '2',
+          0x20000, 0x20001, 0x1F600
+  };
+
+  private Dictionaries() {
+  }
+
+  /**
+   * @return 按码点排序的随机词条，长度为1到maxLength个码点
+   */
+  static SortedSet<String> randomWords(Random random, int count, int maxLength) {
+    final SortedSet<String> words = Sets.newTreeSet(CODE_POINT_ORDER);
+    while (words.size() < count) {
+      words.add(randomText(random, 1 + random.nextInt(maxLength)));
+    }
+    return words;
+  }
+
+  /**
+   * @return 由{@link #ALPHABET}中的字符组成的随机文本
+   */
+  static String randomText(Random random, int codePoints) {
+    final StringBuilder text = new StringBuilder();
+    for (int i = 0; i < codePoints; i++) {
+      text.appendCodePoint(ALPHABET[random.nextInt(ALPHABET.length)]);
+    }
+    return text.toString();
+  }
+
+  /**
+   * 每行一个词条写入词典文件
+   */
+  static File write(File file, Collection<String> words) throws IOException {
+    Files.write(file.toPath(), words, StandardCharsets.UTF_8);
+    return file;
+  }
+
+  /**
+   * 按FST中的顺序列出所有词条，标签可以是码点或UTF-8字节
+   */
+  static List<String> words(FST<CharsRef> fst) throws IOException {
+    final List<String> words = Lists.newArrayList();
+    if (fst == null) {
+      return words;
+    }
+    final IntsRefFSTEnum<CharsRef> fstEnum = new IntsRefFSTEnum<>(fst);
+    IntsRefFSTEnum.InputOutput<CharsRef> entry;
+    while ((entry = fstEnum.next()) != null) {
+      words.add(FSTFactory.toWord(entry.input, fst.inputType));
+    }
+    return words;
+  }
+}
@@ -0,0 +1,159 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 从jar包中的目录和gzip压缩的词典读取词条，无法按UTF-8解码的字节抛出异常
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class DictionarySourceTest {
+
+  /**
+   * 第一行是“湖”，第二行的0xC3开始一个两字节的字符，0x28不是合法的后续字节
+   */
+  private static final byte[] MALFORMED = {(byte) 0xE6, (byte) 0xB9, (byte) 0x96, '\n', (byte) 0xC3, 0x28, '\n'};
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsJarDirectoryAndGzip() throws IOException {
+    final File jar = jar(ImmutableMap.of(
+            "dict/a.dic", utf8("湖北\n工业\n"),
+            "dict/sub/b.dic.gz", gzip(utf8("大学\n\n  ABC  \n")),
+            "dict/readme.txt", utf8("不是词典\n"),
+            "other/c.dic", utf8("中国\n")));
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)) {
+      final List<DictionarySource> sources = DictionarySource.resolve("dict", classLoader);
+      assertEquals(2, sources.size());
+      assertEquals(Arrays.asList("湖北", "工业"), lines(sources.get(0)));
+      assertEquals(Arrays.asList("大学", "", "  ABC  "), lines(sources.get(1)));
+      assertFalse(sources.get(0).isSplittable());
+
+      assertEquals(Arrays.asList("abc", "大学", "工业", "湖北"),
+              Dictionaries.words(FSTFactory.create("dict", classLoader)));
+      //jar包中单个压缩的词典
+      assertEquals(Arrays.asList("abc", "大学"),
+              Dictionaries.words(FSTFactory.create("dict/sub/b.dic.gz", classLoader)));
+    }
+  }
+
+  @Test
+  public void gzipFile() throws IOException {
+    final File file = folder.newFile("words" + DictionarySource.COMPRESSED_SUFFIX);
+    Files.write(file.toPath(), gzip(utf8("湖北\n工业\n")));
+    final DictionarySource source = DictionarySource.of(file);
+    assertFalse(source.isSplittable());
+    assertEquals(Arrays.asList("湖北", "工业"), lines(source));
+    assertTrue(DictionarySource.of(Dictionaries.write(folder.newFile("words.dic"), Arrays.asList("湖北")))
+            .isSplittable());
+  }
+
+  /**
+   * 无法解码的字节不会被替换成U+FFFD悄悄地加入词典
+   */
+  @Test
+  public void malformedInputFailsLoudly() throws IOException {
+    final File jar = jar(ImmutableMap.of(
+            "bad/plain.dic", MALFORMED,
+            "bad/compressed.dic.gz", gzip(MALFORMED)));
+    try (URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null)) {
+      final List<DictionarySource> sources = DictionarySource.resolve("bad", classLoader);
+      assertEquals(2, sources.size());
+      for (DictionarySource source : sources) {
+        try {
+          lines(source);
+          fail(source.toString());
+        } catch (CharacterCodingException expected) {
+        }
+      }
+      try {
+        FSTFactory.create("bad", classLoader);
+        fail();
+      } catch (CharacterCodingException expected) {
+      }
+    }
+    final File file = folder.newFile("bad.dic");
+    Files.write(file.toPath(), MALFORMED);
+    try {
+      FSTFactory.create(Arrays.asList(file));
+      fail();
+    } catch (CharacterCodingException expected) {
+    }
+  }
+
+  /**
+   * 与jar工具一样写入目录的条目，类加载器通过目录条目找到jar包中的目录
+   */
+  private File jar(Map<String, byte[]> entries) throws IOException {
+    final File jar = folder.newFile();
+    final Set<String> directories = Sets.newHashSet();
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        final String name = entry.getKey();
+        for (int slash = name.indexOf('/'); slash >= 0; slash = name.indexOf('/', slash + 1)) {
+          if (directories.add(name.substring(0, slash + 1))) {
+            out.putNextEntry(new JarEntry(name.substring(0, slash + 1)));
+            out.closeEntry();
+          }
+        }
+        out.putNextEntry(new JarEntry(entry.getKey()));
+        out.write(entry.getValue());
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  private static List<String> lines(DictionarySource source) throws IOException {
+    final List<String> lines = Lists.newArrayList();
+    try (BufferedReader in = source.openReader()) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private static byte[] utf8(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,102 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * directTokenStream直接读取内存中的输入，分词结果与通过Reader读取相同
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class DirectTokenStreamTest {
+
+  private static final SortedSet<String> WORDS = ImmutableSortedSet.of("奥迪", "湖北", "工业", "大学", "大学生", "工业大学");
+  private static final String TEXT = "奥迪Q湖北工业大学生\nabc 123😀工业";
+  private static final String OTHER = "大学生湖北";
+
+  @Test
+  public void stringInputIsReadDirectly() throws IOException {
+    final CompleteFSTAnalyzer complete = CompleteFSTAnalyzer.create(WORDS, false);
+    final ShortestFSTAnalyzer shortest = ShortestFSTAnalyzer.create(WORDS, false);
+    final PrefixWordFSTAnalyzer prefixWord = PrefixWordFSTAnalyzer.create(WORDS, false);
+    final PrefixWordFirstAnalyzer prefixWordFirst = PrefixWordFirstAnalyzer.create(WORDS, false);
+    final MaxCountAnalyzer maxCount = MaxCountAnalyzer.create(WORDS, false);
+    for (Analyzer analyzer : Arrays.<Analyzer>asList(complete, shortest, prefixWord, prefixWordFirst, maxCount)) {
+      final List<String> expected = Tokens.of(analyzer, TEXT);
+      //lucene的tokenStream(String, String)按普通的Reader读取
+      try (TokenStream stream = analyzer.tokenStream("test", TEXT)) {
+        stream.reset();
+        assertFalse(((BaseTokenizer) stream).directInput());
+        stream.end();
+      }
+      try (TokenStream stream = directTokenStream(analyzer, TEXT)) {
+        assertEquals(expected, readDirect(stream));
+      }
+    }
+  }
+
+  /**
+   * 同一个线程中复用组件里的Reader，每次分词都切换到新的输入
+   */
+  @Test
+  public void reusesReaderAcrossInputs() throws IOException {
+    final CompleteFSTAnalyzer analyzer = CompleteFSTAnalyzer.create(WORDS, false);
+    final List<String> text = Tokens.of(analyzer, TEXT);
+    final List<String> other = Tokens.of(analyzer, OTHER);
+    for (int i = 0; i < 3; i++) {
+      try (TokenStream stream = analyzer.directTokenStream("test", TEXT)) {
+        assertEquals(text, readDirect(stream));
+      }
+      try (TokenStream stream = analyzer.directTokenStream("test", new StringBuilder(OTHER))) {
+        assertEquals(other, readDirect(stream));
+      }
+      final char[] chars = ("##" + OTHER).toCharArray();
+      try (TokenStream stream = analyzer.directTokenStream("test", CharBuffer.wrap(chars, 2, OTHER.length()))) {
+        assertEquals(other, readDirect(stream));
+      }
+    }
+  }
+
+  @Test
+  public void otherTokenizersMatchReaderInput() throws IOException {
+    final MaxCountAnalyzer ahoCorasick = MaxCountAnalyzer.create(AhoCorasickAutomaton.create(WORDS));
+    final MaxProbabilityAnalyzer maxProbability = MaxProbabilityAnalyzer.create(WeightedDictionary.create(
+            ImmutableMap.of("奥迪", 10L, "湖北", 10L, "工业大学", 5L, "大学生", 8L, "工业", 3L)));
+    final List<String> ahoCorasickTokens = Tokens.of(ahoCorasick, TEXT);
+    final List<String> maxProbabilityTokens = Tokens.of(maxProbability, TEXT);
+    for (int i = 0; i < 2; i++) {
+      try (TokenStream stream = ahoCorasick.directTokenStream("test", TEXT)) {
+        assertEquals(ahoCorasickTokens, Tokens.read(stream));
+      }
+      try (TokenStream stream = maxProbability.directTokenStream("test", TEXT)) {
+        assertEquals(maxProbabilityTokens, Tokens.read(stream));
+      }
+    }
+  }
+
+  private static TokenStream directTokenStream(Analyzer analyzer, String text) throws IOException {
+    return DirectComponents.tokenStream(analyzer, "test", text);
+  }
+
+  /**
+   * 读取词条，并确认输入是直接读取的
+   */
+  private static List<String> readDirect(TokenStream stream) throws IOException {
+    final List<String> tokens = Tokens.read(stream);
+    assertTrue(((BaseTokenizer) stream).directInput());
+    return tokens;
+  }
+}
@@ -0,0 +1,131 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 双数组trie与FST中的词条一致，分词结果与FST词典相同
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class DoubleArrayTrieTest {
+
+  private final Random random = new Random(31);
+
+  @Test
+  public void tokenizesLikeFST() throws IOException {
+    for (int i = 0; i < 30; i++) {
+      final SortedSet<String> words = Dictionaries.randomWords(random, 1 + random.nextInt(300), 5);
+      final FST<CharsRef> fst = FSTFactory.create(words);
+      final DoubleArrayTrie trie = DoubleArrayTrie.create(fst);
+      assertEquals(words.size(), count(trie, words));
+      for (int j = 0; j < 10; j++) {
+        final String text = Dictionaries.randomText(random, random.nextInt(60));
+        assertEquals(text, Tokens.of(MaxCountAnalyzer.create(fst, false), text),
+                Tokens.of(MaxCountAnalyzer.create(trie, false), text));
+        assertEquals(text, Tokens.of(CompleteFSTAnalyzer.create(fst, true), text),
+                Tokens.of(CompleteFSTAnalyzer.create(trie, true), text));
+      }
+    }
+  }
+
+  /**
+   * 从FST创建和从任意顺序、有重复的词条创建得到相同的trie
+   */
+  @Test
+  public void createsFromFSTOrWords() throws IOException {
+    final SortedSet<String> words = Dictionaries.randomWords(random, 500, 5);
+    final List<String> shuffled = Lists.newArrayList(words);
+    shuffled.addAll(Lists.newArrayList(words).subList(0, 100));
+    shuffled.add("");
+    Collections.shuffle(shuffled, random);
+    final DoubleArrayTrie fromWords = DoubleArrayTrie.create(shuffled);
+    final DoubleArrayTrie fromCodePoints = DoubleArrayTrie.create(FSTFactory.create(words));
+    final DoubleArrayTrie fromBytes = DoubleArrayTrie.create(FSTFactory.create(words, FST.INPUT_TYPE.BYTE1));
+    for (DoubleArrayTrie trie : Arrays.asList(fromWords, fromCodePoints, fromBytes)) {
+      assertEquals(fromWords.size(), trie.size());
+      assertEquals(fromWords.sizeInBytes(), trie.sizeInBytes());
+      assertEquals(words.size(), count(trie, words));
+    }
+  }
+
+  /**
+   * 每个状态的父状态和转移编号与创建时一致，Aho-Corasick自动机依赖这两个方法
+   */
+  @Test
+  public void parentsAndCodesAreConsistent() {
+    final SortedSet<String> words = Dictionaries.randomWords(random, 1000, 6);
+    final DoubleArrayTrie trie = DoubleArrayTrie.create(words);
+    for (String word : words) {
+      int state = DoubleArrayTrie.ROOT;
+      for (int i = 0; i < word.length(); i = word.offsetByCodePoints(i, 1)) {
+        final int code = trie.code(word.codePointAt(i));
+        assertTrue(code > 0);
+        final int next = trie.transition(state, code);
+        assertTrue(next > 0);
+        assertEquals(state, trie.parent(next));
+        assertEquals(code, trie.code(state, next));
+        state = next;
+      }
+      assertTrue(trie.isFinal(state));
+    }
+  }
+
+  /**
+   * 字母表稀疏、包含BMP的两端和最大的增补字符，字母表外的字符不能匹配
+   */
+  @Test
+  public void sparseAlphabet() throws IOException {
+    final List<String> words = Arrays.asList("a", "a\uFFFF", "\uFFFF", new String(Character.toChars(0x10FFFF)),
+            "湖" + new String(Character.toChars(0x20000)) + "北", "\u0001");
+    final DoubleArrayTrie trie = DoubleArrayTrie.create(words);
+    assertEquals(words.size(), count(trie, words));
+    for (String absent : Arrays.asList("b", "\uFFFE", new String(Character.toChars(0x10FFFE)), "湖北", "a\u0001")) {
+      assertFalse(absent, contains(trie, absent));
+    }
+    assertEquals(Lists.newArrayList("a\uFFFF@0-2", "a@0-1", "\uFFFF@1-2"),
+            Tokens.of(MaxCountAnalyzer.create(trie, false), "a\uFFFF"));
+  }
+
+  @Test
+  public void emptyTrieMatchesNothing() throws IOException {
+    final DoubleArrayTrie trie = DoubleArrayTrie.create(Collections.<String>emptyList());
+    assertFalse(contains(trie, "湖"));
+    assertEquals(Lists.newArrayList("湖@0-1", "北@1-2"), Tokens.of(MaxCountAnalyzer.create(trie, false), "湖北"));
+  }
+
+  private static int count(DoubleArrayTrie trie, Iterable<String> words) throws IOException {
+    int count = 0;
+    for (String word : words) {
+      if (contains(trie, word)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static boolean contains(Dictionary dictionary, String word) throws IOException {
+    final Matcher matcher = dictionary.matcher();
+    matcher.reset();
+    for (int i = 0; i < word.length(); i = word.offsetByCodePoints(i, 1)) {
+      if (!matcher.match(word.codePointAt(i))) {
+        return false;
+      }
+    }
+    return matcher.isFinal();
+  }
+}
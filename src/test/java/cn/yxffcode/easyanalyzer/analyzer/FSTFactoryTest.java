@@ -0,0 +1,172 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexFormatTooNewException;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.Util;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 以码点作为边标签创建FST，增补字符是一条边；编译后的二进制词典保存后加载的结果相同，损坏的文件被拒绝
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class FSTFactoryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * 增补字符在字符串的默认排序中小于U+E000到U+FFFF的字符，创建时按码点重新排序
+   */
+  @Test
+  public void buildsInCodePointOrder() throws IOException {
+    final SortedSet<String> words = Sets.newTreeSet(Arrays.asList("Ａ", "𠀀", "𠀀湖", "湖", "😀", "a"));
+    final List<String> expected = Lists.newArrayList(words);
+    Collections.sort(expected, CODE_POINT_ORDER);
+    assertTrue(!expected.equals(Lists.newArrayList(words)));
+    assertEquals(expected, Dictionaries.words(FSTFactory.create(words)));
+    assertEquals(expected, Dictionaries.words(FSTFactory.create(words, FST.INPUT_TYPE.BYTE1)));
+  }
+
+  @Test
+  public void labelsAreCodePoints() throws IOException {
+    final FST<CharsRef> fst = FSTFactory.create(Sets.newTreeSet(Arrays.asList("𠀀湖", "湖北")));
+    assertEquals(FST.INPUT_TYPE.BYTE4, fst.inputType);
+    final IntsRefBuilder scratch = new IntsRefBuilder();
+    assertNotNull(Util.get(fst, Util.toUTF32("𠀀湖", scratch)));
+    assertNotNull(Util.get(fst, Util.toUTF32("湖北", scratch)));
+    //代理对不会被拆成两条边
+    scratch.clear();
+    scratch.append(0xD840);
+    scratch.append(0xDC00);
+    scratch.append('湖');
+    assertNull(Util.get(fst, scratch.get()));
+  }
+
+  @Test
+  public void tokenizesSupplementaryCharacters() throws IOException {
+    final SortedSet<String> words = Sets.newTreeSet(Arrays.asList("𠀀湖", "😀"));
+    final List<String> expected = Lists.newArrayList("湖@0-1", "𠀀湖@1-4", "😀@4-6");
+    assertEquals(expected, Tokens.of(CompleteFSTAnalyzer.create(FSTFactory.create(words), false), "湖𠀀湖😀"));
+    assertEquals(expected, Tokens.of(CompleteFSTAnalyzer.create(
+            FSTFactory.create(words, FST.INPUT_TYPE.BYTE1), false), "湖𠀀湖😀"));
+  }
+
+  /**
+   * 码点标签和UTF-8字节标签的FST分词结果相同
+   */
+  @Test
+  public void byteLabelsTokenizeLikeCodePoints() throws IOException {
+    final Random random = new Random(17);
+    for (int i = 0; i < 50; i++) {
+      final SortedSet<String> words = Dictionaries.randomWords(random, 1 + random.nextInt(100), 4);
+      final FST<CharsRef> codePoints = FSTFactory.create(words);
+      final FST<CharsRef> bytes = FSTFactory.create(words, FST.INPUT_TYPE.BYTE1);
+      for (int j = 0; j < 10; j++) {
+        final String text = Dictionaries.randomText(random, random.nextInt(50));
+        assertEquals(text, Tokens.of(MaxCountAnalyzer.create(codePoints, false), text),
+                Tokens.of(MaxCountAnalyzer.create(bytes, false), text));
+        assertEquals(text, Tokens.of(CompleteFSTAnalyzer.create(codePoints, true), text),
+                Tokens.of(CompleteFSTAnalyzer.create(bytes, true), text));
+      }
+    }
+  }
+
+  @Test
+  public void savedDictionaryRoundTrips() throws IOException {
+    final SortedSet<String> words = Dictionaries.randomWords(new Random(19), 2000, 5);
+    for (FST.INPUT_TYPE inputType : Arrays.asList(FST.INPUT_TYPE.BYTE4, FST.INPUT_TYPE.BYTE1)) {
+      final File file = new File(folder.getRoot(), inputType + ".fst");
+      //覆盖已有的文件
+      FSTFactory.save(FSTFactory.create(Sets.newTreeSet(Arrays.asList("湖北"))), file);
+      FSTFactory.save(FSTFactory.create(words, inputType), file);
+      assertFalse(new File(file.getPath() + ".tmp").exists());
+      final FST<CharsRef> loaded = FSTFactory.load(file);
+      assertEquals(inputType, loaded.inputType);
+      assertEquals(Lists.newArrayList(words), Dictionaries.words(loaded));
+      assertEquals(FSTFactory.maxWordLength(FSTFactory.create(words, inputType)), FSTFactory.maxWordLength(loaded));
+    }
+  }
+
+  @Test
+  public void loadsFromClasspath() throws IOException {
+    final SortedSet<String> words = Sets.newTreeSet(Arrays.asList("湖北", "工业", "湖北工业大学"));
+    final File dir = folder.newFolder("dict");
+    FSTFactory.save(FSTFactory.create(words), new File(dir, "dict.fst"));
+    final ClassLoader classLoader = new URLClassLoader(new URL[]{folder.getRoot().toURI().toURL()}, null);
+    final FST<CharsRef> fst = FSTFactory.create("dict/dict.fst", classLoader);
+    assertEquals(Lists.newArrayList(words), Dictionaries.words(fst));
+    assertEquals(Lists.newArrayList("湖北工业大学@0-6"), Tokens.of(CompleteFSTAnalyzer.create(fst, false), "湖北工业大学"));
+  }
+
+  @Test
+  public void rejectsCorruptFiles() throws IOException {
+    final File file = folder.newFile("dict.fst");
+    FSTFactory.save(FSTFactory.create(Dictionaries.randomWords(new Random(23), 200, 4)), file);
+    final byte[] bytes = Files.readAllBytes(file.toPath());
+    //FST的最后一个字节、校验和、文件头
+    for (int position : new int[]{bytes.length - 9, bytes.length - 1, 0}) {
+      final byte[] corrupt = bytes.clone();
+      corrupt[position] ^= 1;
+      assertCorrupt(corrupt);
+    }
+    assertCorrupt(Arrays.copyOf(bytes, bytes.length - 4));
+  }
+
+  private void assertCorrupt(byte[] bytes) throws IOException {
+    try {
+      FSTFactory.load(new ByteArrayInputStream(bytes), "corrupt");
+      fail();
+    } catch (CorruptIndexException expected) {
+    }
+    //内存映射的词典在预读时校验
+    final File file = folder.newFile();
+    Files.write(file.toPath(), bytes);
+    try {
+      FSTFactory.map(file, true);
+      fail();
+    } catch (CorruptIndexException expected) {
+    }
+  }
+
+  @Test
+  public void rejectsNewerVersion() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CodecUtil.writeHeader(new OutputStreamDataOutput(out), FSTFactory.CODEC_NAME, FSTFactory.VERSION_CURRENT + 1);
+    try {
+      FSTFactory.load(new ByteArrayInputStream(out.toByteArray()), "newer");
+      fail();
+    } catch (IndexFormatTooNewException expected) {
+    }
+  }
+}
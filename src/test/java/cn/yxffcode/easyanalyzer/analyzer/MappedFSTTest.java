@@ -0,0 +1,164 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 同一个保存的词典通过{@link FSTFactory#load(File)}和{@link FSTFactory#map(File, boolean)}加载，查找结果一致
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class MappedFSTTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void codePointLabelsMatchHeapFST() throws IOException {
+    compare(FST.INPUT_TYPE.BYTE4);
+  }
+
+  @Test
+  public void byteLabelsMatchHeapFST() throws IOException {
+    compare(FST.INPUT_TYPE.BYTE1);
+  }
+
+  private void compare(FST.INPUT_TYPE inputType) throws IOException {
+    final Random random = new Random(11);
+    final SortedSet<String> words = Dictionaries.randomWords(random, 5000, 6);
+    final File file = folder.newFile("dict.fst");
+    FSTFactory.save(FSTFactory.create(words, inputType), file);
+
+    //不展开节点，只通过lucene的FST查找
+    final Dictionary loaded = FSTDictionary.create(FSTFactory.load(file), 0);
+    final MappedFST mapped = FSTFactory.map(file, false);
+    assertEquals(inputType, mapped.inputType());
+    final List<String> probes = Lists.newArrayList(words);
+    for (int i = 0; i < 5000; i++) {
+      probes.add(Dictionaries.randomText(random, 1 + random.nextInt(7)));
+    }
+    compare(loaded, mapped, probes);
+    compare(loaded, FSTFactory.map(file, true), probes);
+  }
+
+  /**
+   * 每个探测串逐个字符匹配，每一步匹配是否成功以及是否是完整的词都相同
+   */
+  private static void compare(Dictionary expected, Dictionary actual, List<String> probes) throws IOException {
+    final Matcher expectedMatcher = expected.matcher();
+    final Matcher actualMatcher = actual.matcher();
+    for (String probe : probes) {
+      expectedMatcher.reset();
+      actualMatcher.reset();
+      for (int i = 0; i < probe.length(); i += Character.charCount(probe.codePointAt(i))) {
+        final int codePoint = probe.codePointAt(i);
+        final boolean matched = expectedMatcher.match(codePoint);
+        assertEquals(probe, matched, actualMatcher.match(codePoint));
+        if (!matched) {
+          break;
+        }
+        assertEquals(probe, expectedMatcher.isFinal(), actualMatcher.isFinal());
+      }
+    }
+  }
+
+  @Test
+  public void rejectsOtherOutputs() throws IOException {
+    final File file = folder.newFile("long.fst");
+    write(file, FSTFactory.VERSION_CURRENT, "PositiveIntOutputs", longFST());
+    try {
+      FSTFactory.load(file);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      FSTFactory.map(file, true);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test(expected = IllegalArgumentException.class)
+  public void saveRejectsOtherOutputs() throws IOException {
+    final FST fst = longFST();
+    FSTFactory.save((FST<CharsRef>) fst, folder.newFile("long.fst"));
+  }
+
+  /**
+   * 没有记录输出类型的第一版文件仍然可以加载
+   */
+  @Test
+  public void loadsFirstVersion() throws IOException {
+    final SortedSet<String> words = Dictionaries.randomWords(new Random(3), 100, 4);
+    final File file = folder.newFile("v1.fst");
+    write(file, FSTFactory.VERSION_START, null, FSTFactory.create(words));
+    assertEquals(Lists.newArrayList(words), Dictionaries.words(FSTFactory.load(file)));
+    final Dictionary loaded = FSTDictionary.create(FSTFactory.load(file), 0);
+    compare(loaded, FSTFactory.map(file, true), Lists.newArrayList(words));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void readerRejectsPositionBeyondInt() {
+    new MappedFST.MappedBytesReader(ByteBuffer.allocate(16), 0, 16).setPosition(1L << 32);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void readerRejectsSkipBeforeStart() {
+    final MappedFST.MappedBytesReader reader = new MappedFST.MappedBytesReader(ByteBuffer.allocate(16), 0, 16);
+    reader.setPosition(3);
+    reader.skipBytes(Integer.MAX_VALUE + 10L);
+  }
+
+  private static FST<Long> longFST() throws IOException {
+    final Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE4, PositiveIntOutputs.getSingleton());
+    final IntsRefBuilder scratch = new IntsRefBuilder();
+    builder.add(Util.toUTF32("湖北", scratch), 1L);
+    builder.add(Util.toUTF32("湖北省", scratch), 2L);
+    return builder.finish();
+  }
+
+  /**
+   * 按{@link FSTFactory#save(FST, File)}的格式写入，可以指定版本和输出类型
+   *
+   * @param outputs 为null时不写入输出类型
+   */
+  private static void write(File file, int version, String outputs, FST<?> fst) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      final CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+      final DataOutput dataOutput = new OutputStreamDataOutput(checked);
+      CodecUtil.writeHeader(dataOutput, FSTFactory.CODEC_NAME, version);
+      if (outputs != null) {
+        dataOutput.writeString(outputs);
+      }
+      fst.save(dataOutput);
+      new OutputStreamDataOutput(out).writeLong(checked.getChecksum().getValue());
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 每种词典的匹配器都与词条集合一致，{@link Matcher#undo()}回到匹配之前的状态
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class MatcherTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Random random = new Random(7);
+  private final SortedSet<String> words = Dictionaries.randomWords(random, 500, 4);
+
+  @Test
+  public void fstDictionary() throws IOException {
+    final FST<CharsRef> fst = FSTFactory.create(words);
+    check(FSTDictionary.create(fst, 0), words);
+    check(FSTDictionary.create(fst, Long.MAX_VALUE), words);
+    check(FSTDictionary.create(FSTFactory.create(words, FST.INPUT_TYPE.BYTE1), 0), words);
+  }
+
+  @Test
+  public void mappedFST() throws IOException {
+    final File file = folder.newFile("dict.fst");
+    FSTFactory.save(FSTFactory.create(words), file);
+    check(FSTFactory.map(file, true), words);
+  }
+
+  @Test
+  public void doubleArrayTrie() throws IOException {
+    check(DoubleArrayTrie.create(words), words);
+  }
+
+  @Test
+  public void taggedDictionary() throws IOException {
+    check(TaggedDictionary.create(Arrays.asList(Dictionaries.write(folder.newFile("tagged.dic"), words))), words);
+  }
+
+  @Test
+  public void weightedDictionary() throws IOException {
+    final Map<String, Long> weights = Maps.newHashMap();
+    for (String word : words) {
+      weights.put(word, (long) word.length());
+    }
+    check(WeightedDictionary.create(weights), words);
+  }
+
+  @Test
+  public void overlayDictionary() throws IOException {
+    final List<String> list = Lists.newArrayList(words);
+    final OverlayDictionary dictionary = OverlayDictionary.create(FSTFactory.create(words), Integer.MAX_VALUE);
+    final Set<String> expected = Sets.newHashSet(words);
+    final List<String> added = Lists.newArrayList(Dictionaries.randomWords(random, 50, 5));
+    final List<String> removed = list.subList(0, list.size() / 4);
+    dictionary.add(added);
+    dictionary.remove(removed);
+    expected.addAll(added);
+    expected.removeAll(removed);
+    check(dictionary, expected);
+  }
+
+  /**
+   * 从随机文本的每个位置开始匹配，每一步先撤销再重新匹配
+   */
+  private void check(Dictionary dictionary, Set<String> expected) throws IOException {
+    final Matcher matcher = dictionary.current().matcher();
+    final List<String> texts = Lists.newArrayList(Iterables.limit(expected, 200));
+    for (int i = 0; i < 200; i++) {
+      texts.add(Dictionaries.randomText(random, 8));
+    }
+    for (String text : texts) {
+      for (int start = 0; start < text.length(); start = text.offsetByCodePoints(start, 1)) {
+        matcher.reset();
+        int end = start;
+        while (end < text.length()) {
+          final int codePoint = text.codePointAt(end);
+          final boolean finalBefore = matcher.isFinal();
+          if (!matcher.match(codePoint)) {
+            assertEquals(finalBefore, matcher.isFinal());
+            break;
+          }
+          matcher.undo();
+          assertEquals(finalBefore, matcher.isFinal());
+          assertTrue(matcher.match(codePoint));
+          end += Character.charCount(codePoint);
+          final String word = text.substring(start, end);
+          assertEquals(word, expected.contains(word), matcher.isFinal());
+        }
+        if (expected.contains(text.substring(start))) {
+          assertEquals(text.length(), end);
+        }
+      }
+    }
+  }
+}
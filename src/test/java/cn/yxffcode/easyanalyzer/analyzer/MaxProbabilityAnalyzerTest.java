@@ -0,0 +1,175 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.lucene.analysis.Analyzer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static cn.yxffcode.easyanalyzer.analyzer.BaseTokenizer.isEnglishChar;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 最大概率切分与蛮力枚举所有切分得到的最大概率相同
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class MaxProbabilityAnalyzerTest {
+
+  private static final double EPSILON = 1e-9;
+  private static final int[] SEPARATORS = {' ', '，', '\n', 0x1F600};
+
+  @Test
+  public void matchesBruteForce() throws IOException {
+    final Random random = new Random(37);
+    for (int i = 0; i < 200; i++) {
+      final Map<String, Long> frequencies = Maps.newHashMap();
+      for (String word : Dictionaries.randomWords(random, 1 + random.nextInt(30), 3)) {
+        frequencies.put(word, 1L + random.nextInt(1000));
+      }
+      final WeightedDictionary dictionary = WeightedDictionary.create(frequencies);
+      final Analyzer analyzer = MaxProbabilityAnalyzer.create(dictionary);
+      for (int j = 0; j < 10; j++) {
+        final String text = text(random);
+        final List<String> tokens = Tokens.of(analyzer, text);
+        int tokenIndex = 0;
+        for (int[] sentence : sentences(text)) {
+          //按起止位置取出这个句子中的词条
+          final List<String> pieces = Lists.newArrayList();
+          int position = sentence[0];
+          while (position < sentence[1]) {
+            final String token = tokens.get(tokenIndex++);
+            final int at = token.lastIndexOf('@');
+            final int dash = token.lastIndexOf('-');
+            assertEquals(text + ": " + tokens, position, Integer.parseInt(token.substring(at + 1, dash)));
+            position = Integer.parseInt(token.substring(dash + 1));
+            pieces.add(token.substring(0, at));
+          }
+          assertEquals(text + ": " + tokens, sentence[1], position);
+          final String content = text.substring(sentence[0], sentence[1]);
+          final double expected = bestScore(dictionary, frequencies, content, 0);
+          double actual = 0;
+          int offset = 0;
+          for (String piece : pieces) {
+            actual += score(dictionary, frequencies, content, offset, offset + piece.length());
+            offset += piece.length();
+          }
+          assertEquals(text + ": " + tokens, expected, actual, EPSILON);
+        }
+        assertEquals(text + ": " + tokens, tokens.size(), tokenIndex);
+      }
+    }
+  }
+
+  /**
+   * 过长的句子按最大长度截断，截断后的部分继续切分，位置连续
+   */
+  @Test
+  public void splitsLongSentences() throws IOException {
+    final Map<String, Long> frequencies = Maps.newHashMap();
+    frequencies.put("湖湖", 100L);
+    final Analyzer analyzer = MaxProbabilityAnalyzer.create(WeightedDictionary.create(frequencies));
+    final int length = MaxProbabilityAnalyzer.DAGTokenizer.MAX_SENTENCE_LENGTH + 1000;
+    final List<String> tokens = Tokens.of(analyzer, Strings.repeat("湖", length));
+    assertEquals(length / 2, tokens.size());
+    assertEquals("湖湖@" + (length - 2) + '-' + length, tokens.get(tokens.size() - 1));
+  }
+
+  /**
+   * 枚举从start开始的所有切分
+   *
+   * @return 最大的对数概率，没有切分时为负无穷
+   */
+  private static double bestScore(WeightedDictionary dictionary, Map<String, Long> frequencies, String sentence,
+                                  int start) {
+    if (start == sentence.length()) {
+      return 0;
+    }
+    double best = Double.NEGATIVE_INFINITY;
+    for (int end = sentence.offsetByCodePoints(start, 1); end <= sentence.length();
+         end = end == sentence.length() ? end + 1 : sentence.offsetByCodePoints(end, 1)) {
+      final double score = score(dictionary, frequencies, sentence, start, end);
+      if (score != Double.NEGATIVE_INFINITY) {
+        best = Math.max(best, score + bestScore(dictionary, frequencies, sentence, end));
+      }
+    }
+    return best;
+  }
+
+  /**
+   * 一个词的对数概率：词典中的词按词频，词典外的单字、从一段开头开始的整段英文字母或数字按词频为1，
+   * 两者都可以时取较大的
+   */
+  private static double score(WeightedDictionary dictionary, Map<String, Long> frequencies, String sentence,
+                              int start, int end) {
+    double score = Double.NEGATIVE_INFINITY;
+    final Long frequency = frequencies.get(sentence.substring(start, end).toLowerCase());
+    if (frequency != null) {
+      score = dictionary.logProbability(frequency);
+    }
+    if (isUnknownWord(sentence, start, end)) {
+      score = Math.max(score, dictionary.logProbability(1));
+    }
+    return score;
+  }
+
+  private static boolean isUnknownWord(String sentence, int start, int end) {
+    final int first = sentence.codePointAt(start);
+    final boolean english = isEnglishChar(first);
+    if (!english && !Character.isDigit(first)) {
+      return end == sentence.offsetByCodePoints(start, 1);
+    }
+    if (start > 0 && sameKind(sentence.codePointBefore(start), english)) {
+      return false;
+    }
+    for (int i = start; i < end; i = sentence.offsetByCodePoints(i, 1)) {
+      if (!sameKind(sentence.codePointAt(i), english)) {
+        return false;
+      }
+    }
+    return end == sentence.length() || !sameKind(sentence.codePointAt(end), english);
+  }
+
+  private static boolean sameKind(int codePoint, boolean english) {
+    return english ? isEnglishChar(codePoint) : Character.isDigit(codePoint);
+  }
+
+  /**
+   * @return 每个句子（连续的字母和数字）的起止位置
+   */
+  private static List<int[]> sentences(String text) {
+    final List<int[]> sentences = Lists.newArrayList();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i = i == text.length() ? i + 1 : text.offsetByCodePoints(i, 1)) {
+      final boolean letter = i < text.length() && Character.isLetterOrDigit(text.codePointAt(i));
+      if (letter && start < 0) {
+        start = i;
+      } else if (!letter && start >= 0) {
+        sentences.add(new int[]{start, i});
+        start = -1;
+      }
+    }
+    return sentences;
+  }
+
+  /**
+   * 由较短的句子和分隔符组成，句子中有大写的英文字母
+   */
+  private static String text(Random random) {
+    final StringBuilder text = new StringBuilder();
+    final int sentences = random.nextInt(4);
+    for (int i = 0; i < sentences; i++) {
+      String sentence = Dictionaries.randomText(random, 1 + random.nextInt(9));
+      if (random.nextInt(4) == 0) {
+        sentence = sentence.toUpperCase();
+      }
+      text.append(sentence).appendCodePoint(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+    }
+    return text.toString();
+  }
+}
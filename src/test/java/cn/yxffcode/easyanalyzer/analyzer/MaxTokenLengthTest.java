@@ -0,0 +1,135 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.ImmutableSortedSet;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gaohang on 15/12/27.
+ */
+public class MaxTokenLengthTest {
+
+  private static final int MAX_TOKEN_LENGTH = 8;
+  /**
+   * 足以让不限制长度的分词器的缓冲区扩容很多次
+   */
+  private static final int LONG_RUN = 1 << 20;
+  /**
+   * 限制长度后缓冲区的上限，不随输入增长
+   */
+  private static final int BUFFER_CEILING = 4096;
+
+  private static CompleteFSTAnalyzer complete() throws IOException {
+    final CompleteFSTAnalyzer analyzer = CompleteFSTAnalyzer.create(ImmutableSortedSet.of("湖北", "工业"), false);
+    analyzer.setMaxTokenLength(MAX_TOKEN_LENGTH);
+    return analyzer;
+  }
+
+  private static MaxCountAnalyzer ahoCorasick() {
+    final MaxCountAnalyzer analyzer = MaxCountAnalyzer.create(AhoCorasickAutomaton.create(Arrays.asList("湖北", "工业")));
+    analyzer.setMaxTokenLength(MAX_TOKEN_LENGTH);
+    return analyzer;
+  }
+
+  @Test
+  public void splitsLongLetterRun() throws IOException {
+    assertEquals(Arrays.asList("aaaaaaaa@0-8", "aaaaaaaa@8-16", "aaaa@16-20", "湖北@20-22"),
+            Tokens.of(complete(), repeat('a', 20) + "湖北"));
+    assertEquals(Arrays.asList("aaaaaaaa@0-8", "aaaaaaaa@8-16", "aaaa@16-20", "湖北@20-22"),
+            Tokens.of(ahoCorasick(), repeat('a', 20) + "湖北"));
+  }
+
+  @Test
+  public void splitsLongDigitRun() throws IOException {
+    assertEquals(Arrays.asList("湖北@0-2", "11111111@3-11", "111@11-14"), Tokens.of(complete(), "湖北 " + repeat('1', 11)));
+    assertEquals(Arrays.asList("湖北@0-2", "11111111@3-11", "111@11-14"),
+            Tokens.of(ahoCorasick(), "湖北 " + repeat('1', 11)));
+  }
+
+  @Test
+  public void limitIsAppliedToReusedComponents() throws IOException {
+    final CompleteFSTAnalyzer analyzer = CompleteFSTAnalyzer.create(ImmutableSortedSet.of("湖北"), false);
+    assertEquals(Arrays.asList("aaaaaaaaaa@0-10"), Tokens.of(analyzer, repeat('a', 10)));
+    analyzer.setMaxTokenLength(MAX_TOKEN_LENGTH);
+    assertEquals(Arrays.asList("aaaaaaaa@0-8", "aa@8-10"), Tokens.of(analyzer, repeat('a', 10)));
+  }
+
+  @Test
+  public void bufferStaysBoundedOnLongLetterRun() throws IOException {
+    assertBounded(complete(), new Tokens.RepeatReader("湖北", 'x', LONG_RUN, "工业"), LONG_RUN / MAX_TOKEN_LENGTH + 2);
+    assertBounded(ahoCorasick(), new Tokens.RepeatReader("湖北", 'x', LONG_RUN, "工业"), LONG_RUN / MAX_TOKEN_LENGTH + 2);
+  }
+
+  @Test
+  public void bufferStaysBoundedOnLongDigitRun() throws IOException {
+    assertBounded(complete(), new Tokens.RepeatReader("", '7', LONG_RUN, "湖北"), LONG_RUN / MAX_TOKEN_LENGTH + 1);
+  }
+
+  @Test
+  public void bufferStaysBoundedOnBlankLines() throws IOException {
+    final List<String> tokens = assertBounded(complete(), new Tokens.RepeatReader("工业", '\n', LONG_RUN, "湖北"), 2);
+    assertEquals(Arrays.asList("工业@0-2", "湖北@" + (LONG_RUN + 2) + '-' + (LONG_RUN + 4)), tokens);
+    assertBounded(ahoCorasick(), new Tokens.RepeatReader("工业", '\n', LONG_RUN, "湖北"), 2);
+  }
+
+  /**
+   * 一个词条的中间有很多换行时，在读取了两倍的长度限制后结束匹配
+   */
+  @Test
+  public void bufferStaysBoundedOnBlankLinesInsideMatch() throws IOException {
+    final CompleteFSTAnalyzer analyzer = complete();
+    try (TokenStream stream = analyzer.tokenStream("test", new Tokens.RepeatReader("湖", '\n', LONG_RUN, "北"))) {
+      stream.reset();
+      while (stream.incrementToken()) {
+        assertTrue(((BaseTokenizer) stream).bufferCapacity() <= BUFFER_CEILING);
+      }
+      stream.end();
+      assertTrue(((BaseTokenizer) stream).bufferCapacity() <= BUFFER_CEILING);
+    }
+  }
+
+  private static List<String> assertBounded(Analyzer analyzer, Reader reader, int expectedTokens) throws IOException {
+    final List<String> tokens;
+    try (TokenStream stream = analyzer.tokenStream("test", reader)) {
+      final List<String> read = new ArrayList<>();
+      final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+      final OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+      stream.reset();
+      int lastEnd = 0;
+      while (stream.incrementToken()) {
+        assertTrue(termAtt.length() <= MAX_TOKEN_LENGTH * 2);
+        assertTrue(offsetAtt.startOffset() >= lastEnd);
+        lastEnd = offsetAtt.endOffset();
+        read.add(termAtt.toString() + '@' + offsetAtt.startOffset() + '-' + offsetAtt.endOffset());
+      }
+      stream.end();
+      assertTrue("buffer grew to " + bufferCapacity(stream), bufferCapacity(stream) <= BUFFER_CEILING);
+      tokens = read;
+    }
+    assertEquals(expectedTokens, tokens.size());
+    return tokens;
+  }
+
+  private static int bufferCapacity(TokenStream stream) {
+    return stream instanceof BaseTokenizer ? ((BaseTokenizer) stream).bufferCapacity()
+            : ((AhoCorasickTokenizer) stream).bufferCapacity();
+  }
+
+  private static String repeat(char c, int count) {
+    final char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+}
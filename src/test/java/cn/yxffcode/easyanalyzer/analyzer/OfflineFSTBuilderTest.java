@@ -0,0 +1,71 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 外部排序创建的FST与在内存中排序创建的FST包含相同的词条
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class OfflineFSTBuilderTest {
+
+  /**
+   * 排序内存的最小预算，词条的总字节数超过它的两倍，排序时一定会写出多个有序的临时文件再归并
+   */
+  private static final int RAM_BUFFER_MB = 1;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void spilledSortMatchesInMemoryBuild() throws IOException {
+    final Random random = new Random(11);
+    final List<String> first = Lists.newArrayList(Dictionaries.randomWords(random, 200000, 8));
+    final List<String> second = Lists.newArrayList(Dictionaries.randomWords(random, 100000, 8));
+    //文件内和文件间重复的行，大写字母、首尾空白和空行
+    first.addAll(first.subList(0, 20000));
+    first.addAll(second.subList(0, 20000));
+    first.add(" ABC ");
+    first.add("");
+    first.add("  ");
+    Collections.shuffle(first, random);
+    long bytes = 0;
+    for (String word : first) {
+      bytes += word.getBytes(StandardCharsets.UTF_8).length;
+    }
+    assertTrue(bytes > 2L * RAM_BUFFER_MB * 1024 * 1024);
+    final List<File> files = Arrays.asList(Dictionaries.write(folder.newFile("a.dic"), first),
+            Dictionaries.write(folder.newFile("b.dic"), second));
+    final File tempDirectory = folder.newFolder("sort");
+
+    final List<String> words = Dictionaries.words(OfflineFSTBuilder.create(RAM_BUFFER_MB, tempDirectory).build(files));
+    assertEquals(Dictionaries.words(FSTFactory.create(files)), words);
+    assertTrue(words.contains("abc"));
+    //临时文件都已经删除
+    assertArrayEquals(new String[0], tempDirectory.list());
+  }
+
+  @Test
+  public void emptyDictionaryBuildsNothing() throws IOException {
+    final File empty = Dictionaries.write(folder.newFile("empty.dic"), Arrays.asList("", " "));
+    final File tempDirectory = folder.newFolder("sort");
+    assertNull(OfflineFSTBuilder.create(RAM_BUFFER_MB, tempDirectory).build(Collections.singletonList(empty)));
+    assertArrayEquals(new String[0], tempDirectory.list());
+  }
+}
@@ -0,0 +1,196 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static cn.yxffcode.easyanalyzer.utils.StringUtils.CODE_POINT_ORDER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 叠加增量的词典与合并后的词典匹配结果相同，合并后增量被清空
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class OverlayDictionaryTest {
+
+  private final Random random = new Random(29);
+
+  @Test
+  public void compactionMatchesOverlay() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      final SortedSet<String> words = Dictionaries.randomWords(random, 50 + random.nextInt(200), 4);
+      final FST.INPUT_TYPE inputType = random.nextBoolean() ? FST.INPUT_TYPE.BYTE4 : FST.INPUT_TYPE.BYTE1;
+      try (OverlayDictionary dictionary = OverlayDictionary.create(FSTFactory.create(words, inputType),
+              Integer.MAX_VALUE)) {
+        final SortedSet<String> expected = Sets.newTreeSet(CODE_POINT_ORDER);
+        expected.addAll(words);
+        final List<String> probes = Lists.newArrayList(words);
+        modify(dictionary, expected, probes, words);
+        compare(expected, dictionary, probes);
+
+        final FST<CharsRef> merged = dictionary.compact().get();
+        assertEquals(0, dictionary.deltaSize());
+        assertEquals(inputType, merged.inputType);
+        assertEquals(Lists.newArrayList(expected), Dictionaries.words(merged));
+        compare(expected, dictionary, probes);
+
+        //合并后继续修改
+        modify(dictionary, expected, probes, expected);
+        compare(expected, dictionary, probes);
+        dictionary.compact().get();
+        compare(expected, dictionary, probes);
+      }
+    }
+  }
+
+  /**
+   * 合并开始后的修改不会被合并覆盖
+   */
+  @Test
+  public void keepsChangesMadeDuringCompaction() throws Exception {
+    final SortedSet<String> words = Dictionaries.randomWords(random, 2000, 5);
+    try (OverlayDictionary dictionary = OverlayDictionary.create(FSTFactory.create(words), Integer.MAX_VALUE)) {
+      final SortedSet<String> expected = Sets.newTreeSet(CODE_POINT_ORDER);
+      expected.addAll(words);
+      final List<String> probes = Lists.newArrayList(words);
+      modify(dictionary, expected, probes, words);
+      final Future<FST<CharsRef>> compaction = dictionary.compact();
+      //合并时再次修改同样的词条
+      final List<String> changed = Lists.newArrayList(expected).subList(0, 20);
+      dictionary.remove(changed);
+      expected.removeAll(changed);
+      dictionary.add("湖北工业大学");
+      expected.add("湖北工业大学");
+      probes.add("湖北工业大学");
+      compaction.get();
+      //无论合并在修改之前还是之后完成，增量中只剩下合并开始后修改的词条
+      assertTrue(dictionary.deltaSize() <= changed.size() + 1);
+      compare(expected, dictionary, probes);
+    }
+  }
+
+  @Test
+  public void compactsAtThreshold() throws Exception {
+    try (OverlayDictionary dictionary = OverlayDictionary.create(
+            FSTFactory.create(Sets.newTreeSet(Arrays.asList("湖北", "工业"))), 3)) {
+      dictionary.add("大学", "学生");
+      assertEquals(2, dictionary.deltaSize());
+      dictionary.remove("工业");
+      //达到阈值时已经开始合并，compact()返回同一个合并或者新的合并
+      dictionary.compact().get();
+      assertEquals(0, dictionary.deltaSize());
+      compare(Sets.newTreeSet(Arrays.asList("湖北", "大学", "学生")), dictionary,
+              Arrays.asList("湖北", "工业", "大学", "学生"));
+    }
+  }
+
+  /**
+   * 被删除的词只剩下前缀时，前缀也不再能匹配
+   */
+  @Test
+  public void prunesDeadPrefixes() throws Exception {
+    try (OverlayDictionary dictionary = OverlayDictionary.create(
+            FSTFactory.create(Sets.newTreeSet(Arrays.asList("湖北", "湖北工业大学", "工业"))))) {
+      dictionary.remove("湖北工业大学");
+      assertFalse(matches(dictionary, "湖北工"));
+      assertTrue(matches(dictionary, "湖北"));
+      dictionary.add("湖北工业");
+      assertTrue(matches(dictionary, "湖北工"));
+      assertFalse(matches(dictionary, "湖北工业大"));
+    }
+  }
+
+  @Test
+  public void rejectsEmptyCompaction() throws Exception {
+    try (OverlayDictionary dictionary = OverlayDictionary.create(
+            FSTFactory.create(Sets.newTreeSet(Arrays.asList("湖北"))))) {
+      dictionary.remove("湖北");
+      try {
+        dictionary.compact().get();
+        fail();
+      } catch (ExecutionException expected) {
+        assertTrue(expected.getCause() instanceof IllegalStateException);
+      }
+      //合并失败时增量保留
+      assertEquals(1, dictionary.deltaSize());
+      assertFalse(matches(dictionary, "湖北"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void rejectsCompactionAfterClose() throws IOException {
+    final OverlayDictionary dictionary = OverlayDictionary.create(
+            FSTFactory.create(Sets.newTreeSet(Arrays.asList("湖北"))));
+    dictionary.close();
+    dictionary.compact();
+  }
+
+  /**
+   * 随机删除一部分词条，增加一些新的词条
+   */
+  private void modify(OverlayDictionary dictionary, SortedSet<String> expected, List<String> probes,
+                      SortedSet<String> candidates) throws IOException {
+    final List<String> removed = Lists.newArrayList();
+    for (String word : candidates) {
+      if (random.nextInt(4) == 0) {
+        removed.add(word);
+      }
+    }
+    final List<String> added = Lists.newArrayList(Dictionaries.randomWords(random, 30, 5));
+    dictionary.remove(removed);
+    dictionary.add(added);
+    expected.removeAll(removed);
+    expected.addAll(added);
+    probes.addAll(added);
+  }
+
+  /**
+   * 与直接由词条创建的词典逐个字符比较匹配结果
+   */
+  private void compare(SortedSet<String> expected, Dictionary dictionary, List<String> probes) throws IOException {
+    final Matcher expectedMatcher = Dictionary.of(FSTFactory.create(expected)).matcher();
+    final Matcher actualMatcher = dictionary.current().matcher();
+    final List<String> all = Lists.newArrayList(probes);
+    for (int i = 0; i < 200; i++) {
+      all.add(Dictionaries.randomText(random, 1 + random.nextInt(5)));
+    }
+    for (String probe : all) {
+      expectedMatcher.reset();
+      actualMatcher.reset();
+      for (int i = 0; i < probe.length(); i = probe.offsetByCodePoints(i, 1)) {
+        final int codePoint = probe.codePointAt(i);
+        final boolean matched = expectedMatcher.match(codePoint);
+        assertEquals(probe, matched, actualMatcher.match(codePoint));
+        if (!matched) {
+          break;
+        }
+        assertEquals(probe, expectedMatcher.isFinal(), actualMatcher.isFinal());
+      }
+    }
+  }
+
+  private static boolean matches(Dictionary dictionary, String prefix) throws IOException {
+    final Matcher matcher = dictionary.current().matcher();
+    matcher.reset();
+    for (int i = 0; i < prefix.length(); i = prefix.offsetByCodePoints(i, 1)) {
+      if (!matcher.match(prefix.codePointAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,73 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author gaohang on 15/12/27.
+ */
+public class ParallelFSTBuilderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void buildsRepeatedlyWithOwnExecutor() throws IOException {
+    final SortedSet<String> words = Dictionaries.randomWords(new Random(1), 2000, 6);
+    final List<File> files = Arrays.asList(Dictionaries.write(folder.newFile("a.dic"), words));
+    final ParallelFSTBuilder builder = ParallelFSTBuilder.create(2);
+    final List<String> expected = Lists.newArrayList(words);
+    assertEquals(expected, Dictionaries.words(builder.build(files).fst()));
+    assertEquals(expected, Dictionaries.words(builder.build(files).fst()));
+  }
+
+  @Test
+  public void splitFilesMatchSequentialBuild() throws IOException {
+    final Random random = new Random(2);
+    final List<String> first = Lists.newArrayList(Dictionaries.randomWords(random, 3000, 5));
+    final List<String> second = Lists.newArrayList(Dictionaries.randomWords(random, 3000, 5));
+    //打乱顺序并加入重复的词条和大写字母
+    first.addAll(second.subList(0, 100));
+    first.add("ABC");
+    Collections.shuffle(first, random);
+    final List<File> files = Arrays.asList(Dictionaries.write(folder.newFile("a.dic"), first),
+            Dictionaries.write(folder.newFile("b.dic"), second));
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      final ParallelFSTBuilder.Result result = ParallelFSTBuilder.create(executor, 3, 256).build(files);
+      assertEquals(Dictionaries.words(FSTFactory.create(files)), Dictionaries.words(result.fst()));
+      assertTrue(result.stats().getShards() > files.size());
+      assertEquals(-1, result.stats().getPeakHeapBytes());
+      //外部传入的线程池不会被关闭
+      assertEquals(Dictionaries.words(result.fst()),
+              Dictionaries.words(ParallelFSTBuilder.create(executor, 3, 256).build(files).fst()));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void measuresPeakHeapWhenEnabled() throws IOException {
+    final List<File> files = Arrays.asList(Dictionaries.write(folder.newFile("a.dic"), Arrays.asList("湖北", "工业")));
+    final ParallelFSTBuilder builder = ParallelFSTBuilder.create(1);
+    builder.setMeasurePeakHeap(true);
+    final ParallelFSTBuilder.Result result = builder.build(files);
+    assertEquals(2, result.stats().getWords());
+    assertTrue(result.stats().getPeakHeapBytes() > 0);
+  }
+}
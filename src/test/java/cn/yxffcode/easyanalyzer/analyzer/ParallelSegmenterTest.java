@@ -0,0 +1,249 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import cn.yxffcode.easyanalyzer.collection.ImmutableIterator;
+import cn.yxffcode.easyanalyzer.io.IOReaderException;
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Tokenizer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 并行切分的结果与{@link Segmenter}一次切分的结果相同，工作任务领先读取的批次有上限
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class ParallelSegmenterTest {
+
+  private static final int PARALLELISM = 4;
+  private static final int BATCH_SIZE = 7;
+  private static final int MAX_PENDING_BATCHES = 6;
+
+  private final Random random = new Random(29);
+  private final ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void orderedBatchesMatchSegmenter() throws IOException {
+    final Analyzer analyzer = analyzer();
+    final List<String> documents = documents(500);
+    final ParallelSegmenter parallel = ParallelSegmenter.create(analyzer, executor, PARALLELISM, BATCH_SIZE,
+            MAX_PENDING_BATCHES);
+    int nextDocument = 0;
+    try (ParallelSegmenter.Results results = parallel.segment(documents, true)) {
+      while (results.hasNext()) {
+        final ParallelSegmenter.Batch batch = results.next();
+        assertEquals(nextDocument, batch.firstDocument());
+        assertBatch(analyzer, documents, batch);
+        nextDocument += batch.segmentation().documentCount();
+      }
+    }
+    assertEquals(documents.size(), nextDocument);
+  }
+
+  @Test
+  public void unorderedBatchesMatchSegmenter() throws IOException {
+    final Analyzer analyzer = analyzer();
+    final List<String> documents = documents(500);
+    final ParallelSegmenter parallel = ParallelSegmenter.create(analyzer, executor, PARALLELISM, BATCH_SIZE,
+            MAX_PENDING_BATCHES);
+    final BitSet seen = new BitSet();
+    try (ParallelSegmenter.Results results = parallel.segment(documents, false)) {
+      while (results.hasNext()) {
+        final ParallelSegmenter.Batch batch = results.next();
+        assertBatch(analyzer, documents, batch);
+        final int end = batch.firstDocument() + batch.segmentation().documentCount();
+        assertEquals(-1, seen.get(batch.firstDocument(), end).nextSetBit(0));
+        seen.set(batch.firstDocument(), end);
+      }
+    }
+    assertEquals(documents.size(), seen.cardinality());
+    assertEquals(documents.size(), seen.nextClearBit(0));
+  }
+
+  @Test
+  public void segmentAllMergesBatches() throws IOException {
+    final Analyzer analyzer = analyzer();
+    final List<String> documents = documents(300);
+    final Segmentation expected = Segmenter.create(analyzer).segment(documents);
+    final Segmentation merged = ParallelSegmenter.create(analyzer, executor, PARALLELISM, BATCH_SIZE,
+            MAX_PENDING_BATCHES).segmentAll(documents);
+    assertEquals(documents.size(), merged.documentCount());
+    assertEquals(-1, merged.termCount());
+    assertArrayEquals(expected.documentBounds(), merged.documentBounds());
+    assertArrayEquals(expected.startOffsets(), merged.startOffsets());
+    assertArrayEquals(expected.endOffsets(), merged.endOffsets());
+
+    final Segmentation empty = ParallelSegmenter.create(analyzer, executor, PARALLELISM, BATCH_SIZE,
+            MAX_PENDING_BATCHES).segmentAll(Lists.<String>newArrayList());
+    assertEquals(0, empty.documentCount());
+    assertEquals(0, empty.tokenCount());
+  }
+
+  /**
+   * 结果读取得慢时，工作任务最多领先maxPendingBatches个批次
+   */
+  @Test
+  public void slowConsumerBoundsPendingBatches() throws Exception {
+    final CountingDocuments documents = new CountingDocuments(100000);
+    final ParallelSegmenter parallel = ParallelSegmenter.create(analyzer(), executor, PARALLELISM, BATCH_SIZE,
+            MAX_PENDING_BATCHES);
+    try (ParallelSegmenter.Results results = parallel.segment(documents, true)) {
+      awaitTaken(documents, MAX_PENDING_BATCHES * BATCH_SIZE);
+      for (int read = 1; read <= 5; read++) {
+        assertTrue(results.hasNext());
+        results.next();
+        awaitTaken(documents, (MAX_PENDING_BATCHES + read) * BATCH_SIZE);
+      }
+    }
+  }
+
+  /**
+   * 关闭结果后，等待许可的工作任务结束，不再读取输入
+   */
+  @Test
+  public void closeCancelsPendingWorkers() throws Exception {
+    final ExecutorService workers = Executors.newFixedThreadPool(PARALLELISM);
+    final CountingDocuments documents = new CountingDocuments(100000);
+    final ParallelSegmenter parallel = ParallelSegmenter.create(analyzer(), workers, PARALLELISM, BATCH_SIZE,
+            MAX_PENDING_BATCHES);
+    final ParallelSegmenter.Results results = parallel.segment(documents, false);
+    awaitTaken(documents, MAX_PENDING_BATCHES * BATCH_SIZE);
+    results.close();
+    workers.shutdown();
+    assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(MAX_PENDING_BATCHES * BATCH_SIZE, documents.taken.get());
+
+    //关闭自己创建的线程池时，读取结果不会一直等待
+    final CountingDocuments more = new CountingDocuments(1000000);
+    final ParallelSegmenter own = ParallelSegmenter.create(analyzer(), 2);
+    final ParallelSegmenter.Results ownResults = own.segment(more, true);
+    ownResults.next();
+    own.close();
+    try {
+      while (ownResults.hasNext()) {
+        ownResults.next();
+      }
+    } catch (IOReaderException expected) {
+      assertTrue(expected.getCause() instanceof InterruptedException);
+    }
+    assertTrue(more.taken.get() < more.count);
+  }
+
+  @Test
+  public void failureSurfacesAsIOReaderException() throws IOException {
+    final Analyzer failing = new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(String fieldName) {
+        return new TokenStreamComponents(new Tokenizer() {
+          @Override
+          public boolean incrementToken() throws IOException {
+            if (input.read() == 'F') {
+              throw new IOException("failed document");
+            }
+            return false;
+          }
+        });
+      }
+    };
+    final List<String> documents = Lists.newArrayList();
+    for (int i = 0; i < 200; i++) {
+      documents.add(i == 150 ? "F" : "ok");
+    }
+    final ParallelSegmenter parallel = ParallelSegmenter.create(failing, executor, PARALLELISM, BATCH_SIZE,
+            MAX_PENDING_BATCHES);
+    try (ParallelSegmenter.Results results = parallel.segment(documents, true)) {
+      while (results.hasNext()) {
+        results.next();
+      }
+      fail();
+    } catch (IOReaderException expected) {
+      assertEquals("failed document", expected.getCause().getMessage());
+    }
+    try {
+      parallel.segmentAll(documents);
+      fail();
+    } catch (IOException expected) {
+      assertEquals("failed document", expected.getMessage());
+    }
+  }
+
+  private Analyzer analyzer() throws IOException {
+    final SortedSet<String> words = Dictionaries.randomWords(new Random(3), 300, 4);
+    return MaxCountAnalyzer.create(words, false);
+  }
+
+  private static void assertBatch(Analyzer analyzer, List<String> documents, ParallelSegmenter.Batch batch)
+          throws IOException {
+    final Segmentation segmentation = batch.segmentation();
+    assertTrue(segmentation.documentCount() > 0 && segmentation.documentCount() <= BATCH_SIZE);
+    final Segmentation expected = Segmenter.create(analyzer).segment(documents.subList(batch.firstDocument(),
+            batch.firstDocument() + segmentation.documentCount()));
+    assertArrayEquals(expected.documentBounds(), segmentation.documentBounds());
+    assertArrayEquals(expected.startOffsets(), segmentation.startOffsets());
+    assertArrayEquals(expected.endOffsets(), segmentation.endOffsets());
+  }
+
+  /**
+   * 等待工作任务读取到taken个文档，再确认不会继续读取
+   */
+  private static void awaitTaken(CountingDocuments documents, int taken) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (documents.taken.get() < taken && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    Thread.sleep(100);
+    assertEquals(taken, documents.taken.get());
+  }
+
+  private List<String> documents(int count) {
+    final List<String> documents = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      documents.add(Dictionaries.randomText(random, random.nextInt(40)));
+    }
+    return documents;
+  }
+
+  /**
+   * 按需生成的文档，记录已经被读取的个数
+   */
+  private static final class CountingDocuments extends ImmutableIterator<String> {
+    private final int count;
+    private final AtomicInteger taken = new AtomicInteger();
+
+    CountingDocuments(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return taken.get() < count;
+    }
+
+    @Override
+    public String next() {
+      final int document = taken.getAndIncrement();
+      return "湖北工业大学" + document + Arrays.toString(new int[document % 5]);
+    }
+  }
+}
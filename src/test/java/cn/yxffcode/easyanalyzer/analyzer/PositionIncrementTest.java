@@ -0,0 +1,71 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 与上一个词条起始位置相同的子词位置增量为0，叠在同一个位置上，短语查询可以跨过它们
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class PositionIncrementTest {
+
+  private static final SortedSet<String> WORDS = ImmutableSortedSet.of("中华人民", "中华", "人民共和国", "人民", "共和国");
+  private static final String TEXT = "中华人民共和国";
+
+  @Test
+  public void prefixWordStacksPrefixes() throws IOException {
+    final List<String> expected = Arrays.asList("中华人民+1", "中华+0", "共和国+1");
+    for (boolean outputPrefix : new boolean[]{false, true}) {
+      assertIncrements(expected, PrefixWordFSTAnalyzer.create(WORDS, outputPrefix));
+      assertIncrements(expected, PrefixWordFirstAnalyzer.create(WORDS, outputPrefix));
+    }
+  }
+
+  @Test
+  public void maxCountStacksPrefixes() throws IOException {
+    final List<String> expected = Arrays.asList("中华人民+1", "中华+0", "人民共和国+1", "人民+0", "共和国+1");
+    for (boolean outputPrefix : new boolean[]{false, true}) {
+      assertIncrements(expected, MaxCountAnalyzer.create(WORDS, outputPrefix));
+    }
+    assertIncrements(expected, MaxCountAnalyzer.create(AhoCorasickAutomaton.create(WORDS)));
+  }
+
+  /**
+   * 复用的分词器在下一篇文档的第一个词条重新从1开始
+   */
+  private static void assertIncrements(List<String> expected, Analyzer analyzer) throws IOException {
+    for (int i = 0; i < 2; i++) {
+      assertEquals(expected, increments(analyzer));
+    }
+  }
+
+  /**
+   * @return 词条和位置增量，格式为term+increment
+   */
+  private static List<String> increments(Analyzer analyzer) throws IOException {
+    final List<String> tokens = Lists.newArrayList();
+    try (TokenStream stream = analyzer.tokenStream("test", TEXT)) {
+      final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+      final PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+      stream.reset();
+      while (stream.incrementToken()) {
+        tokens.add(termAtt.toString() + '+' + posIncAtt.getPositionIncrement());
+      }
+      stream.end();
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,224 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 重新加载词典后分词器使用新的词典，失败时保持原来的词典，监视目录时一次变化只重新加载一次
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class ReloadableDictionaryTest {
+
+  /**
+   * 与{@link ReloadableDictionary}中目录变化后等待的时间相同
+   */
+  private static final long QUIET_PERIOD_MILLIS = 1000;
+  private static final String TEXT = "湖北工业大学";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void reloadFromDicAndCompiledFiles() throws Exception {
+    final File directory = folder.newFolder("dictionary");
+    Dictionaries.write(new File(directory, "a.dic"), Arrays.asList("湖北", "工业"));
+    final ReloadableDictionary dictionary = ReloadableDictionary.create(directory, false);
+    try {
+      final Analyzer analyzer = CompleteFSTAnalyzer.create(dictionary, false);
+      assertEquals(Arrays.asList("湖北@0-2", "工业@2-4"), words(analyzer));
+
+      //没有编译后的词典时使用所有的.dic文件
+      Dictionaries.write(new File(directory, "b.dic"), Arrays.asList("大学"));
+      assertEquals(1L, (long) dictionary.reload().get());
+      assertEquals(1L, dictionary.version());
+      assertEquals(Arrays.asList("湖北@0-2", "工业@2-4", "大学@4-6"), words(analyzer));
+
+      //有编译后的词典时只使用它
+      FSTFactory.save(FSTFactory.create(ImmutableSortedSet.of("工业大学")),
+              new File(directory, "compiled" + FSTFactory.COMPILED_SUFFIX));
+      assertEquals(2L, (long) dictionary.reload().get());
+      assertTrue(dictionary.current() instanceof MappedFST);
+      assertEquals(Arrays.asList("工业大学@2-6"), words(analyzer));
+      assertNull(dictionary.lastFailure());
+    } finally {
+      dictionary.close();
+    }
+  }
+
+  @Test
+  public void reloadFromBuilder() throws Exception {
+    final ReloadableDictionary dictionary = ReloadableDictionary.create(FSTFactory.create(ImmutableSortedSet.of("湖北")));
+    try {
+      final Analyzer analyzer = CompleteFSTAnalyzer.create(dictionary, false);
+      assertEquals(Arrays.asList("湖北@0-2"), words(analyzer));
+      assertEquals(1L, (long) dictionary.reload(new Callable<FST<CharsRef>>() {
+        @Override
+        public FST<CharsRef> call() throws Exception {
+          return FSTFactory.create(ImmutableSortedSet.of("大学", "工业"));
+        }
+      }).get());
+      assertEquals(Arrays.asList("工业@2-4", "大学@4-6"), words(analyzer));
+    } finally {
+      dictionary.close();
+    }
+  }
+
+  /**
+   * 创建失败时版本号和词典都不变，异常通过Future抛出并记录到lastFailure
+   */
+  @Test
+  public void failedReloadKeepsOldVersion() throws Exception {
+    final File directory = folder.newFolder("dictionary");
+    Dictionaries.write(new File(directory, "a.dic"), Arrays.asList("湖北"));
+    final ReloadableDictionary dictionary = ReloadableDictionary.create(directory, false);
+    try {
+      final Analyzer analyzer = CompleteFSTAnalyzer.create(dictionary, false);
+      final Dictionary loaded = dictionary.current();
+      try {
+        dictionary.reload(new Callable<FST<CharsRef>>() {
+          @Override
+          public FST<CharsRef> call() throws Exception {
+            throw new IOException("broken builder");
+          }
+        }).get();
+        fail();
+      } catch (ExecutionException expected) {
+        assertEquals("broken builder", expected.getCause().getMessage());
+      }
+      assertEquals(0, dictionary.version());
+      assertSame(loaded, dictionary.current());
+      assertEquals("broken builder", dictionary.lastFailure().getMessage());
+
+      writeCorrupt(new File(directory, "broken" + FSTFactory.COMPILED_SUFFIX));
+      try {
+        dictionary.reload().get();
+        fail();
+      } catch (ExecutionException expected) {
+        assertTrue(expected.getCause() instanceof IOException);
+        assertSame(expected.getCause(), dictionary.lastFailure());
+      }
+      assertEquals(0, dictionary.version());
+      assertSame(loaded, dictionary.current());
+      assertEquals(Arrays.asList("湖北@0-2"), words(analyzer));
+
+      //成功替换后清空
+      assertTrue(new File(directory, "broken" + FSTFactory.COMPILED_SUFFIX).delete());
+      assertEquals(1L, (long) dictionary.reload().get());
+      assertNull(dictionary.lastFailure());
+    } finally {
+      dictionary.close();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void reloadRequiresDirectory() throws IOException {
+    ReloadableDictionary.create(FSTFactory.create(ImmutableSortedSet.of("湖北"))).reload();
+  }
+
+  /**
+   * 短时间内复制多个文件，等待目录没有变化后只重新加载一次
+   */
+  @Test
+  public void watchReloadsOncePerQuietPeriod() throws Exception {
+    final File directory = folder.newFolder("dictionary");
+    Dictionaries.write(new File(directory, "a.dic"), Arrays.asList("湖北"));
+    final ReloadableDictionary dictionary = ReloadableDictionary.create(directory, true);
+    try {
+      final Analyzer analyzer = CompleteFSTAnalyzer.create(dictionary, false);
+      Dictionaries.write(new File(directory, "b.dic"), Arrays.asList("工业"));
+      Dictionaries.write(new File(directory, "c.dic"), Arrays.asList("大学"));
+      Dictionaries.write(new File(directory, "a.dic"), Arrays.asList("湖北", "湖北工业"));
+      //不是词典的文件不会触发重新加载
+      Files.write(new File(directory, "readme.txt").toPath(), "工业".getBytes(StandardCharsets.UTF_8));
+      awaitVersion(dictionary, 1);
+      assertEquals(Arrays.asList("湖北工业@0-4", "大学@4-6"), words(analyzer));
+
+      Files.write(new File(directory, "readme.txt").toPath(), "大学".getBytes(StandardCharsets.UTF_8));
+      Thread.sleep(QUIET_PERIOD_MILLIS * 2);
+      assertEquals(1, dictionary.version());
+    } finally {
+      dictionary.close();
+    }
+  }
+
+  /**
+   * 监视目录触发的重新加载失败时保持原来的词典，目录再次变化并加载成功后清空lastFailure
+   */
+  @Test
+  public void watchRecordsLastFailure() throws Exception {
+    final File directory = folder.newFolder("dictionary");
+    Dictionaries.write(new File(directory, "a.dic"), Arrays.asList("湖北"));
+    final ReloadableDictionary dictionary = ReloadableDictionary.create(directory, true);
+    try {
+      final Analyzer analyzer = CompleteFSTAnalyzer.create(dictionary, false);
+      final File broken = writeCorrupt(new File(directory, "broken" + FSTFactory.COMPILED_SUFFIX));
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (dictionary.lastFailure() == null && System.nanoTime() < deadline) {
+        Thread.sleep(20);
+      }
+      assertTrue(dictionary.lastFailure() instanceof IOException);
+      assertEquals(0, dictionary.version());
+      assertEquals(Arrays.asList("湖北@0-2"), words(analyzer));
+
+      assertTrue(broken.delete());
+      awaitVersion(dictionary, 1);
+      assertNull(dictionary.lastFailure());
+      assertEquals(Arrays.asList("湖北@0-2"), words(analyzer));
+    } finally {
+      dictionary.close();
+    }
+  }
+
+  /**
+   * 等待版本号达到version，再等待一个静默期确认没有再次重新加载
+   */
+  private static void awaitVersion(ReloadableDictionary dictionary, long version) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (dictionary.version() < version && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    Thread.sleep(QUIET_PERIOD_MILLIS * 3 / 2);
+    assertEquals(version, dictionary.version());
+  }
+
+  /**
+   * 切分{@link #TEXT}，去掉没有匹配到词典而逐字输出的词条
+   */
+  private static List<String> words(Analyzer analyzer) throws IOException {
+    final List<String> words = Lists.newArrayList();
+    for (String token : Tokens.of(analyzer, TEXT)) {
+      if (token.indexOf('@') > 1) {
+        words.add(token);
+      }
+    }
+    return words;
+  }
+
+  private static File writeCorrupt(File file) throws IOException {
+    Files.write(file.toPath(), "not a compiled dictionary".getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
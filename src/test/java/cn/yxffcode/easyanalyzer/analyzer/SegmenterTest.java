@@ -0,0 +1,126 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.lucene.analysis.Analyzer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 批量切分的边界与逐个读取属性的结果相同，文本相同的词条序号相同
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class SegmenterTest {
+
+  private final Random random = new Random(41);
+
+  @Test
+  public void boundariesMatchTokenStream() throws IOException {
+    final SortedSet<String> words = Dictionaries.randomWords(random, 300, 4);
+    final Map<String, Long> frequencies = Maps.newHashMap();
+    for (String word : words) {
+      frequencies.put(word, 1L + random.nextInt(100));
+    }
+    final List<Analyzer> analyzers = Arrays.<Analyzer>asList(
+            MaxCountAnalyzer.create(words, false),
+            CompleteFSTAnalyzer.create(words, true),
+            MaxCountAnalyzer.create(AhoCorasickAutomaton.create(words)),
+            MaxProbabilityAnalyzer.create(WeightedDictionary.create(frequencies)));
+    final List<String> documents = documents(200);
+    for (Analyzer analyzer : analyzers) {
+      final Segmentation segmentation = Segmenter.create(analyzer).segment(documents);
+      assertEquals(documents.size(), segmentation.documentCount());
+      assertEquals(-1, segmentation.termCount());
+      for (int document = 0; document < documents.size(); document++) {
+        final List<String> expected = Lists.newArrayList();
+        for (String token : Tokens.of(analyzer, documents.get(document))) {
+          expected.add(token.substring(token.lastIndexOf('@') + 1));
+        }
+        final List<String> actual = Lists.newArrayList();
+        for (int token = segmentation.begin(document); token < segmentation.end(document); token++) {
+          actual.add(segmentation.startOffset(token) + "-" + segmentation.endOffset(token));
+        }
+        assertEquals(documents.get(document), expected, actual);
+      }
+    }
+  }
+
+  /**
+   * 序号按词条第一次出现的顺序编号，散列冲突的词条和越过换行符的词条也能正确编号
+   */
+  @Test
+  public void ordinalsFollowFirstOccurrence() throws IOException {
+    final SortedSet<String> words = Dictionaries.randomWords(random, 1000, 4);
+    final Analyzer analyzer = MaxCountAnalyzer.create(words, false);
+    final List<String> documents = documents(500);
+    //散列值相同的两个英文单词
+    documents.add("Cc DD Cc");
+    documents.add("");
+    final Segmentation segmentation = Segmenter.create(analyzer).segment(documents, true);
+    final Map<String, Integer> ordinals = Maps.newHashMap();
+    for (int document = 0; document < documents.size(); document++) {
+      final String text = documents.get(document);
+      for (int token = segmentation.begin(document); token < segmentation.end(document); token++) {
+        final String term = text.substring(segmentation.startOffset(token), segmentation.endOffset(token))
+                .replace("\n", "").replace("\r", "");
+        Integer expected = ordinals.get(term);
+        if (expected == null) {
+          expected = ordinals.size();
+          ordinals.put(term, expected);
+        }
+        assertEquals(term, expected.intValue(), segmentation.ordinal(token));
+      }
+    }
+    assertEquals(ordinals.size(), segmentation.termCount());
+    assertEquals(Integer.valueOf(ordinals.size() - 1), ordinals.get("DD"));
+    assertEquals(Integer.valueOf(ordinals.size() - 2), ordinals.get("Cc"));
+  }
+
+  @Test
+  public void termSpanningLineBreakHasSameOrdinal() throws IOException {
+    final Analyzer analyzer = CompleteFSTAnalyzer.create(Sets.newTreeSet(Arrays.asList("湖北")), false);
+    final Segmentation segmentation = Segmenter.create(analyzer)
+            .segment(Arrays.asList("湖\n北", "湖北", "湖\r\n北"), true);
+    assertEquals(3, segmentation.tokenCount());
+    assertEquals(1, segmentation.termCount());
+    assertEquals(3, segmentation.endOffset(0));
+    assertEquals(4, segmentation.endOffset(2));
+    for (int token = 0; token < 3; token++) {
+      assertEquals(0, segmentation.ordinal(token));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void ordinalsRequireRequest() throws IOException {
+    final Segmentation segmentation = Segmenter.create(MaxCountAnalyzer.create(Dictionaries.randomWords(random, 10, 2),
+            false)).segment(Arrays.asList("湖北"));
+    segmentation.ordinal(0);
+  }
+
+  /**
+   * 由词典中的字符、空格和换行组成的文档
+   */
+  private List<String> documents(int count) {
+    final List<String> documents = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      final StringBuilder document = new StringBuilder();
+      final int length = random.nextInt(30);
+      for (int j = 0; j < length; j++) {
+        final int kind = random.nextInt(12);
+        document.append(kind == 0 ? "\n" : kind == 1 ? " " : Dictionaries.randomText(random, 1));
+      }
+      documents.add(document.toString());
+    }
+    return documents;
+  }
+}
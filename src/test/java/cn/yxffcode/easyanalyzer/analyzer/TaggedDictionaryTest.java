@@ -0,0 +1,102 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.FlagsAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.fst.FST;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 词条的类型和标记经过可重新加载的词典和叠加的词典后不会丢失
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class TaggedDictionaryTest {
+
+  @Test
+  public void tokensCarryTypeAndFlags() throws IOException {
+    final TaggedDictionary dictionary = TaggedDictionary.parse(Arrays.asList("湖北 place brand", "工业 - brand,hot"));
+    final int brand = dictionary.flag("brand");
+    final int hot = dictionary.flag("hot");
+    assertEquals(Lists.newArrayList("湖北/place/" + brand, "工业/word/" + (brand | hot)),
+            tags(CompleteFSTAnalyzer.create(dictionary, false), "湖北工业"));
+  }
+
+  @Test
+  public void reloadableForwardsToCurrent() throws IOException {
+    final TaggedDictionary first = TaggedDictionary.parse(Arrays.asList("湖北 place brand"));
+    final TaggedDictionary second = TaggedDictionary.parse(Arrays.asList("湖北 province"));
+    final ReloadableDictionary reloadable = ReloadableDictionary.create(first);
+    final Analyzer analyzer = CompleteFSTAnalyzer.create(reloadable, false);
+    assertEquals(Lists.newArrayList("湖北/place/" + first.flag("brand")), tags(analyzer, "湖北"));
+    assertEquals("place", reloadable.type(metadata(reloadable, "湖北")));
+
+    reloadable.update(second);
+    assertEquals(Lists.newArrayList("湖北/province/0"), tags(analyzer, "湖北"));
+    assertEquals("province", reloadable.type(metadata(reloadable, "湖北")));
+    assertEquals(0, reloadable.flags(metadata(reloadable, "湖北")));
+  }
+
+  /**
+   * 叠加的词典中，基础词典的词条使用基础词典的附加信息，新增的词条没有附加信息
+   */
+  @Test
+  public void overlayUsesBaseMetadata() throws IOException {
+    final OverlayDictionary overlay = OverlayDictionary.create(base(), Integer.MAX_VALUE);
+    overlay.add(Arrays.asList("湖北省", "工业"));
+    final Dictionary snapshot = overlay.current();
+    assertEquals(baseMetadata("工业"), metadata(snapshot, "工业"));
+    assertEquals(0, metadata(snapshot, "湖北省"));
+    assertEquals(snapshot.type(0), overlay.type(0));
+    assertEquals(Lists.newArrayList("湖北省/word/0", "工业/word/0"),
+            tags(CompleteFSTAnalyzer.create(overlay, false), "湖北省工业"));
+  }
+
+  private static long baseMetadata(String word) throws IOException {
+    return metadata(Dictionary.of(base()), word);
+  }
+
+  private static FST<CharsRef> base() throws IOException {
+    return FSTFactory.create(Sets.newTreeSet(Arrays.asList("湖北", "工业")));
+  }
+
+  private static long metadata(Dictionary dictionary, String word) throws IOException {
+    final Matcher matcher = dictionary.current().matcher();
+    matcher.reset();
+    for (int i = 0; i < word.length(); i = word.offsetByCodePoints(i, 1)) {
+      assertTrue(matcher.match(word.codePointAt(i)));
+    }
+    assertTrue(matcher.isFinal());
+    return matcher.metadata();
+  }
+
+  /**
+   * @return 每个词条为“词条/类型/标记”
+   */
+  private static List<String> tags(Analyzer analyzer, String text) throws IOException {
+    final List<String> tags = Lists.newArrayList();
+    try (TokenStream stream = analyzer.tokenStream("test", text)) {
+      final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+      final TypeAttribute typeAtt = stream.addAttribute(TypeAttribute.class);
+      final FlagsAttribute flagsAtt = stream.addAttribute(FlagsAttribute.class);
+      stream.reset();
+      while (stream.incrementToken()) {
+        tags.add(termAtt.toString() + '/' + typeAtt.type() + '/' + flagsAtt.getFlags());
+      }
+      stream.end();
+    }
+    return tags;
+  }
+}
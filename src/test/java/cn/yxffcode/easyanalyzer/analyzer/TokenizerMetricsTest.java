@@ -0,0 +1,137 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.ImmutableSortedSet;
+import org.apache.lucene.analysis.TokenStream;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 开启统计后按文档累计计数，关闭时分词器不持有Recorder，统计可以注册到JMX
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class TokenizerMetricsTest {
+
+  private static final String TEXT = "湖北大学生产abc 123";
+
+  @Test
+  public void countsKnownInput() throws IOException {
+    final CompleteFSTAnalyzer analyzer = analyzer();
+    final TokenizerMetrics metrics = analyzer.metrics();
+    metrics.setEnabled(true);
+    assertEquals(Arrays.asList("湖北@0-2", "大学@2-4", "生@4-5", "产@5-6", "abc@6-9", "123@10-13"),
+            Tokens.of(analyzer, TEXT));
+    assertEquals(1, metrics.getDocuments());
+    assertEquals(TEXT.length(), metrics.getChars());
+    assertEquals(6, metrics.getTokens());
+    assertEquals(1, metrics.getEnglishFallbacks());
+    assertEquals(1, metrics.getDigitFallbacks());
+    assertEquals(1, metrics.getUnmatched());
+    //读到不能继续匹配的字符时回退，下一次匹配重新读取
+    assertEquals(4, metrics.getPushbacks());
+    assertEquals(4, metrics.getRereadChars());
+    assertEquals(1, metrics.getMaxPushbackDepth());
+
+    //多篇文档累加
+    Tokens.of(analyzer, TEXT);
+    assertEquals(2, metrics.getDocuments());
+    assertEquals(2 * TEXT.length(), metrics.getChars());
+    assertEquals(12, metrics.getTokens());
+    assertEquals(8, metrics.getPushbacks());
+    assertEquals(2, metrics.getEnglishFallbacks());
+
+    metrics.reset();
+    assertEquals(0, metrics.getDocuments());
+    assertEquals(0, metrics.getTokens());
+    assertEquals(0, metrics.getMaxPushbackDepth());
+  }
+
+  /**
+   * 开关在下一次reset时生效，关闭时Recorder为null，不计数
+   */
+  @Test
+  public void disabledLeavesRecorderNull() throws IOException {
+    final CompleteFSTAnalyzer analyzer = analyzer();
+    final TokenizerMetrics metrics = analyzer.metrics();
+    assertFalse(metrics.isEnabled());
+    try (TokenStream stream = analyzer.tokenStream("test", TEXT)) {
+      stream.reset();
+      assertNull(((BaseTokenizer) stream).recorder());
+      while (stream.incrementToken()) {
+      }
+      stream.end();
+    }
+    assertEquals(0, metrics.getDocuments());
+    assertEquals(0, metrics.getTokens());
+
+    metrics.setEnabled(true);
+    try (TokenStream stream = analyzer.tokenStream("test", TEXT)) {
+      stream.reset();
+      assertNotNull(((BaseTokenizer) stream).recorder());
+      metrics.setEnabled(false);
+      while (stream.incrementToken()) {
+      }
+      stream.end();
+    }
+    //关闭前已经开始的文档仍然计数
+    assertEquals(1, metrics.getDocuments());
+
+    try (TokenStream stream = analyzer.tokenStream("test", TEXT)) {
+      stream.reset();
+      assertNull(((BaseTokenizer) stream).recorder());
+      stream.end();
+    }
+    assertEquals(1, metrics.getDocuments());
+  }
+
+  @Test
+  public void registerAndUnregister() throws IOException, JMException {
+    final CompleteFSTAnalyzer analyzer = analyzer();
+    final TokenizerMetrics metrics = analyzer.metrics();
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name = metrics.register("metrics-test");
+    try {
+      assertTrue(server.isRegistered(name));
+      assertEquals("metrics-test", ObjectName.unquote(name.getKeyProperty("name")));
+      //通过JMX开启统计
+      server.setAttribute(name, new Attribute("Enabled", true));
+      assertTrue(metrics.isEnabled());
+      Tokens.of(analyzer, TEXT);
+      assertEquals(1L, server.getAttribute(name, "Documents"));
+      assertEquals(6L, server.getAttribute(name, "Tokens"));
+      server.invoke(name, "reset", null, null);
+      assertEquals(0L, server.getAttribute(name, "Documents"));
+      try {
+        metrics.register("metrics-test-2");
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+    } finally {
+      metrics.unregister();
+    }
+    assertFalse(server.isRegistered(name));
+    //没有注册时什么也不做
+    metrics.unregister();
+    assertEquals(name, metrics.register("metrics-test"));
+    metrics.unregister();
+    assertFalse(server.isRegistered(name));
+  }
+
+  private static CompleteFSTAnalyzer analyzer() throws IOException {
+    return CompleteFSTAnalyzer.create(ImmutableSortedSet.of("湖北", "大学", "大学生活动"), false);
+  }
+}
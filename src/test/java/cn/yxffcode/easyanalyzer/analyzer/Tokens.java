@@ -0,0 +1,95 @@
+package cn.yxffcode.easyanalyzer.analyzer;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * 测试中读取分词结果的工具
+ *
+ * @author gaohang on 15/12/27.
+ */
+final class Tokens {
+
+  private Tokens() {
+  }
+
+  /**
+   * @return 每个词条为“词条@起始位置-结束位置”
+   */
+  static List<String> of(Analyzer analyzer, String text) throws IOException {
+    try (TokenStream stream = analyzer.tokenStream("test", text)) {
+      return read(stream);
+    }
+  }
+
+  static List<String> of(Analyzer analyzer, Reader reader) throws IOException {
+    try (TokenStream stream = analyzer.tokenStream("test", reader)) {
+      return read(stream);
+    }
+  }
+
+  /**
+   * 读取还没有reset的stream中所有的词条
+   */
+  static List<String> read(TokenStream stream) throws IOException {
+    final CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+    final OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+    final List<String> tokens = Lists.newArrayList();
+    stream.reset();
+    while (stream.incrementToken()) {
+      tokens.add(termAtt.toString() + '@' + offsetAtt.startOffset() + '-' + offsetAtt.endOffset());
+    }
+    stream.end();
+    return tokens;
+  }
+
+  /**
+   * 由前缀、重复count次的字符和后缀组成的输入，不在内存中保存整个输入
+   */
+  static final class RepeatReader extends Reader {
+    private final String prefix;
+    private final char repeated;
+    private final long count;
+    private final String suffix;
+    private long position;
+
+    RepeatReader(String prefix, char repeated, long count, String suffix) {
+      this.prefix = prefix;
+      this.repeated = repeated;
+      this.count = count;
+      this.suffix = suffix;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      final long length = prefix.length() + count + suffix.length();
+      if (position == length) {
+        return -1;
+      }
+      int read = 0;
+      while (read < len && position < length) {
+        if (position < prefix.length()) {
+          cbuf[off + read] = prefix.charAt((int) position);
+        } else if (position < prefix.length() + count) {
+          cbuf[off + read] = repeated;
+        } else {
+          cbuf[off + read] = suffix.charAt((int) (position - prefix.length() - count));
+        }
+        read++;
+        position++;
+      }
+      return read;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
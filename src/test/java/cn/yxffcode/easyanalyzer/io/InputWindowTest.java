@@ -0,0 +1,198 @@
+package cn.yxffcode.easyanalyzer.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 回退和标记：mark之后的字符都可以重新读取，缓冲区只保留mark之后的字符
+ *
+ * @author gaohang on 15/12/27.
+ */
+public class InputWindowTest {
+
+  private static final String TEXT = "湖北工业大学𠀀abc😀123大学生";
+
+  @Test
+  public void readsCodePoints() throws IOException {
+    for (InputWindow window : windows(TEXT)) {
+      final StringBuilder read = new StringBuilder();
+      int codePoint;
+      while ((codePoint = window.read()) != InputWindow.EOF) {
+        read.appendCodePoint(codePoint);
+      }
+      assertEquals(TEXT, read.toString());
+      assertTrue(window.exhausted());
+      assertEquals(TEXT.length(), window.limit());
+    }
+  }
+
+  @Test
+  public void rewindRereadsFromAnyPositionAfterMark() throws IOException {
+    for (InputWindow window : windows(TEXT)) {
+      window.read();
+      window.read();
+      window.mark();
+      final long mark = window.position();
+      final int[] codePoints = new int[TEXT.codePointCount(2, TEXT.length())];
+      final long[] positions = new long[codePoints.length];
+      for (int i = 0; i < codePoints.length; i++) {
+        positions[i] = window.position();
+        codePoints[i] = window.read();
+      }
+      assertEquals(InputWindow.EOF, window.read());
+      for (int i = codePoints.length - 1; i >= 0; i--) {
+        window.rewind(positions[i]);
+        for (int j = i; j < codePoints.length; j++) {
+          assertEquals(codePoints[j], window.read());
+        }
+      }
+      window.rewind(mark);
+      assertEquals('工', window.charAt(mark));
+      assertEquals('工', window.read());
+    }
+  }
+
+  @Test
+  public void rejectsPositionsBeforeMark() throws IOException {
+    for (InputWindow window : windows(TEXT)) {
+      window.read();
+      window.read();
+      window.mark();
+      try {
+        window.rewind(1);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+      try {
+        window.charAt(1);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+      //不能回退到还没有读取的位置
+      try {
+        window.rewind(window.position() + 1);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+  }
+
+  /**
+   * 缓冲区只在mark之后的字符放不下时扩容，及时mark时容量不随输入增长
+   */
+  @Test
+  public void growsOnlyForMarkedRange() throws IOException {
+    final InputWindow window = new InputWindow(16);
+    window.reset(new SlowReader(new RepeatReader('a', 10000)));
+    while (window.read() != InputWindow.EOF) {
+      window.mark();
+    }
+    assertEquals(16, window.capacity());
+
+    window.reset(new SlowReader(new RepeatReader('a', 10000)));
+    for (int i = 0; i < 1000; i++) {
+      window.read();
+    }
+    assertTrue(window.capacity() >= 1000);
+    window.rewind(0);
+    assertEquals(0, window.position());
+    assertEquals('a', window.charAt(999));
+  }
+
+  /**
+   * 位置超过int的范围后仍然可以回退
+   */
+  @Test
+  public void positionsBeyondIntRange() throws IOException {
+    final long length = (1L << 31) + 100;
+    final InputWindow window = new InputWindow();
+    window.reset(new RepeatReader('a', length));
+    while (window.position() < Integer.MAX_VALUE - 10) {
+      window.read();
+      window.mark();
+    }
+    final long mark = window.position();
+    for (int i = 0; i < 50; i++) {
+      assertEquals('a', window.read());
+    }
+    assertTrue(window.position() > Integer.MAX_VALUE);
+    window.rewind(mark);
+    assertEquals(mark, window.position());
+    assertEquals('a', window.charAt(mark + 20));
+    int read = 0;
+    while (window.read() != InputWindow.EOF) {
+      read++;
+    }
+    assertEquals(length - mark, read);
+    assertEquals(length, window.limit());
+  }
+
+  /**
+   * 同一个输入分别通过普通的Reader、每次只返回一个char的Reader和直接读取内存中的输入
+   */
+  private static InputWindow[] windows(String text) {
+    final InputWindow[] windows = {new InputWindow(16), new InputWindow(16), new InputWindow(16)};
+    windows[0].reset(new StringReader(text));
+    windows[1].reset(new SlowReader(new StringReader(text)));
+    windows[2].reset(new CharSequenceReader(text));
+    return windows;
+  }
+
+  /**
+   * 每次只返回一个char，代理对会被拆到两次填充中
+   */
+  private static final class SlowReader extends Reader {
+    private final Reader reader;
+
+    SlowReader(Reader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return reader.read(cbuf, off, Math.min(len, 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  /**
+   * 重复count次的字符，不在内存中保存整个输入
+   */
+  private static final class RepeatReader extends Reader {
+    private final char repeated;
+    private long remaining;
+
+    RepeatReader(char repeated, long count) {
+      this.repeated = repeated;
+      this.remaining = count;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (remaining == 0) {
+        return -1;
+      }
+      final int read = (int) Math.min(len, remaining);
+      for (int i = 0; i < read; i++) {
+        cbuf[off + i] = repeated;
+      }
+      remaining -= read;
+      return read;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}